@@ -56,6 +56,10 @@ public class CDKNodePlugin extends AbstractUIPlugin {
 
 	private static NUMBERING numbering = NUMBERING.CANONICAL;
 
+	private static boolean compactEncoding = false;
+
+	private static int threadBudget = 0;
+
 	/**
 	 * The constructor.
 	 */
@@ -93,11 +97,17 @@ public class CDKNodePlugin extends AbstractUIPlugin {
 
 				if (event.getProperty().equals(CDKPreferenceInitializer.NUMBERING_TYPE)) {
 					numbering = NUMBERING.valueOf(pStore.getString(CDKPreferenceInitializer.NUMBERING_TYPE));
+				} else if (event.getProperty().equals(CDKPreferenceInitializer.COMPACT_ENCODING)) {
+					compactEncoding = pStore.getBoolean(CDKPreferenceInitializer.COMPACT_ENCODING);
+				} else if (event.getProperty().equals(CDKPreferenceInitializer.THREAD_BUDGET)) {
+					threadBudget = pStore.getInt(CDKPreferenceInitializer.THREAD_BUDGET);
 				}
 			}
 		});
 
 		numbering = NUMBERING.valueOf(pStore.getString(CDKPreferenceInitializer.NUMBERING_TYPE));
+		compactEncoding = pStore.getBoolean(CDKPreferenceInitializer.COMPACT_ENCODING);
+		threadBudget = pStore.getInt(CDKPreferenceInitializer.THREAD_BUDGET);
 
 		try {
 			// may fail if MoSS is not installed
@@ -137,4 +147,22 @@ public class CDKNodePlugin extends AbstractUIPlugin {
 	public static NUMBERING numbering() {
 		return numbering;
 	}
+
+	/**
+	 * Returns whether CDK cells should be written with the compact single precision encoding.
+	 * 
+	 * @return if compact encoding is enabled
+	 */
+	public static boolean compactEncoding() {
+		return compactEncoding;
+	}
+
+	/**
+	 * Returns the max. number of worker threads shared by all CDK nodes.
+	 * 
+	 * @return the thread budget or 0 if determined automatically
+	 */
+	public static int threadBudget() {
+		return threadBudget;
+	}
 }
@@ -31,6 +31,7 @@ import org.knime.core.node.NodeLogger;
 import org.openscience.cdk.CDKConstants;
 import org.openscience.cdk.aromaticity.Aromaticity;
 import org.openscience.cdk.aromaticity.ElectronDonation;
+import org.openscience.cdk.atomtype.CDKAtomTypeMatcher;
 import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.geometry.GeometryTools;
 import org.openscience.cdk.graph.ConnectivityChecker;
@@ -66,8 +67,28 @@ public class CDKNodeUtils {
 	private static final CDKHydrogenAdder HADDER = CDKHydrogenAdder.getInstance(SilentChemObjectBuilder.getInstance());
 	@SuppressWarnings("deprecation")
 	private static final Aromaticity AROMATICITY = new Aromaticity(ElectronDonation.daylight(), Cycles.allOrVertexShort());
-	private static final SmilesGenerator SG = SmilesGenerator.isomeric().aromatic();
-	private static final SmilesParser SR = new SmilesParser(SilentChemObjectBuilder.getInstance());
+	// SMILES generator and parser owned by the calling thread, the parser keeps state between calls
+	private static final ThreadLocal<SmilesGenerator> SG = new ThreadLocal<SmilesGenerator>() {
+
+		@Override
+		protected SmilesGenerator initialValue() {
+			return SmilesGenerator.isomeric().aromatic();
+		}
+	};
+	private static final ThreadLocal<SmilesGenerator> SG_CANONICAL = new ThreadLocal<SmilesGenerator>() {
+
+		@Override
+		protected SmilesGenerator initialValue() {
+			return SmilesGenerator.absolute().aromatic();
+		}
+	};
+	private static final ThreadLocal<SmilesParser> SR = new ThreadLocal<SmilesParser>() {
+
+		@Override
+		protected SmilesParser initialValue() {
+			return new SmilesParser(SilentChemObjectBuilder.getInstance());
+		}
+	};
 	private static final FixBondOrdersTool BONDFIXTOOL = new FixBondOrdersTool();
 
 	private static final MoleculeHashGenerator GENERATOR = new HashGeneratorMaker().depth(8).charged().molecular();
@@ -75,12 +96,16 @@ public class CDKNodeUtils {
 			.encode(BasicAtomEncoder.BOND_ORDER_SUM).chiral().isotopic().radical().molecular();
 
 	private static InChIGeneratorFactory ig;
+	// the native InChI library is not reentrant, only its calls are serialised
+	private static final Object INCHI_LOCK = new Object();
 	static {
 		try {
 			ig = InChIGeneratorFactory.getInstance();
 		} catch (CDKException e) {
 			LOGGER.error("Failed to load the InChIGeneratorFactory.");
 		}
+		// the atom type matcher is created lazily per builder, create it before any worker thread does
+		CDKAtomTypeMatcher.getInstance(SilentChemObjectBuilder.getInstance());
 	}
 
 	/** Array with the value classes that all CDK nodes accept by default. */
@@ -122,7 +147,7 @@ public class CDKNodeUtils {
 
 	public static IAtomContainer getFullMolecule(String smiles) {
 		try {
-			IAtomContainer mol = SR.parseSmiles(smiles);
+			IAtomContainer mol = SR.get().parseSmiles(smiles);
 			mol = getFullMolecule(mol);
 			return mol;
 		} catch (Exception exception) {
@@ -146,13 +171,14 @@ public class CDKNodeUtils {
 
 	/**
 	 * Gets the clone of the CDK KNIME input molecule with all hydrogens set as
-	 * explicit hydrogens.
+	 * explicit hydrogens. The clone is confined to the calling thread, so no
+	 * lock is needed.
 	 * 
 	 * @param molecule the input CDK molecule
 	 * @return the CDK molecule clone with explicit hydrogens
 	 * @throws CDKException description of the exception
 	 */
-	public synchronized static IAtomContainer getExplicitClone(final IAtomContainer molecule) throws CDKException {
+	public static IAtomContainer getExplicitClone(final IAtomContainer molecule) throws CDKException {
 
 		IAtomContainer clone;
 
@@ -212,16 +238,20 @@ public class CDKNodeUtils {
 	 * @param molecule the CDK molecule
 	 * @param override override existing InChI
 	 */
-	public synchronized static void calculateInChI(final IAtomContainer molecule, final boolean override) {
+	public static void calculateInChI(final IAtomContainer molecule, final boolean override) {
 
 		if (molecule.getProperty(CDKConstants.INCHI) == null || override) {
 
 			try {
-				InChIGenerator igg = ig.getInChIGenerator(molecule);
-				molecule.setProperty(CDKConstants.INCHI, igg.getInchi());
+				String inchi;
+				synchronized (INCHI_LOCK) {
+					InChIGenerator igg = ig.getInChIGenerator(molecule);
+					inchi = igg.getInchi();
+				}
+				molecule.setProperty(CDKConstants.INCHI, inchi);
 			} catch (CDKException e) {
 				try {
-					molecule.setProperty(CDKConstants.INCHI, SG.create(molecule));
+					molecule.setProperty(CDKConstants.INCHI, SG.get().create(molecule));
 				} catch (CDKException e1) {
 					molecule.setProperty(CDKConstants.INCHI, "");
 				}
@@ -241,7 +271,7 @@ public class CDKNodeUtils {
 		String smiles = molecule.getProperty(CDKConstants.SMILES);
 		if (override || smiles == null) {
 			try {
-				smiles = SG.create(molecule, sequence);
+				smiles = SG.get().create(molecule, sequence);
 			} catch (Exception e) {
 				LOGGER.error("Error while parsing SMILES.", e);
 				smiles = "";
@@ -255,6 +285,48 @@ public class CDKNodeUtils {
 		return calculateSmiles(molecule, sequence, true);
 	}
 
+	/**
+	 * Calculates the canonical isomeric SMILES string. The canonical labelling is computed once and determines the
+	 * SMILES, so that identical molecules, including their stereochemistry and isotopes, have the same SMILES.
+	 * 
+	 * @param molecule the CDK molecule
+	 * @param sequence the output order of the atoms, filled if not null
+	 * @return the canonical SMILES string or an empty string if the SMILES cannot be generated
+	 */
+	public static String calculateCanonicalSmiles(final IAtomContainer molecule, final int[] sequence) {
+
+		try {
+			return SG_CANONICAL.get().create(molecule,
+					(sequence != null) ? sequence : new int[molecule.getAtomCount()]);
+		} catch (Exception e) {
+			LOGGER.error("Error while generating canonical SMILES.", e);
+			return "";
+		}
+	}
+
+	/**
+	 * Calculates the 64-bit molecule hash from a canonical SMILES string, i.e. the hash is derived from the canonical
+	 * labelling without another pass over the molecule.
+	 * 
+	 * @param canonicalSmiles the canonical SMILES string
+	 * @return the hash
+	 */
+	public static long calculateSmilesHash(final String canonicalSmiles) {
+
+		// FNV-1a followed by the finalizer of MurmurHash3
+		long hash = 0xCBF29CE484222325L;
+		for (int i = 0; i < canonicalSmiles.length(); i++) {
+			hash ^= canonicalSmiles.charAt(i);
+			hash *= 0x100000001B3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		hash *= 0xC4CEB9FE1A85EC53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
 	public static final IAtomContainer parseSDF(String sdf) {
 
 		IAtomContainer molecule = null;
@@ -304,12 +376,12 @@ public class CDKNodeUtils {
 	}
 
 	/**
-	 * Returns the max. number of threads available.
+	 * Returns the max. number of threads available, i.e. the global thread budget of the CDK nodes.
 	 * 
 	 * @return the max. number of threads
 	 */
 	public static int getMaxNumOfThreads() {
-		return ((int) Math.ceil(1.5 * Runtime.getRuntime().availableProcessors()));
+		return CDKScheduler.getInstance().budget();
 	}
 
 	/**
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2016, Stephan Beisken (sbeisken@gmail.com). All rights reserved.
+ *
+ * This file is part of the KNIME CDK plugin.
+ *
+ * The KNIME CDK plugin is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The KNIME CDK plugin is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the plugin. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.openscience.cdk.knime.commons;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.openscience.cdk.knime.CDKNodePlugin;
+
+/**
+ * Shared scheduler sizing the worker pools of the CDK nodes.
+ * <p>
+ * All nodes draw their worker threads from one global thread budget, so that several CDK nodes executing at the same
+ * time do not oversubscribe the machine. The initial parallelism of a node depends on its workload type. After each
+ * execution the measured throughput is fed back: the parallelism of the next execution is adjusted by a simple hill
+ * climbing step and the queue depth is chosen so that each worker has a few milliseconds of buffered work.
+ *
+ * @author Stephan Beisken, European Bioinformatics Institute
+ */
+public final class CDKScheduler {
+
+	/**
+	 * Type of work carried out per row.
+	 */
+	public enum Workload {
+		/** Rows are processed on the CPU only, e.g. fingerprints. */
+		CPU,
+		/** Rows may block for a bounded time, e.g. coordinate generation with a timeout. */
+		WALL_CLOCK,
+		/** Rows mostly wait for I/O, e.g. web service calls. */
+		IO
+	}
+
+	private static final CDKScheduler INSTANCE = new CDKScheduler();
+
+	private static final int DEFAULT_QUEUE_FACTOR = 10;
+	private static final int MIN_QUEUE_FACTOR = 2;
+	private static final int MAX_QUEUE_FACTOR = 20;
+	// amount of work buffered per worker
+	private static final double TARGET_QUEUE_NANOS = 50e6;
+	// min. number of rows for a throughput measurement
+	private static final long MIN_SAMPLE_SIZE = 64;
+	// min. relative throughput gain to keep on changing the parallelism in the same direction
+	private static final double MIN_GAIN = 0.05;
+
+	private final Map<String, History> history = new HashMap<String, History>();
+	private int threadsInUse;
+
+	private CDKScheduler() {
+		// singleton
+	}
+
+	/**
+	 * Returns the shared scheduler.
+	 *
+	 * @return the scheduler instance
+	 */
+	public static CDKScheduler getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Returns the global number of worker threads shared by all CDK nodes.
+	 *
+	 * @return the thread budget
+	 */
+	public int budget() {
+
+		int budget = CDKNodePlugin.threadBudget();
+		if (budget > 0) {
+			return budget;
+		}
+		return (int) Math.ceil(1.5 * Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Returns the number of worker threads currently leased.
+	 *
+	 * @return the number of threads in use
+	 */
+	public synchronized int threadsInUse() {
+		return threadsInUse;
+	}
+
+	/**
+	 * Leases worker threads for one execution. At least one thread is granted even if the budget is exhausted. The
+	 * lease must be released after the execution.
+	 *
+	 * @param key the key identifying the node type, e.g. the class name of the node model
+	 * @param workload the workload type of the node
+	 * @param maxParallelism the max. number of threads the node can use
+	 * @return the lease
+	 */
+	public synchronized Lease acquire(final String key, final Workload workload, final int maxParallelism) {
+
+		History h = history.get(key);
+		int wanted = (h == null) ? initialParallelism(workload) : h.next;
+		wanted = Math.min(wanted, maxParallelism);
+
+		int granted = Math.max(1, Math.min(wanted, budget() - threadsInUse));
+		threadsInUse += granted;
+
+		int queueFactor = (h == null) ? DEFAULT_QUEUE_FACTOR : h.queueFactor;
+		return new Lease(key, workload, granted, granted * queueFactor);
+	}
+
+	private synchronized void release(final Lease lease, final long rows, final long nanos) {
+
+		threadsInUse -= lease.parallelism;
+
+		if (rows < MIN_SAMPLE_SIZE || nanos <= 0) {
+			return;
+		}
+
+		History h = history.get(lease.key);
+		if (h == null) {
+			h = new History();
+			history.put(lease.key, h);
+		}
+
+		double throughput = rows / (double) nanos;
+		if (h.throughput > 0 && h.parallelism != lease.parallelism
+				&& throughput < h.throughput * (1 + MIN_GAIN)) {
+			// the last change did not pay off
+			h.direction = -h.direction;
+		}
+		h.parallelism = lease.parallelism;
+		h.throughput = throughput;
+
+		int step = Math.max(1, lease.parallelism / 4);
+		h.next = clamp(lease.parallelism + h.direction * step, 1, 2 * initialParallelism(lease.workload));
+
+		// mean time a worker spends on one row
+		double rowNanos = nanos * lease.parallelism / (double) rows;
+		h.queueFactor = clamp((int) Math.round(TARGET_QUEUE_NANOS / rowNanos), MIN_QUEUE_FACTOR, MAX_QUEUE_FACTOR);
+	}
+
+	private int initialParallelism(final Workload workload) {
+
+		int cores = Runtime.getRuntime().availableProcessors();
+		switch (workload) {
+		case IO:
+			return 4 * cores;
+		case WALL_CLOCK:
+			return (int) Math.ceil(1.5 * cores);
+		default:
+			return cores;
+		}
+	}
+
+	private static int clamp(final int value, final int min, final int max) {
+		return Math.max(min, Math.min(max, value));
+	}
+
+	/**
+	 * Worker threads leased for one execution of a node.
+	 */
+	public final class Lease {
+
+		private final String key;
+		private final Workload workload;
+		private final int parallelism;
+		private final int queueSize;
+		private final long start;
+		private boolean released;
+
+		private Lease(final String key, final Workload workload, final int parallelism, final int queueSize) {
+			this.key = key;
+			this.workload = workload;
+			this.parallelism = parallelism;
+			this.queueSize = queueSize;
+			this.start = System.nanoTime();
+		}
+
+		/**
+		 * Returns the max. number of parallel workers.
+		 *
+		 * @return the number of workers
+		 */
+		public int parallelism() {
+			return parallelism;
+		}
+
+		/**
+		 * Returns the max. number of rows in flight.
+		 *
+		 * @return the queue size
+		 */
+		public int queueSize() {
+			return queueSize;
+		}
+
+		/**
+		 * Returns the threads to the budget and records the throughput of the execution.
+		 *
+		 * @param rows the number of processed rows, 0 if the execution failed
+		 */
+		public void release(final long rows) {
+
+			synchronized (CDKScheduler.this) {
+				if (released) {
+					return;
+				}
+				released = true;
+			}
+			CDKScheduler.this.release(this, rows, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Throughput history of one node type.
+	 */
+	private static final class History {
+
+		private int parallelism;
+		private double throughput;
+		private int direction = 1;
+		private int next;
+		private int queueFactor = DEFAULT_QUEUE_FACTOR;
+	}
+}
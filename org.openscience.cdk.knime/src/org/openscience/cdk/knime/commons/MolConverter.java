@@ -87,12 +87,19 @@ public class MolConverter {
 
 	private static class SmilesConv implements Conv {
 
-		private final SmilesParser reader = new SmilesParser(SilentChemObjectBuilder.getInstance());
+		// the converter is shared by the worker threads, the parser is not thread-safe
+		private final ThreadLocal<SmilesParser> reader = new ThreadLocal<SmilesParser>() {
+
+			@Override
+			protected SmilesParser initialValue() {
+				return new SmilesParser(SilentChemObjectBuilder.getInstance());
+			}
+		};
 
 		@Override
 		public IAtomContainer convert(final String notation) throws Exception {
 
-			return reader.parseSmiles(notation);
+			return reader.get().parseSmiles(notation);
 		}
 	}
 
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2016, Stephan Beisken (sbeisken@gmail.com). All rights reserved.
+ *
+ * This file is part of the KNIME CDK plugin.
+ *
+ * The KNIME CDK plugin is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The KNIME CDK plugin is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the plugin. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.openscience.cdk.knime.commons;
+
+import java.util.Arrays;
+
+import org.openscience.cdk.graph.GraphUtil;
+import org.openscience.cdk.interfaces.IAtomContainer;
+
+/**
+ * Screening fingerprint of the substructure and SMARTS searches. Every simple path of up to {@link #MAX_BONDS} bonds
+ * is hashed by the atomic numbers along the path, read in the direction with the smaller hash, and folded into
+ * {@link #SIZE} bits. A substructure maps each path of the query onto a path of the target with the same elements,
+ * hence every bit of the query is also set in the fingerprint of a target that contains the query.
+ * <p>
+ * The enumeration stops after {@link #MAX_PATHS} paths. A target then gets all bits set and a query keeps the bits of
+ * the paths found so far, so the screen never rejects a target that matches.
+ * <p>
+ * The hash ignores the bond orders, so a path of query bonds with any bond expression maps onto a target path. A query
+ * may leave atoms unresolved, e.g. SMARTS atoms without a fixed element; its fingerprint then holds the paths through
+ * the resolved atoms only, see {@link #create(int[][], int[])}.
+ *
+ * @author Stephan Beisken, European Bioinformatics Institute
+ */
+public final class PathFingerprint {
+
+	/** Number of bits. */
+	public static final int SIZE = 1024;
+	/** Number of 64-bit words. */
+	public static final int WORDS = SIZE / 64;
+
+	private static final int MAX_BONDS = 6;
+	private static final int MAX_PATHS = 50000;
+
+	private PathFingerprint() {
+		// utility class
+	}
+
+	/**
+	 * Creates the fingerprint of a molecule.
+	 *
+	 * @param molecule the CDK molecule
+	 * @param target whether the molecule is a target, i.e. all bits are set if the paths overflow
+	 * @return the fingerprint words
+	 */
+	public static long[] create(final IAtomContainer molecule, final boolean target) {
+
+		int[] elements = new int[molecule.getAtomCount()];
+		for (int i = 0; i < elements.length; i++) {
+			Integer number = molecule.getAtom(i).getAtomicNumber();
+			elements[i] = (number == null) ? 0 : number;
+		}
+		return create(GraphUtil.toAdjList(molecule), elements, target);
+	}
+
+	/**
+	 * Creates the query fingerprint of a graph whose atoms are partly resolved. Paths through an atom with a negative
+	 * element are not hashed.
+	 *
+	 * @param graph the adjacency list of the query
+	 * @param elements the atomic number of every atom, negative if the atom may match any element
+	 * @return the fingerprint words
+	 */
+	public static long[] create(final int[][] graph, final int[] elements) {
+		return create(graph, elements, false);
+	}
+
+	private static long[] create(final int[][] graph, final int[] elements, final boolean target) {
+
+		long[] words = new long[WORDS];
+		Walker walker = new Walker(graph, elements, words);
+		for (int i = 0; i < elements.length; i++) {
+			if (elements[i] >= 0 && !walker.walk(i, 0)) {
+				if (target) {
+					Arrays.fill(words, -1L);
+				}
+				break;
+			}
+		}
+		return words;
+	}
+
+	/**
+	 * Checks whether all bits of the query are set in the target.
+	 *
+	 * @param targets the fingerprint words of all targets
+	 * @param offset the offset of the target words
+	 * @param query the query words
+	 * @return if the target may contain the query
+	 */
+	public static boolean covers(final long[] targets, final int offset, final long[] query) {
+
+		for (int i = 0; i < WORDS; i++) {
+			if ((query[i] & ~targets[offset + i]) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Depth-first enumeration of the simple paths starting at an atom.
+	 */
+	private static final class Walker {
+
+		private final int[][] graph;
+		private final int[] elements;
+		private final long[] words;
+		private final boolean[] visited;
+		private final int[] path = new int[MAX_BONDS + 1];
+		private int count;
+
+		private Walker(final int[][] graph, final int[] elements, final long[] words) {
+			this.graph = graph;
+			this.elements = elements;
+			this.words = words;
+			this.visited = new boolean[elements.length];
+		}
+
+		/**
+		 * Sets the bits of all paths through the atom at the given depth, returns false if the paths overflow.
+		 */
+		private boolean walk(final int atom, final int depth) {
+
+			path[depth] = elements[atom];
+			set(depth + 1);
+			if (++count > MAX_PATHS) {
+				return false;
+			}
+
+			if (depth < MAX_BONDS) {
+				visited[atom] = true;
+				for (int neighbour : graph[atom]) {
+					if (!visited[neighbour] && elements[neighbour] >= 0 && !walk(neighbour, depth + 1)) {
+						return false;
+					}
+				}
+				visited[atom] = false;
+			}
+			return true;
+		}
+
+		private void set(final int length) {
+
+			long forward = 1;
+			long backward = 1;
+			for (int i = 0; i < length; i++) {
+				forward = forward * 0x9E3779B97F4A7C15L + path[i] + 1;
+				backward = backward * 0x9E3779B97F4A7C15L + path[length - 1 - i] + 1;
+			}
+			int bit = (int) (mix(Math.min(forward, backward)) & (SIZE - 1));
+			words[bit >>> 6] |= 1L << bit;
+		}
+
+		// finalizer of MurmurHash3
+		private static long mix(long h) {
+
+			h ^= h >>> 33;
+			h *= 0xFF51AFD7ED558CCDL;
+			h ^= h >>> 33;
+			h *= 0xC4CEB9FE1A85EC53L;
+			h ^= h >>> 33;
+			return h;
+		}
+	}
+}
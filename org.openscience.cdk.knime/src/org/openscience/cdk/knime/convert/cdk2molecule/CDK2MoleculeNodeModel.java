@@ -33,12 +33,16 @@ import org.knime.core.data.DataColumnSpecCreator;
 import org.knime.core.data.DataTable;
 import org.knime.core.data.DataTableSpec;
 import org.knime.core.data.DataType;
+import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.ExecutionMonitor;
 import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
-import org.openscience.cdk.knime.commons.CDKNodeUtils;
+import org.openscience.cdk.knime.commons.CDKScheduler;
+import org.openscience.cdk.knime.commons.CDKScheduler.Lease;
+import org.openscience.cdk.knime.commons.CDKScheduler.Workload;
 import org.openscience.cdk.knime.convert.cdk2molecule.CDK2MoleculeSettings.Format;
 import org.openscience.cdk.knime.type.CDKValue;
 
@@ -50,6 +54,7 @@ import org.openscience.cdk.knime.type.CDKValue;
 public class CDK2MoleculeNodeModel extends ThreadedColAppenderNodeModel {
 
 	private final CDK2MoleculeSettings m_settings = new CDK2MoleculeSettings();
+	private Lease m_lease;
 
 	/**
 	 * Creates a new model.
@@ -57,8 +62,6 @@ public class CDK2MoleculeNodeModel extends ThreadedColAppenderNodeModel {
 	public CDK2MoleculeNodeModel() {
 
 		super(1, 1);
-
-		setMaxThreads(CDKNodeUtils.getMaxNumOfThreads());
 	}
 
 	/**
@@ -118,9 +121,32 @@ public class CDK2MoleculeNodeModel extends ThreadedColAppenderNodeModel {
 	@Override
 	protected ExtendedCellFactory[] prepareExecute(final DataTable[] data) throws Exception {
 
+		releaseLease(0);
+		m_lease = CDKScheduler.getInstance().acquire(getClass().getName(), Workload.CPU, Integer.MAX_VALUE);
+		setMaxThreads(m_lease.parallelism());
+
 		return new ExtendedCellFactory[] { new MolConverter(data[0].getDataTableSpec(), m_settings) };
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected BufferedDataTable[] postExecute(final BufferedDataTable[] res, final ExecutionContext exec) {
+
+		releaseLease(res[0].size());
+		return res;
+	}
+
+	// a failed or canceled execution never reaches postExecute, its lease is returned on reset
+	private void releaseLease(final long rows) {
+
+		if (m_lease != null) {
+			m_lease.release(rows);
+			m_lease = null;
+		}
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -145,6 +171,16 @@ public class CDK2MoleculeNodeModel extends ThreadedColAppenderNodeModel {
 	@Override
 	protected void reset() {
 
+		releaseLease(0);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void onDispose() {
+
+		releaseLease(0);
 	}
 
 	/**
@@ -110,7 +110,14 @@ class MolConverter implements ExtendedCellFactory {
 
 	private class SmilesConv implements Conv {
 
-		private final SmilesGenerator SG = SmilesGenerator.isomeric().aromatic();
+		// the cell factory is shared by the worker threads
+		private final ThreadLocal<SmilesGenerator> SG = new ThreadLocal<SmilesGenerator>() {
+
+			@Override
+			protected SmilesGenerator initialValue() {
+				return SmilesGenerator.isomeric().aromatic();
+			}
+		};
 		
 		/**
 		 * {@inheritDoc}
@@ -118,7 +125,7 @@ class MolConverter implements ExtendedCellFactory {
 		@Override
 		public DataCell conv(final IAtomContainer mol) throws Exception {
 			
-			String smiles = SG.create(mol);
+			String smiles = SG.get().create(mol);
 			if (smiles == null || smiles.isEmpty()) {
 				throw new CDKException("Smiles generation failed.");
 			}
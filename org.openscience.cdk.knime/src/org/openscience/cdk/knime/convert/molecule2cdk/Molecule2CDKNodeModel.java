@@ -43,6 +43,9 @@ import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeModel;
 import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
+import org.openscience.cdk.knime.commons.CDKScheduler;
+import org.openscience.cdk.knime.commons.CDKScheduler.Lease;
+import org.openscience.cdk.knime.commons.CDKScheduler.Workload;
 import org.openscience.cdk.knime.commons.MolConverter;
 import org.openscience.cdk.knime.commons.MolConverter.FORMAT;
 import org.openscience.cdk.knime.type.CDKAdapterCell;
@@ -74,9 +77,6 @@ public class Molecule2CDKNodeModel extends NodeModel {
 	protected BufferedDataTable[] execute(final BufferedDataTable[] inData, final ExecutionContext exec)
 			throws Exception {
 		
-		int maxParallelWorkers = (int) Math.ceil(1.5 * Runtime.getRuntime().availableProcessors());
-		int maxQueueSize = 10 * maxParallelWorkers;
-		
 		int columnIndex = inData[0].getDataTableSpec().findColumnIndex(settings.targetColumn());
 		
 		DataTableSpec outSpec;
@@ -110,12 +110,16 @@ public class Molecule2CDKNodeModel extends NodeModel {
 			converter = getConverter(FORMAT.STRING);
 		}
 		
-		Molecule2CDKWorker worker = new Molecule2CDKWorker(maxQueueSize, maxParallelWorkers, columnIndex, exec,
+		Lease lease = CDKScheduler.getInstance().acquire(getClass().getName(), Workload.CPU, Integer.MAX_VALUE);
+		Molecule2CDKWorker worker = new Molecule2CDKWorker(lease.queueSize(), lease.parallelism(), columnIndex, exec,
 				inData[0].size(), outputTable, converter, settings);
 
+		long rows = 0;
 		try {
 			worker.run(inData[0]);
+			rows = worker.getFinishedCount();
 		} finally { 
+			lease.release(rows);
 			outputTable.close();
 		}
 
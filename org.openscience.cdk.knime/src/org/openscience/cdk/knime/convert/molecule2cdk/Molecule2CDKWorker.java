@@ -17,11 +17,11 @@ import org.knime.core.data.StringValue;
 import org.knime.core.data.append.AppendedColumnRow;
 import org.knime.core.data.xml.XMLValue;
 import org.knime.core.node.BufferedDataContainer;
-import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
 import org.knime.core.util.MultiThreadWorker;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.knime.commons.MolConverter;
+import org.openscience.cdk.knime.core.WorkerProgress;
 import org.openscience.cdk.knime.type.CDKCell3;
 
 public class Molecule2CDKWorker extends MultiThreadWorker<DataRow, DataRow> {
@@ -101,15 +101,6 @@ public class Molecule2CDKWorker extends MultiThreadWorker<DataRow, DataRow> {
 			bdc.addRowToTable(append);
 		}
 
-		exec.setProgress(
-				this.getFinishedCount() / max,
-				this.getFinishedCount() + " (active/submitted: " + this.getActiveCount() + "/"
-						+ (this.getSubmittedCount() - this.getFinishedCount()) + ")");
-
-		try {
-			exec.checkCanceled();
-		} catch (CanceledExecutionException cee) {
-			throw new CancellationException();
-		}
+		WorkerProgress.update(this, exec, max);
 	}
 }
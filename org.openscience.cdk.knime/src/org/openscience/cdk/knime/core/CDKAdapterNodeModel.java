@@ -18,8 +18,10 @@ package org.openscience.cdk.knime.core;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 import org.knime.chem.types.InchiValue;
 import org.knime.chem.types.SdfValue;
@@ -40,6 +42,7 @@ import org.knime.core.data.StringValue;
 import org.knime.core.data.container.ColumnRearranger;
 import org.knime.core.data.container.SingleCellFactory;
 import org.knime.core.data.def.IntCell;
+import org.knime.core.node.BufferedDataContainer;
 import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
@@ -49,7 +52,23 @@ import org.knime.core.node.NodeLogger;
 import org.knime.core.node.NodeModel;
 import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.node.port.PortType;
+import org.knime.core.node.streamable.BufferedDataTableRowOutput;
+import org.knime.core.node.streamable.InputPortRole;
+import org.knime.core.node.streamable.OutputPortRole;
+import org.knime.core.node.streamable.PartitionInfo;
+import org.knime.core.node.streamable.PortInput;
+import org.knime.core.node.streamable.PortObjectInput;
+import org.knime.core.node.streamable.PortOutput;
+import org.knime.core.node.streamable.RowInput;
+import org.knime.core.node.streamable.RowOutput;
+import org.knime.core.node.streamable.StreamableOperator;
+import org.knime.core.util.MultiThreadWorker;
 import org.openscience.cdk.knime.commons.CDKNodeUtils;
+import org.openscience.cdk.knime.commons.CDKScheduler;
+import org.openscience.cdk.knime.commons.CDKScheduler.Lease;
+import org.openscience.cdk.knime.commons.CDKScheduler.Workload;
 import org.openscience.cdk.knime.type.CDKTypeConverter;
 import org.openscience.cdk.knime.type.CDKValue;
 
@@ -80,6 +99,19 @@ public abstract class CDKAdapterNodeModel extends NodeModel {
 		this.settings = settings;
 	}
 
+	/**
+	 * Creates a new adapter node model with the given port types, e.g. with optional in-ports.
+	 * 
+	 * @param inPortTypes the types of the in-ports
+	 * @param outPortTypes the types of the out-ports
+	 * @param settings an CDK settings instance
+	 */
+	protected CDKAdapterNodeModel(final PortType[] inPortTypes, final PortType[] outPortTypes,
+			final CDKSettings settings) {
+		super(inPortTypes, outPortTypes);
+		this.settings = settings;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -87,15 +119,12 @@ public abstract class CDKAdapterNodeModel extends NodeModel {
 	protected BufferedDataTable[] execute(final BufferedDataTable[] inData, final ExecutionContext exec)
 			throws Exception {
 
-		maxParallelWorkers = (int) Math.ceil(1.5 * Runtime.getRuntime().availableProcessors());
-		maxQueueSize = 10 * maxParallelWorkers;
-
-		BufferedDataTable[] convertedTables = null;
+		ConvertedTable[] convertedTables = null;
 		BufferedDataTable[] resultTables = null;
 
 		try {
 			// convert compatible tables containing molecule representations to 'CDK tables'
-			convertedTables = convertTables(inData, exec);
+			convertedTables = useLazyConversion() ? wrapTables(inData) : wrapTables(convertTables(inData, exec));
 			// process the converted tables by adding or replacing columns
 			resultTables = process(convertedTables, exec);
 		} catch (final Throwable exception) {
@@ -105,6 +134,145 @@ public abstract class CDKAdapterNodeModel extends NodeModel {
 		return resultTables;
 	}
 
+	/**
+	 * Returns the type of work the node carries out per row. Used to size the worker pool.
+	 * 
+	 * @return the workload type
+	 */
+	protected Workload workload() {
+		return Workload.CPU;
+	}
+
+	/**
+	 * Returns the max. number of parallel workers the node can use.
+	 * 
+	 * @return the max. number of workers
+	 */
+	protected int maxParallelism() {
+		return Integer.MAX_VALUE;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public InputPortRole[] getInputPortRoles() {
+
+		// the molecule table is streamed, additional (query) tables are read completely
+		InputPortRole[] roles = new InputPortRole[getNrInPorts()];
+		Arrays.fill(roles, InputPortRole.NONDISTRIBUTED_NONSTREAMABLE);
+		roles[0] = InputPortRole.DISTRIBUTED_STREAMABLE;
+		return roles;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public OutputPortRole[] getOutputPortRoles() {
+
+		OutputPortRole[] roles = new OutputPortRole[getNrOutPorts()];
+		Arrays.fill(roles, OutputPortRole.DISTRIBUTED);
+		return roles;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public StreamableOperator createStreamableOperator(final PartitionInfo partitionInfo,
+			final PortObjectSpec[] inSpecs) throws InvalidSettingsException {
+
+		return new StreamableOperator() {
+
+			@Override
+			public void runFinal(final PortInput[] inputs, final PortOutput[] outputs, final ExecutionContext exec)
+					throws Exception {
+
+				ConvertedTable[] convertedTables = new ConvertedTable[inputs.length];
+				RowInput rowInput = (RowInput) inputs[0];
+				DataTableSpec spec = rowInput.getDataTableSpec();
+				DataCellTypeConverter converter = createConverter(spec);
+				convertedTables[0] = (converter == null) ? new ConvertedTable(rowInput, spec, columnIndex, null)
+						: new ConvertedTable(rowInput, convertSpec(spec, converter), columnIndex, converter);
+				for (int i = 1; i < inputs.length; i++) {
+					if (inputs[i] != null) {
+						convertedTables[i] = wrapTable((BufferedDataTable) ((PortObjectInput) inputs[i])
+								.getPortObject());
+					}
+				}
+
+				RowOutput[] rowOutputs = new RowOutput[outputs.length];
+				for (int i = 0; i < outputs.length; i++) {
+					rowOutputs[i] = (RowOutput) outputs[i];
+				}
+
+				run(convertedTables, rowOutputs, exec);
+			}
+		};
+	}
+
+	/**
+	 * Processes the rows of the first converted input table with the worker of the node and collects the output rows
+	 * in the data containers.
+	 * 
+	 * @param convertedTables the converted (compatible) input tables
+	 * @param exec the execution context
+	 * @param containers the data containers, one per out-port
+	 * @return the resulting output tables
+	 * @throws Exception if an error has occurred during execution
+	 */
+	protected BufferedDataTable[] run(final ConvertedTable[] convertedTables, final ExecutionContext exec,
+			final BufferedDataContainer... containers) throws Exception {
+
+		RowOutput[] outputs = new RowOutput[containers.length];
+		for (int i = 0; i < containers.length; i++) {
+			outputs[i] = new BufferedDataTableRowOutput(containers[i]);
+		}
+
+		run(convertedTables, outputs, exec);
+
+		BufferedDataTable[] tables = new BufferedDataTable[containers.length];
+		for (int i = 0; i < containers.length; i++) {
+			tables[i] = containers[i].getTable();
+		}
+		return tables;
+	}
+
+	private void run(final ConvertedTable[] convertedTables, final RowOutput[] outputs, final ExecutionContext exec)
+			throws Exception {
+
+		// size the worker pool within the global thread budget
+		Lease lease = CDKScheduler.getInstance().acquire(getClass().getName(), workload(), maxParallelism());
+		maxParallelWorkers = lease.parallelism();
+		maxQueueSize = lease.queueSize();
+
+		long rows = 0;
+		try {
+			MultiThreadWorker<DataRow, ?> worker = createWorker(convertedTables, outputs, exec);
+			worker.run(convertedTables[0]);
+			rows = worker.getFinishedCount();
+		} catch (InterruptedException e) {
+			CanceledExecutionException cee = new CanceledExecutionException(e.getMessage());
+			cee.initCause(e);
+			throw cee;
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause == null) {
+				cause = e;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new RuntimeException(cause);
+		} finally {
+			lease.release(rows);
+			for (RowOutput output : outputs) {
+				output.close();
+			}
+		}
+	}
+
 	/**
 	 * Converts compatible column specs of molecule types.
 	 * 
@@ -213,6 +381,72 @@ public abstract class CDKAdapterNodeModel extends NodeModel {
 		return convertedTables;
 	}
 
+	/**
+	 * Wraps data tables with compatible molecule types. The molecule column is converted lazily row by row in the
+	 * thread that accesses the molecule cell, no intermediate tables are created.
+	 * 
+	 * @param inData the original table data
+	 * @return the lazily converted tables
+	 */
+	protected ConvertedTable[] wrapTables(final BufferedDataTable[] inData) {
+
+		ConvertedTable[] convertedTables = null;
+
+		if (inData != null) {
+			convertedTables = new ConvertedTable[inData.length];
+
+			for (int i = 0; i < inData.length; i++) {
+				if (inData[i] != null) {
+					convertedTables[i] = wrapTable(inData[i]);
+				}
+			}
+		}
+
+		return convertedTables;
+	}
+
+	private ConvertedTable wrapTable(final BufferedDataTable table) {
+
+		final DataTableSpec tableSpec = table.getDataTableSpec();
+		final DataCellTypeConverter converter = createConverter(tableSpec);
+		if (converter == null) {
+			return new ConvertedTable(table);
+		}
+		return new ConvertedTable(table, convertSpec(tableSpec, converter), columnIndex, converter);
+	}
+
+	/**
+	 * Creates the converter for the molecule column.
+	 * 
+	 * @param spec the original input spec
+	 * @return the converter or null if the molecule column needs no conversion
+	 */
+	private DataCellTypeConverter createConverter(final DataTableSpec spec) {
+
+		if (spec.getNumColumns() > 0 && needsConversion(spec)) {
+			// get adapter for the molecule type
+			return CDKTypeConverter.createConverter(spec, columnIndex);
+		}
+		return null;
+	}
+
+	private DataTableSpec convertSpec(final DataTableSpec spec, final DataCellTypeConverter converter) {
+
+		final ColumnRearranger rearranger = new ColumnRearranger(spec);
+		rearranger.ensureColumnIsConverted(converter, columnIndex);
+		return rearranger.createSpec();
+	}
+
+	/**
+	 * Whether the molecule column is converted lazily within the processing of each row. Nodes that need a fully
+	 * materialised CDK table can override this method to convert the input tables up front.
+	 * 
+	 * @return if the input tables are converted lazily
+	 */
+	protected boolean useLazyConversion() {
+		return true;
+	}
+
 	/**
 	 * Checks if the selected molecule type needs conversion to a CDK type.
 	 * 
@@ -376,6 +610,21 @@ public abstract class CDKAdapterNodeModel extends NodeModel {
 	 * @return the resulting output tables
 	 * @throws Exception if an error has occurred during execution
 	 */
-	protected abstract BufferedDataTable[] process(final BufferedDataTable[] convertedTables,
+	protected abstract BufferedDataTable[] process(final ConvertedTable[] convertedTables,
 			final ExecutionContext exec) throws Exception;
+
+	/**
+	 * Creates the worker that processes the rows of the first converted input table. The worker uses
+	 * {@link #maxParallelWorkers} threads as granted by the {@link CDKScheduler}, keeps at most {@link #maxQueueSize}
+	 * rows in flight and pushes the results to the outputs in input order. It is used for both the buffered and the
+	 * streaming execution of the node.
+	 * 
+	 * @param convertedTables the converted (compatible) input tables
+	 * @param outputs the row outputs, one per out-port
+	 * @param exec the execution context
+	 * @return the worker
+	 * @throws Exception if the worker cannot be created
+	 */
+	protected abstract MultiThreadWorker<DataRow, ?> createWorker(final ConvertedTable[] convertedTables,
+			final RowOutput[] outputs, final ExecutionContext exec) throws Exception;
 }
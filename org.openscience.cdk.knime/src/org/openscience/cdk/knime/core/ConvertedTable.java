@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2016, Stephan Beisken (sbeisken@gmail.com). All rights reserved.
+ *
+ * This file is part of the KNIME CDK plugin.
+ *
+ * The KNIME CDK plugin is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The KNIME CDK plugin is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the plugin. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.openscience.cdk.knime.core;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataCellTypeConverter;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.MissingCell;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.def.DefaultCellIterator;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.streamable.RowInput;
+
+/**
+ * Input table of a CDK adapter node with the molecule column converted to a CDK compatible type. The molecule column
+ * is either converted up front or lazily: in the latter case every row converts its molecule cell on first access, i.e.
+ * within the compute step of the worker that processes the row, and no intermediate table is written.
+ * <p>
+ * The rows are either backed by a buffered data table or, in streaming mode, by a row input. A streamed table can
+ * only be iterated once and its size is unknown.
+ *
+ * @author Stephan Beisken, European Bioinformatics Institute
+ */
+public final class ConvertedTable implements Iterable<DataRow> {
+
+	private final static NodeLogger LOGGER = NodeLogger.getLogger(ConvertedTable.class);
+
+	private final Iterable<DataRow> rows;
+	// null if streamed
+	private final BufferedDataTable table;
+	private final long size;
+	private final DataTableSpec spec;
+	private final int columnIndex;
+	private final DataCellTypeConverter converter;
+
+	/**
+	 * Creates a table that needs no conversion.
+	 *
+	 * @param table the compatible input table
+	 */
+	public ConvertedTable(final BufferedDataTable table) {
+		this(table, table.getDataTableSpec(), -1, null);
+	}
+
+	/**
+	 * Creates a lazily converted table.
+	 *
+	 * @param table the input table
+	 * @param spec the spec of the converted table
+	 * @param columnIndex the index of the molecule column
+	 * @param converter the converter for the molecule column or null if no conversion is needed
+	 */
+	public ConvertedTable(final BufferedDataTable table, final DataTableSpec spec, final int columnIndex,
+			final DataCellTypeConverter converter) {
+		this(table, table, table.size(), spec, columnIndex, converter);
+	}
+
+	/**
+	 * Creates a lazily converted table from a streamed input.
+	 *
+	 * @param input the row input
+	 * @param spec the spec of the converted table
+	 * @param columnIndex the index of the molecule column
+	 * @param converter the converter for the molecule column or null if no conversion is needed
+	 */
+	public ConvertedTable(final RowInput input, final DataTableSpec spec, final int columnIndex,
+			final DataCellTypeConverter converter) {
+		this(new RowInputIterable(input), null, -1, spec, columnIndex, converter);
+	}
+
+	private ConvertedTable(final Iterable<DataRow> rows, final BufferedDataTable table, final long size,
+			final DataTableSpec spec, final int columnIndex, final DataCellTypeConverter converter) {
+		this.rows = rows;
+		this.table = table;
+		this.size = size;
+		this.spec = spec;
+		this.columnIndex = columnIndex;
+		this.converter = converter;
+	}
+
+	/**
+	 * Returns the spec of the converted table.
+	 *
+	 * @return the table spec
+	 */
+	public DataTableSpec getDataTableSpec() {
+		return spec;
+	}
+
+	/**
+	 * Returns the unconverted input table, e.g. to read another molecule column than the converted one.
+	 *
+	 * @return the input table or null if the table is streamed
+	 */
+	public BufferedDataTable getTable() {
+		return table;
+	}
+
+	/**
+	 * Returns the number of rows.
+	 *
+	 * @return the row count or -1 if the table is streamed
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Iterator<DataRow> iterator() {
+
+		final Iterator<DataRow> it = rows.iterator();
+		if (converter == null) {
+			return it;
+		}
+
+		return new Iterator<DataRow>() {
+
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			@Override
+			public DataRow next() {
+				return new ConvertingDataRow(it.next(), columnIndex, converter);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Single-use iterable polling the rows of a row input.
+	 */
+	private static final class RowInputIterable implements Iterable<DataRow> {
+
+		private final RowInput input;
+
+		private RowInputIterable(final RowInput input) {
+			this.input = input;
+		}
+
+		@Override
+		public Iterator<DataRow> iterator() {
+
+			return new Iterator<DataRow>() {
+
+				private DataRow next;
+				private boolean done;
+
+				@Override
+				public boolean hasNext() {
+
+					if (next == null && !done) {
+						try {
+							next = input.poll();
+						} catch (InterruptedException exception) {
+							// stop reading, the worker detects the interrupt and cancels the execution
+							Thread.currentThread().interrupt();
+						}
+						done = (next == null);
+					}
+					return next != null;
+				}
+
+				@Override
+				public DataRow next() {
+
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					DataRow row = next;
+					next = null;
+					return row;
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+	}
+
+	/**
+	 * Data row that converts the cell in the molecule column on first access.
+	 */
+	static final class ConvertingDataRow implements DataRow {
+
+		private final DataRow row;
+		private final int columnIndex;
+		private final DataCellTypeConverter converter;
+
+		private volatile DataCell converted;
+
+		ConvertingDataRow(final DataRow row, final int columnIndex, final DataCellTypeConverter converter) {
+			this.row = row;
+			this.columnIndex = columnIndex;
+			this.converter = converter;
+		}
+
+		@Override
+		public int getNumCells() {
+			return row.getNumCells();
+		}
+
+		@Override
+		public RowKey getKey() {
+			return row.getKey();
+		}
+
+		@Override
+		public DataCell getCell(final int index) {
+
+			if (index != columnIndex) {
+				return row.getCell(index);
+			}
+
+			DataCell cell = converted;
+			if (cell == null) {
+				try {
+					cell = converter.convert(row.getCell(index));
+				} catch (Exception exception) {
+					LOGGER.warn("Auto conversion in row '" + row.getKey().getString() + "' failed - Using empty cell.");
+					cell = new MissingCell(exception.getMessage());
+				}
+				converted = cell;
+			}
+			return cell;
+		}
+
+		@Override
+		public Iterator<DataCell> iterator() {
+			return new DefaultCellIterator(this);
+		}
+	}
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2016, Stephan Beisken (sbeisken@gmail.com). All rights reserved.
+ *
+ * This file is part of the KNIME CDK plugin.
+ *
+ * The KNIME CDK plugin is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The KNIME CDK plugin is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the plugin. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.openscience.cdk.knime.core;
+
+import org.knime.core.data.DataRow;
+
+/**
+ * Result row of a worker tagged with the out-port it is routed to. The routing decision is made in the compute step
+ * and travels with the result, so no state has to be shared between the compute and the finish step.
+ *
+ * @author Stephan Beisken, European Bioinformatics Institute
+ */
+public final class RoutedRow {
+
+	private final DataRow row;
+	private final int port;
+
+	/**
+	 * Creates a new tagged row.
+	 *
+	 * @param row the result row
+	 * @param port the index of the out-port
+	 */
+	public RoutedRow(final DataRow row, final int port) {
+		this.row = row;
+		this.port = port;
+	}
+
+	/**
+	 * Returns the result row.
+	 *
+	 * @return the row
+	 */
+	public DataRow row() {
+		return row;
+	}
+
+	/**
+	 * Returns the index of the out-port the row is routed to.
+	 *
+	 * @return the out-port
+	 */
+	public int port() {
+		return port;
+	}
+}
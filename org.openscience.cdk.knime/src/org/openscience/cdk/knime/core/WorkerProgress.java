@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2016, Stephan Beisken (sbeisken@gmail.com). All rights reserved.
+ *
+ * This file is part of the KNIME CDK plugin.
+ *
+ * The KNIME CDK plugin is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The KNIME CDK plugin is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the plugin. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.openscience.cdk.knime.core;
+
+import java.util.concurrent.CancellationException;
+
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.util.MultiThreadWorker;
+
+/**
+ * Progress reporting and cancellation shared by the multi-threaded workers of the CDK nodes, called from their finish
+ * step.
+ *
+ * @author Stephan Beisken, European Bioinformatics Institute
+ */
+public final class WorkerProgress {
+
+	private WorkerProgress() {
+		// utility class
+	}
+
+	/**
+	 * Reports the progress of a worker and checks for cancellation.
+	 *
+	 * @param worker the worker
+	 * @param exec the execution monitor
+	 * @param max the number of tasks, zero or less if unknown
+	 * @throws CancellationException if the execution has been canceled
+	 */
+	public static void update(final MultiThreadWorker<?, ?> worker, final ExecutionMonitor exec, final double max) {
+		update(worker, exec, max, 1);
+	}
+
+	/**
+	 * Reports the progress of a worker whose tasks process several rows each and checks for cancellation.
+	 *
+	 * @param worker the worker
+	 * @param exec the execution monitor
+	 * @param max the number of tasks, zero or less if unknown
+	 * @param rowsPerTask the number of rows per task shown in the message
+	 * @throws CancellationException if the execution has been canceled
+	 */
+	public static void update(final MultiThreadWorker<?, ?> worker, final ExecutionMonitor exec, final double max,
+			final int rowsPerTask) {
+
+		long finished = worker.getFinishedCount();
+		String message = finished * rowsPerTask + " (active/submitted: " + worker.getActiveCount() + "/"
+				+ (worker.getSubmittedCount() - finished) + ")";
+		if (max > 0) {
+			exec.setProgress(finished / max, message);
+		} else { // streamed input of unknown size
+			exec.setMessage(message);
+		}
+
+		checkCanceled(exec);
+	}
+
+	/**
+	 * Checks for cancellation in the finish step of a worker.
+	 *
+	 * @param exec the execution monitor
+	 * @throws CancellationException if the execution has been canceled
+	 */
+	public static void checkCanceled(final ExecutionMonitor exec) {
+
+		try {
+			exec.checkCanceled();
+		} catch (CanceledExecutionException cee) {
+			throw new CancellationException();
+		}
+	}
+}
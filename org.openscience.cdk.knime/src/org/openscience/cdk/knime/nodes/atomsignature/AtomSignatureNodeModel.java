@@ -16,19 +16,20 @@
  */
 package org.openscience.cdk.knime.nodes.atomsignature;
 
-import java.util.concurrent.ExecutionException;
-
 import org.knime.core.data.DataColumnSpec;
 import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTableSpec;
 import org.knime.core.data.def.StringCell;
 import org.knime.core.node.BufferedDataContainer;
 import org.knime.core.node.BufferedDataTable;
-import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.streamable.RowOutput;
+import org.knime.core.util.MultiThreadWorker;
 import org.openscience.cdk.knime.core.CDKAdapterNodeModel;
+import org.openscience.cdk.knime.core.ConvertedTable;
 import org.openscience.cdk.knime.nodes.atomsignature.AtomSignatureSettings.SignatureTypes;
 
 /**
@@ -50,7 +51,7 @@ public class AtomSignatureNodeModel extends CDKAdapterNodeModel {
 	 * {@inheritDoc}
 	 */
 	@Override
-	protected BufferedDataTable[] process(BufferedDataTable[] convertedTables, ExecutionContext exec) throws Exception {
+	protected BufferedDataTable[] process(ConvertedTable[] convertedTables, ExecutionContext exec) throws Exception {
 
 		DataTableSpec convertedSpec = convertedTables[0].getDataTableSpec();
 		DataTableSpec appendSpec = appendSpec(convertedSpec);
@@ -58,29 +59,18 @@ public class AtomSignatureNodeModel extends CDKAdapterNodeModel {
 
 		BufferedDataContainer outputTable = exec.createDataContainer(outSpec);
 
-		AtomSignatureWorker worker = new AtomSignatureWorker(maxQueueSize, maxParallelWorkers, columnIndex, exec,
-				outputTable, settings(AtomSignatureSettings.class));
-
-		try {
-			worker.run(convertedTables[0]);
-		} catch (InterruptedException e) {
-			CanceledExecutionException cee = new CanceledExecutionException(e.getMessage());
-			cee.initCause(e);
-			throw cee;
-		} catch (ExecutionException e) {
-			Throwable cause = e.getCause();
-			if (cause == null) {
-				cause = e;
-			}
-			if (cause instanceof RuntimeException) {
-				throw (RuntimeException) cause;
-			}
-			throw new RuntimeException(cause);
-		} finally {
-			outputTable.close();
-		}
+		return run(convertedTables, exec, outputTable);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected MultiThreadWorker<DataRow, ?> createWorker(ConvertedTable[] convertedTables, RowOutput[] outputs,
+			ExecutionContext exec) throws Exception {
 
-		return new BufferedDataTable[] { outputTable.getTable() };
+		return new AtomSignatureWorker(maxQueueSize, maxParallelWorkers, columnIndex, exec, outputs[0],
+				settings(AtomSignatureSettings.class));
 	}
 
 	/**
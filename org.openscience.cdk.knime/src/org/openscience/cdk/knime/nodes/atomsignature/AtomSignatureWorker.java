@@ -33,14 +33,15 @@ import org.knime.core.data.DataType;
 import org.knime.core.data.RowKey;
 import org.knime.core.data.append.AppendedColumnRow;
 import org.knime.core.data.def.StringCell;
-import org.knime.core.node.BufferedDataContainer;
 import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.streamable.RowOutput;
 import org.knime.core.util.MultiThreadWorker;
 import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.knime.CDKNodePlugin;
+import org.openscience.cdk.knime.core.WorkerProgress;
 import org.openscience.cdk.knime.nodes.atomsignature.AtomSignatureSettings.AtomTypes;
 import org.openscience.cdk.knime.nodes.atomsignature.AtomSignatureSettings.SignatureTypes;
 import org.openscience.cdk.knime.preferences.CDKPreferencePage.NUMBERING;
@@ -59,17 +60,17 @@ public class AtomSignatureWorker extends MultiThreadWorker<DataRow, List<DataRow
 
 	private final ExecutionContext exec;
 	private final int columnIndex;
-	private final BufferedDataContainer bdc;
+	private final RowOutput output;
 	private final int addNbColumns;
 	private final AtomSignatureSettings settings;
 
 	public AtomSignatureWorker(final int maxQueueSize, final int maxActiveInstanceSize, final int columnIndex,
-			final ExecutionContext exec, final BufferedDataContainer bdc, AtomSignatureSettings settings) {
+			final ExecutionContext exec, final RowOutput output, AtomSignatureSettings settings) {
 
 		super(maxQueueSize, maxActiveInstanceSize);
 		this.exec = exec;
 		this.columnIndex = columnIndex;
-		this.bdc = bdc;
+		this.output = output;
 		this.settings = settings;
 
 		addNbColumns = settings.isHeightSet() ? settings.getMaxHeight() - settings.getMinHeight() + 2 : 2;
@@ -194,13 +195,9 @@ public class AtomSignatureWorker extends MultiThreadWorker<DataRow, List<DataRow
 		List<DataRow> append = task.get();
 
 		for (DataRow row : append) {
-			bdc.addRowToTable(row);
+			output.push(row);
 		}
 
-		try {
-			exec.checkCanceled();
-		} catch (CanceledExecutionException cee) {
-			throw new CancellationException();
-		}
+		WorkerProgress.checkCanceled(exec);
 	}
 }
@@ -29,13 +29,13 @@ import org.knime.core.data.DataRow;
 import org.knime.core.data.DataType;
 import org.knime.core.data.append.AppendedColumnRow;
 import org.knime.core.data.collection.CollectionCellFactory;
-import org.knime.core.node.BufferedDataContainer;
-import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.streamable.RowOutput;
 import org.knime.core.util.MultiThreadWorker;
 import org.openscience.cdk.graph.ConnectivityChecker;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.interfaces.IAtomContainerSet;
+import org.openscience.cdk.knime.core.WorkerProgress;
 import org.openscience.cdk.knime.type.CDKCell3;
 import org.openscience.cdk.knime.type.CDKValue;
 
@@ -48,16 +48,16 @@ public class ConnectivityWorker extends MultiThreadWorker<DataRow, DataRow> {
 
 	private final ExecutionContext exec;
 	private final int columnIndex;
-	private final BufferedDataContainer bdc;
+	private final RowOutput output;
 	private final ConnectivitySettings settings;
 
 	public ConnectivityWorker(int maxQueueSize, int maxActiveInstanceSize, final int columnIndex,
-			final ExecutionContext exec, final BufferedDataContainer bdc, ConnectivitySettings settings) {
+			final ExecutionContext exec, final RowOutput output, ConnectivitySettings settings) {
 
 		super(maxQueueSize, maxActiveInstanceSize);
 		this.exec = exec;
 		this.columnIndex = columnIndex;
-		this.bdc = bdc;
+		this.output = output;
 		this.settings = settings;
 	}
 
@@ -139,14 +139,10 @@ public class ConnectivityWorker extends MultiThreadWorker<DataRow, DataRow> {
 
 		DataRow append = task.get();
 		if (!append.getCell(columnIndex).isMissing()) {
-			bdc.addRowToTable(append);
+			output.push(append);
 		}
 
-		try {
-			exec.checkCanceled();
-		} catch (CanceledExecutionException cee) {
-			throw new CancellationException();
-		}
+		WorkerProgress.checkCanceled(exec);
 	}
 
 }
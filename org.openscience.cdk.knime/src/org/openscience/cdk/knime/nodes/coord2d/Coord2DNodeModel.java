@@ -17,20 +17,21 @@
  */
 package org.openscience.cdk.knime.nodes.coord2d;
 
-import java.util.concurrent.ExecutionException;
-
 import org.knime.core.data.DataColumnSpec;
 import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTableSpec;
 import org.knime.core.node.BufferedDataContainer;
 import org.knime.core.node.BufferedDataTable;
-import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.streamable.RowOutput;
+import org.knime.core.util.MultiThreadWorker;
 import org.openscience.cdk.knime.commons.CDKNodeUtils;
 import org.openscience.cdk.knime.core.CDKAdapterNodeModel;
+import org.openscience.cdk.knime.core.ConvertedTable;
 import org.openscience.cdk.knime.type.CDKAdapterCell;
 import org.openscience.cdk.knime.type.CDKCell;
 
@@ -124,32 +125,21 @@ public class Coord2DNodeModel extends CDKAdapterNodeModel {
 	 * {@inheritDoc}
 	 */
 	@Override
-	protected BufferedDataTable[] process(BufferedDataTable[] convertedTables, ExecutionContext exec) throws Exception {
+	protected BufferedDataTable[] process(ConvertedTable[] convertedTables, ExecutionContext exec) throws Exception {
 
 		BufferedDataContainer outputTable = exec.createDataContainer(appendSpec(convertedTables[0].getDataTableSpec()));
 
-		Coord2DWorker worker = new Coord2DWorker(maxQueueSize, maxParallelWorkers, columnIndex, exec.createSubProgress(1),
-				convertedTables[0].size(), outputTable, m_force);
-
-		try {
-			worker.run(convertedTables[0]);
-		} catch (InterruptedException e) {
-			CanceledExecutionException cee = new CanceledExecutionException(e.getMessage());
-			cee.initCause(e);
-			throw cee;
-		} catch (ExecutionException e) {
-			Throwable cause = e.getCause();
-			if (cause == null) {
-				cause = e;
-			}
-			if (cause instanceof RuntimeException) {
-				throw (RuntimeException) cause;
-			}
-			throw new RuntimeException(cause);
-		} finally {
-			outputTable.close();
-		}
+		return run(convertedTables, exec, outputTable);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected MultiThreadWorker<DataRow, ?> createWorker(ConvertedTable[] convertedTables, RowOutput[] outputs,
+			ExecutionContext exec) throws Exception {
 
-		return new BufferedDataTable[] { outputTable.getTable() };
+		return new Coord2DWorker(maxQueueSize, maxParallelWorkers, columnIndex, exec.createSubProgress(1),
+				convertedTables[0].size(), outputs[0], m_force);
 	}
 }
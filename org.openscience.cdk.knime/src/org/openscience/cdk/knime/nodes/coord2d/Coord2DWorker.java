@@ -24,13 +24,13 @@ import org.knime.core.data.AdapterValue;
 import org.knime.core.data.DataCell;
 import org.knime.core.data.DataRow;
 import org.knime.core.data.DataType;
-import org.knime.core.node.BufferedDataContainer;
-import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionMonitor;
 import org.knime.core.node.NodeLogger;
+import org.knime.core.node.streamable.RowOutput;
 import org.knime.core.util.MultiThreadWorker;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.knime.commons.CDKNodeUtils;
+import org.openscience.cdk.knime.core.WorkerProgress;
 import org.openscience.cdk.knime.type.CDKCell3;
 import org.openscience.cdk.knime.type.CDKValue;
 
@@ -46,15 +46,15 @@ public class Coord2DWorker extends MultiThreadWorker<DataRow, DataRow> {
 	private final ExecutionMonitor exec;
 	private final int columnIndex;
 	private final double max;
-	private final BufferedDataContainer bdc;
+	private final RowOutput output;
 	private final boolean force;
 
 	public Coord2DWorker(final int maxQueueSize, final int maxActiveInstanceSize, final int columnIndex,
-			final ExecutionMonitor exec, final long max, final BufferedDataContainer bdc, final boolean force) {
+			final ExecutionMonitor exec, final long max, final RowOutput output, final boolean force) {
 
 		super(maxQueueSize, maxActiveInstanceSize);
 		this.exec = exec;
-		this.bdc = bdc;
+		this.output = output;
 		this.max = max;
 		this.force = force;
 		this.columnIndex = columnIndex;
@@ -92,19 +92,10 @@ public class Coord2DWorker extends MultiThreadWorker<DataRow, DataRow> {
 
 		DataRow append = task.get();
 		if (!append.getCell(columnIndex).isMissing()) {
-			bdc.addRowToTable(append);
+			output.push(append);
 		}
 
-		exec.setProgress(
-				this.getFinishedCount() / max,
-				this.getFinishedCount() + " (active/submitted: " + this.getActiveCount() + "/"
-						+ (this.getSubmittedCount() - this.getFinishedCount()) + ")");
-		
-		try {
-			exec.checkCanceled();
-		} catch (CanceledExecutionException cee) {
-			throw new CancellationException();
-		}
+		WorkerProgress.update(this, exec, max);
 	}
 
 }
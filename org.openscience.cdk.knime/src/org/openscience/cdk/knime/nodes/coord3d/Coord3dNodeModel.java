@@ -16,20 +16,22 @@
  */
 package org.openscience.cdk.knime.nodes.coord3d;
 
-import java.util.concurrent.ExecutionException;
-
 import org.knime.core.data.DataColumnSpec;
 import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTableSpec;
 import org.knime.core.node.BufferedDataContainer;
 import org.knime.core.node.BufferedDataTable;
-import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.streamable.RowOutput;
+import org.knime.core.util.MultiThreadWorker;
 import org.openscience.cdk.knime.commons.CDKNodeUtils;
+import org.openscience.cdk.knime.commons.CDKScheduler.Workload;
 import org.openscience.cdk.knime.core.CDKAdapterNodeModel;
+import org.openscience.cdk.knime.core.ConvertedTable;
 import org.openscience.cdk.knime.type.CDKCell3;
 
 /**
@@ -120,32 +122,38 @@ public class Coord3dNodeModel extends CDKAdapterNodeModel {
 	 * {@inheritDoc}
 	 */
 	@Override
-	protected BufferedDataTable[] process(BufferedDataTable[] convertedTables, ExecutionContext exec) throws Exception {
+	protected BufferedDataTable[] process(ConvertedTable[] convertedTables, ExecutionContext exec) throws Exception {
 
 		BufferedDataContainer outputTable = exec.createDataContainer(appendSpec(convertedTables[0].getDataTableSpec()));
 
-		Coord3dWorker worker = new Coord3dWorker(1, 1, columnIndex, exec.createSubProgress(1),
-				convertedTables[0].size(), outputTable, timeout);
-
-		try {
-			worker.run(convertedTables[0]);
-		} catch (InterruptedException e) {
-			CanceledExecutionException cee = new CanceledExecutionException(e.getMessage());
-			cee.initCause(e);
-			throw cee;
-		} catch (ExecutionException e) {
-			Throwable cause = e.getCause();
-			if (cause == null) {
-				cause = e;
-			}
-			if (cause instanceof RuntimeException) {
-				throw (RuntimeException) cause;
-			}
-			throw new RuntimeException(cause);
-		} finally {
-			outputTable.close();
-		}
+		return run(convertedTables, exec, outputTable);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected MultiThreadWorker<DataRow, ?> createWorker(ConvertedTable[] convertedTables, RowOutput[] outputs,
+			ExecutionContext exec) throws Exception {
+
+		return new Coord3dWorker(maxQueueSize, maxParallelWorkers, columnIndex, exec.createSubProgress(1),
+				convertedTables[0].size(), outputs[0], timeout);
+	}
 
-		return new BufferedDataTable[] { outputTable.getTable() };
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected Workload workload() {
+		return Workload.WALL_CLOCK;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected int maxParallelism() {
+		// the 3D model builder is a shared instance
+		return 1;
 	}
 }
@@ -29,16 +29,16 @@ import org.knime.core.data.AdapterValue;
 import org.knime.core.data.DataCell;
 import org.knime.core.data.DataRow;
 import org.knime.core.data.DataType;
-import org.knime.core.node.BufferedDataContainer;
-import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionMonitor;
 import org.knime.core.node.NodeLogger;
+import org.knime.core.node.streamable.RowOutput;
 import org.knime.core.util.MultiThreadWorker;
 import org.knime.core.util.Pointer;
 import org.openscience.cdk.AtomContainer;
 import org.openscience.cdk.graph.ConnectivityChecker;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.interfaces.IAtomContainerSet;
+import org.openscience.cdk.knime.core.WorkerProgress;
 import org.openscience.cdk.knime.type.CDKCell3;
 import org.openscience.cdk.knime.type.CDKValue;
 import org.openscience.cdk.modeling.builder3d.ModelBuilder3D;
@@ -57,17 +57,17 @@ public class Coord3dWorker extends MultiThreadWorker<DataRow, DataRow> {
 
 	private final ExecutionMonitor exec;
 	private final int columnIndex;
-	private final BufferedDataContainer bdc;
+	private final RowOutput output;
 	private final int timeout;
 	private final double max;
 	private final ExecutorService executor;
 
 	public Coord3dWorker(final int maxQueueSize, final int maxActiveInstanceSize, final int columnIndex,
-			final ExecutionMonitor exec, final long max, final BufferedDataContainer bdc, final int timeout) {
+			final ExecutionMonitor exec, final long max, final RowOutput output, final int timeout) {
 
 		super(maxQueueSize, maxActiveInstanceSize);
 		this.exec = exec;
-		this.bdc = bdc;
+		this.output = output;
 		this.max = max;
 		this.timeout = timeout;
 		this.columnIndex = columnIndex;
@@ -148,18 +148,9 @@ public class Coord3dWorker extends MultiThreadWorker<DataRow, DataRow> {
 
 		DataRow append = task.get();
 		if (!append.getCell(columnIndex).isMissing()) {
-			bdc.addRowToTable(append);
+			output.push(append);
 		}
 
-		exec.setProgress(
-				this.getFinishedCount() / max,
-				this.getFinishedCount() + " (active/submitted: " + this.getActiveCount() + "/"
-						+ (this.getSubmittedCount() - this.getFinishedCount()) + ")");
-		
-		try {
-			exec.checkCanceled();
-		} catch (CanceledExecutionException cee) {
-			throw new CancellationException();
-		}
+		WorkerProgress.update(this, exec, max);
 	}
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2016, Stephan Beisken (sbeisken@gmail.com). All rights reserved.
+ *
+ * This file is part of the KNIME CDK plugin.
+ *
+ * The KNIME CDK plugin is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The KNIME CDK plugin is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the plugin. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.openscience.cdk.knime.nodes.deduplicate;
+
+import org.knime.core.node.NodeDialogPane;
+import org.knime.core.node.NodeFactory;
+import org.knime.core.node.NodeView;
+import org.openscience.cdk.knime.core.CDKDialog;
+import org.openscience.cdk.knime.nodes.deduplicate.DeduplicateNodeModel.Setting;
+import org.openscience.cdk.knime.type.CDKValue;
+
+/**
+ * <code>NodeFactory</code> for the "Molecule Deduplication" Node.
+ *
+ * @author Stephan Beisken, European Bioinformatics Institute
+ */
+public class DeduplicateNodeFactory extends NodeFactory<DeduplicateNodeModel> {
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public DeduplicateNodeModel createNodeModel() {
+		return new DeduplicateNodeModel();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getNrNodeViews() {
+		return 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public NodeView<DeduplicateNodeModel> createNodeView(final int viewIndex, final DeduplicateNodeModel nodeModel) {
+		return null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean hasDialog() {
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public NodeDialogPane createNodeDialogPane() {
+
+		CDKDialog dialog = new CDKDialog();
+
+		dialog.addColumnSelection(Setting.COLUMN_NAME.label(), CDKValue.class);
+		dialog.addColumnSelection(Setting.REFERENCE_COLUMN.label(), 1, CDKValue.class);
+
+		return dialog.build();
+	}
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2016, Stephan Beisken (sbeisken@gmail.com). All rights reserved.
+ *
+ * This file is part of the KNIME CDK plugin.
+ *
+ * The KNIME CDK plugin is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The KNIME CDK plugin is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the plugin. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.openscience.cdk.knime.nodes.deduplicate;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.knime.core.data.AdapterValue;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.append.AppendedColumnRow;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeModel;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.port.PortType;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.knime.commons.CDKNodeUtils;
+import org.openscience.cdk.knime.type.CDKCell3;
+import org.openscience.cdk.knime.type.CDKValue;
+
+/**
+ * This is the model implementation of the molecule deduplication node. The rows are partitioned by the 64-bit
+ * molecule hash of the CDK cells in two passes: the first pass counts the hashes in a {@link HashCountTable}, the
+ * second pass routes every row whose hash occurs once to the unique molecules right away. Only the rows of hashes
+ * that occur more than once are verified by the full molecule hash, which includes stereochemistry and isotopes. The
+ * full hash and row key of the first occurrence are recorded in the table as well, only molecules that share the
+ * 64-bit hash but differ in the full hash are kept on the heap.
+ * <p>
+ * The molecules of an optional reference table, e.g. registered compounds, are counted first, so that input
+ * molecules found in the references are duplicates joined to the row key of the reference.
+ *
+ * @author Stephan Beisken, European Bioinformatics Institute
+ */
+public class DeduplicateNodeModel extends NodeModel {
+
+	protected enum Setting {
+		COLUMN_NAME("Molecule"), REFERENCE_COLUMN("Reference molecule");
+
+		private String name;
+
+		Setting(String name) {
+			this.name = name;
+		}
+
+		public String label() {
+			return name;
+		}
+	};
+
+	private String columnName = null;
+	private String referenceName = null;
+
+	/**
+	 * Constructor for the node model.
+	 */
+	protected DeduplicateNodeModel() {
+		super(new PortType[] { BufferedDataTable.TYPE, BufferedDataTable.TYPE_OPTIONAL }, new PortType[] {
+				BufferedDataTable.TYPE, BufferedDataTable.TYPE });
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected BufferedDataTable[] execute(final BufferedDataTable[] inData, final ExecutionContext exec)
+			throws Exception {
+
+		BufferedDataTable input = inData[0];
+		BufferedDataTable references = inData[1];
+		int columnIndex = input.getDataTableSpec().findColumnIndex(columnName);
+		int referenceIndex = (references == null) ? -1 : references.getDataTableSpec().findColumnIndex(
+				referenceName);
+
+		long size = input.size() + ((references == null) ? 0 : references.size());
+		HashCountTable counts = new HashCountTable(size);
+
+		// first pass, count the canonical hashes
+		ExecutionMonitor countExec = exec.createSubProgress(0.3);
+		long count = 0;
+		if (references != null) {
+			count = count(references, referenceIndex, counts, countExec, count, size);
+		}
+		count(input, columnIndex, counts, countExec, count, size);
+
+		// second pass, verify the hashes that occur more than once
+		ExecutionMonitor routeExec = exec.createSubProgress(0.7);
+		Map<Long, List<Occurrence>> collisions = new HashMap<Long, List<Occurrence>>();
+		count = 0;
+		if (references != null) {
+			for (DataRow row : references) {
+				routeExec.checkCanceled();
+				routeExec.setProgress(++count / (double) size, "Verifying references");
+				Long hash = hash(row.getCell(referenceIndex));
+				if (hash != null && counts.count(hash) > 1) {
+					firstOccurrence(counts, collisions, hash, row.getCell(referenceIndex), row.getKey().getString());
+				}
+			}
+		}
+
+		BufferedDataContainer unique = exec.createDataContainer(input.getDataTableSpec());
+		BufferedDataContainer duplicates = exec.createDataContainer(createDuplicateSpec(input.getDataTableSpec()));
+		for (DataRow row : input) {
+			routeExec.checkCanceled();
+			routeExec.setProgress(++count / (double) size, "Routing molecules");
+			Long hash = hash(row.getCell(columnIndex));
+			String first = (hash != null && counts.count(hash) > 1) ? firstOccurrence(counts, collisions, hash, row
+					.getCell(columnIndex), row.getKey().getString()) : null;
+			if (first == null) {
+				unique.addRowToTable(row);
+			} else {
+				duplicates.addRowToTable(new AppendedColumnRow(row, new StringCell(first)));
+			}
+		}
+		unique.close();
+		duplicates.close();
+
+		return new BufferedDataTable[] { unique.getTable(), duplicates.getTable() };
+	}
+
+	private long count(final BufferedDataTable table, final int columnIndex, final HashCountTable counts,
+			final ExecutionMonitor exec, long count, final long size) throws CanceledExecutionException {
+
+		for (DataRow row : table) {
+			exec.checkCanceled();
+			exec.setProgress(++count / (double) size, "Counting molecule hashes");
+			Long hash = hash(row.getCell(columnIndex));
+			if (hash != null) {
+				counts.increment(hash);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the row key of the first occurrence of the molecule or null if the row is the first occurrence, which is
+	 * then recorded. The first molecule of a hash is recorded in the hash table, further molecules with the same hash
+	 * but a different full hash in the collision bucket of the hash.
+	 */
+	private static String firstOccurrence(final HashCountTable counts, final Map<Long, List<Occurrence>> collisions,
+			final long hash, final DataCell cell, final String key) {
+
+		CDKValue value = value(cell);
+		long fullHash = (value instanceof CDKCell3) ? ((CDKCell3) value).fullHashCode64() : CDKNodeUtils
+				.calculateFullHash(value.getAtomContainer());
+
+		int record = counts.record(hash);
+		if (record == 0) {
+			counts.addRecord(hash, fullHash, key);
+			return null;
+		} else if (counts.fullHash(record) == fullHash) {
+			return counts.key(record);
+		}
+
+		// different molecules sharing the 64-bit hash
+		List<Occurrence> bucket = collisions.get(hash);
+		if (bucket == null) {
+			bucket = new ArrayList<Occurrence>(2);
+			collisions.put(hash, bucket);
+		}
+		for (Occurrence occurrence : bucket) {
+			if (occurrence.fullHash == fullHash) {
+				return occurrence.key;
+			}
+		}
+		bucket.add(new Occurrence(fullHash, key));
+		return null;
+	}
+
+	/**
+	 * Returns the 64-bit hash of the canonical SMILES of a molecule cell or null for missing cells. CDK cells keep it,
+	 * only cells of earlier versions compute it once.
+	 */
+	private static Long hash(final DataCell cell) {
+
+		CDKValue value = value(cell);
+		if (value == null) {
+			return null;
+		}
+		if (value instanceof CDKCell3) {
+			return ((CDKCell3) value).canonicalHash64();
+		}
+		IAtomContainer molecule = value.getAtomContainer();
+		return (molecule == null) ? null : CDKNodeUtils.calculateSmilesHash(CDKNodeUtils.calculateCanonicalSmiles(
+				molecule, null));
+	}
+
+	private static CDKValue value(final DataCell cell) {
+
+		if (cell.isMissing()) {
+			return null;
+		} else if (cell instanceof CDKValue) {
+			return (CDKValue) cell;
+		} else if (((AdapterValue) cell).getAdapterError(CDKValue.class) != null) {
+			return null;
+		}
+		return ((AdapterValue) cell).getAdapter(CDKValue.class);
+	}
+
+	private DataTableSpec createDuplicateSpec(final DataTableSpec spec) {
+
+		return new DataTableSpec(spec, new DataTableSpec(new DataColumnSpecCreator(DataTableSpec.getUniqueColumnName(
+				spec, "First occurrence"), StringCell.TYPE).createSpec()));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected DataTableSpec[] configure(final DataTableSpec[] inSpecs) throws InvalidSettingsException {
+
+		columnName = CDKNodeUtils.autoConfigure(inSpecs[0], columnName, CDKValue.class);
+		if (inSpecs[1] != null) {
+			referenceName = CDKNodeUtils.autoConfigure(inSpecs[1], referenceName, CDKValue.class);
+		}
+
+		return new DataTableSpec[] { inSpecs[0], createDuplicateSpec(inSpecs[0]) };
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void saveSettingsTo(final NodeSettingsWO settings) {
+
+		settings.addString(Setting.COLUMN_NAME.label(), columnName);
+		settings.addString(Setting.REFERENCE_COLUMN.label(), referenceName);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void loadValidatedSettingsFrom(final NodeSettingsRO settings) throws InvalidSettingsException {
+
+		columnName = settings.getString(Setting.COLUMN_NAME.label());
+		referenceName = settings.getString(Setting.REFERENCE_COLUMN.label());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void validateSettings(final NodeSettingsRO settings) throws InvalidSettingsException {
+
+		settings.getString(Setting.COLUMN_NAME.label());
+		settings.getString(Setting.REFERENCE_COLUMN.label());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void loadInternals(final File internDir, final ExecutionMonitor exec) throws IOException,
+			CanceledExecutionException {
+		// nothing to do
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void saveInternals(final File internDir, final ExecutionMonitor exec) throws IOException,
+			CanceledExecutionException {
+		// nothing to do
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void reset() {
+		// nothing to do
+	}
+
+	/**
+	 * First occurrence of a molecule that shares its hash with a recorded molecule.
+	 */
+	private static final class Occurrence {
+
+		private final long fullHash;
+		private final String key;
+
+		private Occurrence(final long fullHash, final String key) {
+			this.fullHash = fullHash;
+			this.key = key;
+		}
+	}
+}
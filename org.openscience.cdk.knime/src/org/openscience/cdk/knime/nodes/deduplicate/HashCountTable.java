@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2016, Stephan Beisken (sbeisken@gmail.com). All rights reserved.
+ *
+ * This file is part of the KNIME CDK plugin.
+ *
+ * The KNIME CDK plugin is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The KNIME CDK plugin is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the plugin. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.openscience.cdk.knime.nodes.deduplicate;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Open-addressing table counting the occurrences of 64-bit molecule hashes. The slots are held in direct buffers
+ * outside the Java heap, so that tens of millions of hashes neither fill the heap nor add to the garbage collection.
+ * Every slot holds the hash, its count and the number of its first occurrence record, a count of zero marks an empty
+ * slot. Collisions are resolved by linear probing, the capacity is fixed on creation and keeps the load factor at 0.75
+ * or below.
+ * <p>
+ * The first occurrence of a hash, i.e. its full hash and row key, is recorded in direct buffers as well. The records
+ * and keys are appended in chunks that are only allocated when needed.
+ *
+ * @author Stephan Beisken, European Bioinformatics Institute
+ */
+final class HashCountTable {
+
+	// hash, count and record number
+	private static final int SLOT_SIZE = 16;
+	private static final int COUNT_OFFSET = 8;
+	private static final int RECORD_OFFSET = 12;
+	// 1 GB per buffer
+	private static final int SLOTS_PER_BUFFER_BITS = 26;
+	private static final long SLOTS_PER_BUFFER_MASK = (1L << SLOTS_PER_BUFFER_BITS) - 1;
+
+	// full hash and key offset, 1 MB per buffer
+	private static final int RECORD_SIZE = 16;
+	private static final int RECORDS_PER_BUFFER_BITS = 16;
+	private static final int RECORDS_PER_BUFFER_MASK = (1 << RECORDS_PER_BUFFER_BITS) - 1;
+	// length-prefixed UTF-8 keys, 1 MB per buffer
+	private static final int KEY_BUFFER_SIZE = 1 << 20;
+
+	private final ByteBuffer[] buffers;
+	private final long mask;
+
+	private final List<ByteBuffer> records = new ArrayList<ByteBuffer>();
+	private final List<ByteBuffer> keys = new ArrayList<ByteBuffer>();
+	private int recordCount;
+
+	/**
+	 * Creates a new table.
+	 *
+	 * @param expected the max. number of distinct hashes
+	 */
+	HashCountTable(final long expected) {
+
+		long capacity = Long.highestOneBit(Math.max(16, expected + expected / 3)) << 1;
+		mask = capacity - 1;
+
+		int bufferCount = (int) ((capacity + SLOTS_PER_BUFFER_MASK) >>> SLOTS_PER_BUFFER_BITS);
+		buffers = new ByteBuffer[bufferCount];
+		for (int i = 0; i < bufferCount; i++) {
+			long slots = Math.min(capacity - ((long) i << SLOTS_PER_BUFFER_BITS), 1L << SLOTS_PER_BUFFER_BITS);
+			// direct buffers are zeroed, i.e. all slots are empty
+			buffers[i] = ByteBuffer.allocateDirect((int) (slots * SLOT_SIZE));
+		}
+	}
+
+	/**
+	 * Increments the count of a hash.
+	 *
+	 * @param hash the 64-bit hash
+	 * @return the count after the increment
+	 */
+	int increment(final long hash) {
+
+		long slot = find(hash);
+		ByteBuffer buffer = buffers[(int) (slot >>> SLOTS_PER_BUFFER_BITS)];
+		int offset = (int) (slot & SLOTS_PER_BUFFER_MASK) * SLOT_SIZE;
+		int count = buffer.getInt(offset + COUNT_OFFSET);
+		if (count == 0) {
+			buffer.putLong(offset, hash);
+		}
+		buffer.putInt(offset + COUNT_OFFSET, ++count);
+		return count;
+	}
+
+	/**
+	 * Returns the count of a hash.
+	 *
+	 * @param hash the 64-bit hash
+	 * @return the count or zero if the hash has not been added
+	 */
+	int count(final long hash) {
+
+		long slot = find(hash);
+		return buffers[(int) (slot >>> SLOTS_PER_BUFFER_BITS)].getInt((int) (slot & SLOTS_PER_BUFFER_MASK)
+				* SLOT_SIZE + COUNT_OFFSET);
+	}
+
+	/**
+	 * Returns the first occurrence record of a hash.
+	 *
+	 * @param hash the 64-bit hash
+	 * @return the record number or zero if no first occurrence has been recorded
+	 */
+	int record(final long hash) {
+
+		long slot = find(hash);
+		return buffers[(int) (slot >>> SLOTS_PER_BUFFER_BITS)].getInt((int) (slot & SLOTS_PER_BUFFER_MASK)
+				* SLOT_SIZE + RECORD_OFFSET);
+	}
+
+	/**
+	 * Records the first occurrence of a counted hash.
+	 *
+	 * @param hash the 64-bit hash
+	 * @param fullHash the full hash of the first occurrence
+	 * @param key the row key of the first occurrence
+	 * @return the record number
+	 */
+	int addRecord(final long hash, final long fullHash, final String key) {
+
+		long slot = find(hash);
+		ByteBuffer buffer = buffers[(int) (slot >>> SLOTS_PER_BUFFER_BITS)];
+		int offset = (int) (slot & SLOTS_PER_BUFFER_MASK) * SLOT_SIZE;
+		if (buffer.getInt(offset + COUNT_OFFSET) == 0) {
+			throw new IllegalStateException("Hash has not been counted: " + hash);
+		}
+
+		int index = recordCount;
+		if ((index >>> RECORDS_PER_BUFFER_BITS) == records.size()) {
+			records.add(ByteBuffer.allocateDirect(RECORD_SIZE << RECORDS_PER_BUFFER_BITS));
+		}
+		ByteBuffer record = records.get(index >>> RECORDS_PER_BUFFER_BITS);
+		int recordOffset = (index & RECORDS_PER_BUFFER_MASK) * RECORD_SIZE;
+		record.putLong(recordOffset, fullHash);
+		record.putLong(recordOffset + 8, putKey(key));
+
+		// record numbers start at one, zero marks a hash without record
+		buffer.putInt(offset + RECORD_OFFSET, ++recordCount);
+		return recordCount;
+	}
+
+	/**
+	 * Returns the full hash of a first occurrence.
+	 *
+	 * @param record the record number
+	 * @return the full hash
+	 */
+	long fullHash(final int record) {
+
+		int index = record - 1;
+		return records.get(index >>> RECORDS_PER_BUFFER_BITS).getLong((index & RECORDS_PER_BUFFER_MASK)
+				* RECORD_SIZE);
+	}
+
+	/**
+	 * Returns the row key of a first occurrence.
+	 *
+	 * @param record the record number
+	 * @return the row key
+	 */
+	String key(final int record) {
+
+		int index = record - 1;
+		long keyOffset = records.get(index >>> RECORDS_PER_BUFFER_BITS).getLong((index & RECORDS_PER_BUFFER_MASK)
+				* RECORD_SIZE + 8);
+		ByteBuffer buffer = keys.get((int) (keyOffset / KEY_BUFFER_SIZE)).duplicate();
+		buffer.position((int) (keyOffset % KEY_BUFFER_SIZE));
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Appends a key to the key buffers and returns its offset. A key never spans two buffers.
+	 */
+	private long putKey(final String key) {
+
+		byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length + 4 > KEY_BUFFER_SIZE) {
+			throw new IllegalArgumentException("Row key exceeds " + (KEY_BUFFER_SIZE - 4) + " bytes.");
+		}
+		ByteBuffer buffer = keys.isEmpty() ? null : keys.get(keys.size() - 1);
+		if (buffer == null || buffer.remaining() < bytes.length + 4) {
+			buffer = ByteBuffer.allocateDirect(KEY_BUFFER_SIZE);
+			keys.add(buffer);
+		}
+		long offset = (long) (keys.size() - 1) * KEY_BUFFER_SIZE + buffer.position();
+		buffer.putInt(bytes.length);
+		buffer.put(bytes);
+		return offset;
+	}
+
+	/**
+	 * Returns the slot holding the hash or the empty slot it is inserted at.
+	 */
+	private long find(final long hash) {
+
+		// the molecule hashes are well mixed, their low bits are used as is
+		long slot = hash & mask;
+		while (true) {
+			ByteBuffer buffer = buffers[(int) (slot >>> SLOTS_PER_BUFFER_BITS)];
+			int offset = (int) (slot & SLOTS_PER_BUFFER_MASK) * SLOT_SIZE;
+			if (buffer.getInt(offset + COUNT_OFFSET) == 0 || buffer.getLong(offset) == hash) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+}
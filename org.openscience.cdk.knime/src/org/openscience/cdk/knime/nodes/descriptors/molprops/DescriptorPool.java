@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2016, Stephan Beisken (sbeisken@gmail.com). All rights reserved.
+ *
+ * This file is part of the KNIME CDK plugin.
+ *
+ * The KNIME CDK plugin is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The KNIME CDK plugin is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the plugin. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.openscience.cdk.knime.nodes.descriptors.molprops;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.qsar.IMolecularDescriptor;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+
+/**
+ * Thread-confined pool of molecular descriptor instances. Every worker thread gets its own descriptor instance per
+ * descriptor class, so descriptors can be calculated concurrently without locking a shared engine. The parameters of
+ * a pooled instance are only reset if they differ from the parameters of the previous calculation on that thread.
+ *
+ * @author Stephan Beisken, European Bioinformatics Institute
+ */
+final class DescriptorPool {
+
+	private final Map<String, IMolecularDescriptor> prototypes;
+
+	private final ThreadLocal<Map<String, PooledDescriptor>> pool = new ThreadLocal<Map<String, PooledDescriptor>>() {
+
+		@Override
+		protected Map<String, PooledDescriptor> initialValue() {
+			return new HashMap<String, PooledDescriptor>();
+		}
+	};
+
+	/**
+	 * Creates a new pool backed by the given prototype instances.
+	 *
+	 * @param prototypes the descriptor prototypes hashed by class name
+	 */
+	DescriptorPool(final Map<String, IMolecularDescriptor> prototypes) {
+		this.prototypes = prototypes;
+	}
+
+	/**
+	 * Returns the descriptor instance owned by the calling thread, configured with the given parameters.
+	 *
+	 * @param descriptorClassName the class name of the descriptor
+	 * @param params the descriptor parameters, an empty array to keep the defaults
+	 * @return the thread-confined descriptor or null if no such descriptor exists
+	 * @throws CDKException if the descriptor cannot be instantiated or configured
+	 */
+	IMolecularDescriptor acquire(final String descriptorClassName, final Object[] params) throws CDKException {
+
+		Map<String, PooledDescriptor> descriptors = pool.get();
+		PooledDescriptor pooled = descriptors.get(descriptorClassName);
+
+		if (pooled == null) {
+			IMolecularDescriptor prototype = prototypes.get(descriptorClassName);
+			if (prototype == null) {
+				return null;
+			}
+			pooled = new PooledDescriptor(newInstance(prototype));
+			descriptors.put(descriptorClassName, pooled);
+		}
+
+		if (params.length > 0 && !Arrays.equals(params, pooled.params)) {
+			pooled.descriptor.setParameters(params);
+			pooled.params = params.clone();
+		}
+
+		return pooled.descriptor;
+	}
+
+	private IMolecularDescriptor newInstance(final IMolecularDescriptor prototype) throws CDKException {
+
+		try {
+			IMolecularDescriptor descriptor = prototype.getClass().newInstance();
+			descriptor.initialise(SilentChemObjectBuilder.getInstance());
+			return descriptor;
+		} catch (InstantiationException | IllegalAccessException exception) {
+			throw new CDKException("Unable to instantiate descriptor " + prototype.getClass().getName(), exception);
+		}
+	}
+
+	/**
+	 * Descriptor instance together with the parameters it is currently configured with.
+	 */
+	private static final class PooledDescriptor {
+
+		private final IMolecularDescriptor descriptor;
+		private Object[] params = new Object[0];
+
+		private PooledDescriptor(final IMolecularDescriptor descriptor) {
+			this.descriptor = descriptor;
+		}
+	}
+}
@@ -79,6 +79,11 @@ public final class MolPropsLibrary {
 	 */
 	private static final LinkedHashMap<String, DataColumnSpec> DESCRIPTOR_COLSPEC_HASH = new LinkedHashMap<String, DataColumnSpec>();
 
+	/**
+	 * Hands out thread-confined copies of the descriptors in DESCRIPTOR_HASH so that calculations run in parallel.
+	 */
+	private static final DescriptorPool DESCRIPTOR_POOL = new DescriptorPool(DESCRIPTOR_HASH);
+
 	/**
 	 * Figure out what are the possible properties that this class can calculate.
 	 */
@@ -231,13 +236,7 @@ public final class MolPropsLibrary {
 		boolean isDoubleArray = engine.getDescriptorResultType() instanceof DoubleArrayResult;
 		boolean isDoubleArrayType = engine.getDescriptorResultType() instanceof DoubleArrayResultType;
 		try {
-			DescriptorValue val;
-			synchronized (engine) {
-				if (params.length > 0) {
-					engine.setParameters(params);
-				}
-				val = engine.calculate(mol);
-			}
+			DescriptorValue val = DESCRIPTOR_POOL.acquire(descriptorClassName, params).calculate(mol);
 			IDescriptorResult d = val.getValue();
 			if (isInt || isIntType) {
 				int i;
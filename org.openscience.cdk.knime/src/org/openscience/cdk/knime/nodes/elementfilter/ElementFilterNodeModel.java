@@ -16,18 +16,19 @@
  */
 package org.openscience.cdk.knime.nodes.elementfilter;
 
-import java.util.concurrent.ExecutionException;
-
+import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTableSpec;
 import org.knime.core.node.BufferedDataContainer;
 import org.knime.core.node.BufferedDataTable;
-import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.streamable.RowOutput;
+import org.knime.core.util.MultiThreadWorker;
 import org.openscience.cdk.config.IsotopeFactory;
 import org.openscience.cdk.config.Isotopes;
 import org.openscience.cdk.knime.core.CDKAdapterNodeModel;
+import org.openscience.cdk.knime.core.ConvertedTable;
 
 /**
  * This is the model implementation of ElementFilter. Filters molecules by a set of defined elements.
@@ -47,35 +48,23 @@ public class ElementFilterNodeModel extends CDKAdapterNodeModel {
 	 * {@inheritDoc}
 	 */
 	@Override
-	protected BufferedDataTable[] process(BufferedDataTable[] convertedTables, ExecutionContext exec) throws Exception {
+	protected BufferedDataTable[] process(ConvertedTable[] convertedTables, ExecutionContext exec) throws Exception {
 
 		BufferedDataContainer outputTableMatched = exec.createDataContainer(convertedTables[0].getDataTableSpec());
 		BufferedDataContainer outputTableMissed = exec.createDataContainer(convertedTables[0].getDataTableSpec());
 
-		ElementFilterWorker worker = new ElementFilterWorker(maxQueueSize, maxParallelWorkers, columnIndex, exec,
-				settings(ElementFilterSettings.class), outputTableMatched, outputTableMissed);
+		return run(convertedTables, exec, outputTableMatched, outputTableMissed);
+	}
 
-		try {
-			worker.run(convertedTables[0]);
-		} catch (InterruptedException e) {
-			CanceledExecutionException cee = new CanceledExecutionException(e.getMessage());
-			cee.initCause(e);
-			throw cee;
-		} catch (ExecutionException e) {
-			Throwable cause = e.getCause();
-			if (cause == null) {
-				cause = e;
-			}
-			if (cause instanceof RuntimeException) {
-				throw (RuntimeException) cause;
-			}
-			throw new RuntimeException(cause);
-		} finally {
-			outputTableMatched.close();
-			outputTableMissed.close();
-		}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected MultiThreadWorker<DataRow, ?> createWorker(ConvertedTable[] convertedTables, RowOutput[] outputs,
+			ExecutionContext exec) throws Exception {
 
-		return new BufferedDataTable[] { outputTableMatched.getTable(), outputTableMissed.getTable() };
+		return new ElementFilterWorker(maxQueueSize, maxParallelWorkers, columnIndex, exec,
+				settings(ElementFilterSettings.class), outputs);
 	}
 
 	/**
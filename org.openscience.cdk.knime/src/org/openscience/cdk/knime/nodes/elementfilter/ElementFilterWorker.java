@@ -16,7 +16,6 @@
  */
 package org.openscience.cdk.knime.nodes.elementfilter;
 
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -25,13 +24,14 @@ import java.util.concurrent.ExecutionException;
 
 import org.knime.core.data.AdapterValue;
 import org.knime.core.data.DataRow;
-import org.knime.core.node.BufferedDataContainer;
-import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.streamable.RowOutput;
 import org.knime.core.util.MultiThreadWorker;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.interfaces.IElement;
 import org.openscience.cdk.interfaces.IMolecularFormula;
+import org.openscience.cdk.knime.core.RoutedRow;
+import org.openscience.cdk.knime.core.WorkerProgress;
 import org.openscience.cdk.knime.type.CDKValue;
 import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
 
@@ -40,17 +40,16 @@ import org.openscience.cdk.tools.manipulator.MolecularFormulaManipulator;
  * 
  * @author Stephan Beisken, European Bioinformatics Institute
  */
-public class ElementFilterWorker extends MultiThreadWorker<DataRow, DataRow> {
+public class ElementFilterWorker extends MultiThreadWorker<DataRow, RoutedRow> {
 
 	private final ExecutionContext exec;
 	private final int columnIndex;
-	private final Set<Long> matchedRows;
-	private final BufferedDataContainer[] bdcs;
+	private final RowOutput[] outputs;
 	private final Set<String> elementSet;
 	private final boolean keep;
 
 	public ElementFilterWorker(final int maxQueueSize, final int maxActiveInstanceSize, final int columnIndex,
-			final ExecutionContext exec, final ElementFilterSettings settings, final BufferedDataContainer... bdcs) {
+			final ExecutionContext exec, final ElementFilterSettings settings, final RowOutput... outputs) {
 
 		super(maxQueueSize, maxActiveInstanceSize);
 
@@ -62,14 +61,14 @@ public class ElementFilterWorker extends MultiThreadWorker<DataRow, DataRow> {
 		this.keep = settings.getKeep();
 
 		this.exec = exec;
-		this.bdcs = bdcs;
+		this.outputs = outputs;
 		this.columnIndex = columnIndex;
-		this.matchedRows = Collections.synchronizedSet(new HashSet<Long>());
 	}
 
 	@Override
-	protected DataRow compute(DataRow row, long index) throws Exception {
+	protected RoutedRow compute(DataRow row, long index) throws Exception {
 
+		boolean matched = false;
 		if (row.getCell(columnIndex).isMissing()
 				|| (((AdapterValue) row.getCell(columnIndex)).getAdapterError(CDKValue.class) != null)) {
 			// fall through
@@ -89,9 +88,7 @@ public class ElementFilterWorker extends MultiThreadWorker<DataRow, DataRow> {
 						break;
 					}
 				}
-				if (isValid) {
-					matchedRows.add(index);
-				}
+				matched = isValid;
 		    // remove everything else
 			} else {
 				boolean isValid = true;
@@ -102,31 +99,20 @@ public class ElementFilterWorker extends MultiThreadWorker<DataRow, DataRow> {
 						break;
 					}
 				}
-				if (isValid) {
-					matchedRows.add(index);
-				}
+				matched = isValid;
 			}
 		}
 		
-		return row;
+		return new RoutedRow(row, matched ? 0 : 1);
 	}
 
 	@Override
 	protected void processFinished(ComputationTask task) throws ExecutionException, CancellationException,
 			InterruptedException {
 
-		long index = task.getIndex();
-		DataRow replace = task.get();
-		if (matchedRows.contains(index)) {
-			bdcs[0].addRowToTable(replace);
-		} else {
-			bdcs[1].addRowToTable(replace);
-		}
+		RoutedRow replace = task.get();
+		outputs[replace.port()].push(replace.row());
 
-		try {
-			exec.checkCanceled();
-		} catch (CanceledExecutionException cee) {
-			throw new CancellationException();
-		}
+		WorkerProgress.checkCanceled(exec);
 	}
 }
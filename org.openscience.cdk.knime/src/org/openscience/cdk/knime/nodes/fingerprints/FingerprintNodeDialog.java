@@ -37,6 +37,7 @@ import org.knime.core.node.NodeSettingsWO;
 import org.knime.core.node.NotConfigurableException;
 import org.knime.core.node.util.ColumnSelectionComboxBox;
 import org.openscience.cdk.knime.commons.CDKNodeUtils;
+import org.openscience.cdk.knime.nodes.fingerprints.FingerprintSettings.FingerprintOutputs;
 import org.openscience.cdk.knime.nodes.fingerprints.FingerprintSettings.FingerprintTypes;
 
 /**
@@ -60,6 +61,9 @@ public class FingerprintNodeDialog extends NodeDialogPane {
 	private final JComboBox<FingerprintSettings.FingerprintClasses> circularFpClass = 
 			new JComboBox<FingerprintSettings.FingerprintClasses>(FingerprintSettings.FingerprintClasses.values());
 
+	private final JComboBox<FingerprintOutputs> fpOutput = new JComboBox<FingerprintOutputs>(
+			FingerprintOutputs.values());
+
 	private final FingerprintSettings m_settings = new FingerprintSettings();
 
 	/**
@@ -96,6 +100,12 @@ public class FingerprintNodeDialog extends NodeDialogPane {
 		p.add(circularFP, c);
 		c.gridy++;
 		p.add(circularFpClass, c);
+
+		c.gridy++;
+		c.gridx = 0;
+		p.add(new JLabel("Output   "), c);
+		c.gridx = 1;
+		p.add(fpOutput, c);
 		
 		circularFP.addChangeListener(new ChangeListener() {
 
@@ -148,6 +158,7 @@ public class FingerprintNodeDialog extends NodeDialogPane {
 			circularFpClass.setEnabled(true);
 			circularFpClass.setSelectedItem(m_settings.fingerprintClass());
 		}
+		fpOutput.setSelectedItem(m_settings.fingerprintOutput());
 	}
 
 	/**
@@ -171,6 +182,7 @@ public class FingerprintNodeDialog extends NodeDialogPane {
 			m_settings.fingerprintType(FingerprintTypes.Circular);
 			m_settings.fingerprintClass((FingerprintSettings.FingerprintClasses) circularFpClass.getSelectedItem());
 		}
+		m_settings.fingerprintOutput((FingerprintOutputs) fpOutput.getSelectedItem());
 		m_settings.saveSettings(settings);
 	}
 }
@@ -19,14 +19,21 @@ package org.openscience.cdk.knime.nodes.fingerprints;
 
 import org.knime.core.data.DataColumnSpec;
 import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
 import org.knime.core.data.vector.bitvector.DenseBitVectorCell;
+import org.knime.core.data.vector.bitvector.SparseBitVectorCell;
+import org.knime.core.data.vector.bytevector.SparseByteVectorCell;
 import org.knime.core.node.BufferedDataContainer;
 import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.streamable.RowOutput;
+import org.knime.core.util.MultiThreadWorker;
 import org.openscience.cdk.knime.core.CDKAdapterNodeModel;
+import org.openscience.cdk.knime.core.ConvertedTable;
 
 /**
  * This is the model for the fingerprint node. It uses the CDK to create
@@ -64,33 +71,51 @@ public class FingerprintNodeModel extends CDKAdapterNodeModel {
 	 * {@inheritDoc}
 	 */
 	@Override
-	protected BufferedDataTable[] process(BufferedDataTable[] convertedTables, ExecutionContext exec) throws Exception {
+	protected BufferedDataTable[] process(ConvertedTable[] convertedTables, ExecutionContext exec) throws Exception {
 
 		BufferedDataContainer outputTable = exec.createDataContainer(appendSpec(convertedTables[0].getDataTableSpec()));
 
+		return run(convertedTables, exec, outputTable);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected MultiThreadWorker<DataRow, ?> createWorker(ConvertedTable[] convertedTables, RowOutput[] outputs,
+			ExecutionContext exec) throws Exception {
+
 		FingerprintWorker worker = new FingerprintWorker(maxQueueSize, maxParallelWorkers, columnIndex, exec.createSubProgress(1),
-				convertedTables[0].size(), outputTable, settings(FingerprintSettings.class));
+				convertedTables[0].size(), outputs[0], settings(FingerprintSettings.class));
 
 		// hack for linear fingerprints:
 		// "too many paths generate. We're working making this faster but for now try generating paths with a smaller length"
 		worker.setModel(this);
-		
-		try {
-			worker.run(convertedTables[0]);
-		} finally {
-			outputTable.close();
-		}
 
-		return new BufferedDataTable[] { outputTable.getTable() };
+		return worker;
 	}
 
 	private DataTableSpec appendSpec(DataTableSpec spec) {
 
-		String newColName = settings(FingerprintSettings.class).fingerprintType() + " fingerprints for "
-				+ settings.targetColumn();
+		FingerprintSettings fpSettings = settings(FingerprintSettings.class);
+		String newColName = fpSettings.fingerprintType() + " fingerprints for " + settings.targetColumn();
+
+		DataType type;
+		switch (fpSettings.fingerprintOutput()) {
+		case Sparse:
+			type = SparseBitVectorCell.TYPE;
+			newColName += " (sparse)";
+			break;
+		case Count:
+			type = SparseByteVectorCell.TYPE;
+			newColName += " (counts)";
+			break;
+		default:
+			type = DenseBitVectorCell.TYPE;
+		}
 		newColName = DataTableSpec.getUniqueColumnName(spec, newColName);
 
-		DataColumnSpecCreator c = new DataColumnSpecCreator(newColName, DenseBitVectorCell.TYPE);
+		DataColumnSpecCreator c = new DataColumnSpecCreator(newColName, type);
 		DataColumnSpec appendSpec = c.createSpec();
 
 		return new DataTableSpec(spec, new DataTableSpec(appendSpec));
@@ -49,10 +49,21 @@ public class FingerprintSettings implements CDKSettings {
 		}
 	}
 
+	/** Enum for the different fingerprint output modes. */
+	public enum FingerprintOutputs {
+		/** Folded fingerprint as dense bit vector. */
+		Dense,
+		/** Fingerprint as sparse bit vector, circular fingerprints are not folded. */
+		Sparse,
+		/** Feature counts as sparse byte vector, circular fingerprints are not folded. */
+		Count
+	}
+
 	private String m_molColumn = null;
 
 	private FingerprintTypes m_fingerprintType = FingerprintTypes.Standard;
 	private FingerprintClasses fingerprintClass = FingerprintClasses.ECFP6;
+	private FingerprintOutputs fingerprintOutput = FingerprintOutputs.Dense;
 
 	/**
 	 * Returns the name of the column that holds the molecules.
@@ -108,6 +119,24 @@ public class FingerprintSettings implements CDKSettings {
 		fingerprintClass = clazz;
 	}
 
+	/**
+	 * Returns the output mode of the fingerprints.
+	 * 
+	 * @return the output mode
+	 */
+	public FingerprintOutputs fingerprintOutput() {
+		return fingerprintOutput;
+	}
+
+	/**
+	 * Sets the output mode of the fingerprints.
+	 * 
+	 * @param output the output mode
+	 */
+	public void fingerprintOutput(final FingerprintOutputs output) {
+		fingerprintOutput = output;
+	}
+
 	/**
 	 * Loads the settings from the given node settings object.
 	 * 
@@ -120,6 +149,8 @@ public class FingerprintSettings implements CDKSettings {
 				FingerprintTypes.Standard.toString()));
 		fingerprintClass = FingerprintClasses.valueOf(settings.getString("fingerprintClass",
 				FingerprintClasses.ECFP6.toString()));
+		fingerprintOutput = FingerprintOutputs.valueOf(settings.getString("fingerprintOutput",
+				FingerprintOutputs.Dense.toString()));
 	}
 
 	/**
@@ -133,6 +164,9 @@ public class FingerprintSettings implements CDKSettings {
 		m_molColumn = settings.getString("molColumn");
 		m_fingerprintType = FingerprintTypes.valueOf(settings.getString("fingerprintType"));
 		fingerprintClass = FingerprintClasses.valueOf(settings.getString("fingerprintClass"));
+		// added later, default to the dense output of older nodes
+		fingerprintOutput = FingerprintOutputs.valueOf(settings.getString("fingerprintOutput",
+				FingerprintOutputs.Dense.toString()));
 	}
 
 	/**
@@ -145,5 +179,6 @@ public class FingerprintSettings implements CDKSettings {
 		settings.addString("molColumn", m_molColumn);
 		settings.addString("fingerprintType", m_fingerprintType.toString());
 		settings.addString("fingerprintClass", fingerprintClass.toString());
+		settings.addString("fingerprintOutput", fingerprintOutput.toString());
 	}
 }
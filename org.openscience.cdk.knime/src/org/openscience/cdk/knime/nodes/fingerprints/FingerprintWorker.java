@@ -1,5 +1,6 @@
 package org.openscience.cdk.knime.nodes.fingerprints;
 
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
@@ -11,39 +12,36 @@ import org.knime.core.data.DataType;
 import org.knime.core.data.append.AppendedColumnRow;
 import org.knime.core.data.vector.bitvector.DenseBitVector;
 import org.knime.core.data.vector.bitvector.DenseBitVectorCellFactory;
-import org.knime.core.node.BufferedDataContainer;
-import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.data.vector.bitvector.SparseBitVectorCellFactory;
+import org.knime.core.data.vector.bytevector.SparseByteVectorCellFactory;
 import org.knime.core.node.ExecutionMonitor;
 import org.knime.core.node.NodeModel;
+import org.knime.core.node.streamable.RowOutput;
 import org.knime.core.util.MultiThreadWorker;
+import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.fingerprint.CircularFingerprinter;
-import org.openscience.cdk.fingerprint.EStateFingerprinter;
-import org.openscience.cdk.fingerprint.ExtendedFingerprinter;
-import org.openscience.cdk.fingerprint.Fingerprinter;
+import org.openscience.cdk.fingerprint.ICountFingerprint;
 import org.openscience.cdk.fingerprint.IFingerprinter;
-import org.openscience.cdk.fingerprint.MACCSFingerprinter;
-import org.openscience.cdk.fingerprint.PubchemFingerprinter;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.knime.commons.CDKNodeUtils;
-import org.openscience.cdk.knime.nodes.fingerprints.FingerprintSettings.FingerprintTypes;
+import org.openscience.cdk.knime.core.WorkerProgress;
 import org.openscience.cdk.knime.type.CDKValue;
-import org.openscience.cdk.silent.SilentChemObjectBuilder;
 
 public class FingerprintWorker extends MultiThreadWorker<DataRow, DataRow> {
 
 	private final ExecutionMonitor exec;
 	private final double max;
 	private final int columnIndex;
-	private final BufferedDataContainer bdc;
+	private final RowOutput output;
 	private final FingerprintSettings settings;
 
 	public FingerprintWorker(final int maxQueueSize, final int maxActiveInstanceSize, final int columnIndex,
-			final ExecutionMonitor exec, final long max, final BufferedDataContainer bdc,
+			final ExecutionMonitor exec, final long max, final RowOutput output,
 			final FingerprintSettings settings) {
 
 		super(maxQueueSize, maxActiveInstanceSize);
 		this.exec = exec;
-		this.bdc = bdc;
+		this.output = output;
 		this.max = max;
 		this.settings = settings;
 		this.columnIndex = columnIndex;
@@ -58,21 +56,7 @@ public class FingerprintWorker extends MultiThreadWorker<DataRow, DataRow> {
 	@Override
 	protected DataRow compute(DataRow row, long index) throws Exception {
 
-		final IFingerprinter fp;
-		FingerprintTypes fpType = settings.fingerprintType();
-		if (fpType.equals(FingerprintTypes.Extended)) {
-			fp = new ExtendedFingerprinter();
-		} else if (fpType.equals(FingerprintTypes.EState)) {
-			fp = new EStateFingerprinter();
-		} else if (fpType.equals(FingerprintTypes.Pubchem)) {
-			fp = new PubchemFingerprinter(SilentChemObjectBuilder.getInstance());
-		} else if (fpType.equals(FingerprintTypes.MACCS)) {
-			fp = new MACCSFingerprinter();
-		} else if (fpType.equals(FingerprintTypes.Circular)){
-			fp = new CircularFingerprinter(settings.fingerprintClass().getValue());
-		} else {
-			fp = new Fingerprinter();
-		}
+		final IFingerprinter fp = FingerprinterPool.acquire(settings.fingerprintType(), settings.fingerprintClass());
 
 		DataCell outCell;
 		if (row.getCell(columnIndex).isMissing()
@@ -81,16 +65,17 @@ public class FingerprintWorker extends MultiThreadWorker<DataRow, DataRow> {
 		} else {
 			CDKValue mol = ((AdapterValue) row.getCell(columnIndex)).getAdapter(CDKValue.class);
 			try {
-				BitSet fingerprint;
 				IAtomContainer con = CDKNodeUtils.getExplicitClone(mol.getAtomContainer());
-				fingerprint = fp.getBitFingerprint(con).asBitSet();
-				// transfer the bitset into a dense bit vector
-				DenseBitVector bitVector = new DenseBitVector(fp.getSize());
-				for (int i = fingerprint.nextSetBit(0); i >= 0; i = fingerprint.nextSetBit(i + 1)) {
-					bitVector.set(i);
+				switch (settings.fingerprintOutput()) {
+				case Sparse:
+					outCell = createSparseCell(fp, con);
+					break;
+				case Count:
+					outCell = createCountCell(fp, con);
+					break;
+				default:
+					outCell = createDenseCell(fp, con);
 				}
-				DenseBitVectorCellFactory fact = new DenseBitVectorCellFactory(bitVector);
-				outCell = fact.createDataCell();
 			} catch (Exception ex) {
 				if (ex.getMessage().startsWith("Too many paths generate.")) {
 					model.notifyWarningListeners("Empty fingerprint: " + row.getKey().getString()
@@ -105,24 +90,74 @@ public class FingerprintWorker extends MultiThreadWorker<DataRow, DataRow> {
 		return new AppendedColumnRow(row, outCell);
 	}
 
+	/**
+	 * Creates the folded fingerprint. The bit set is transferred word by word into the dense bit vector.
+	 */
+	private DataCell createDenseCell(final IFingerprinter fp, final IAtomContainer con) throws CDKException {
+
+		BitSet fingerprint = fp.getBitFingerprint(con).asBitSet();
+		long length = fp.getSize();
+		long[] words = Arrays.copyOf(fingerprint.toLongArray(), (int) ((length + 63) >>> 6));
+		return new DenseBitVectorCellFactory(new DenseBitVector(words, length)).createDataCell();
+	}
+
+	/**
+	 * Creates the fingerprint as sparse bit vector. Circular fingerprints are not folded, i.e. the bit positions are
+	 * the unsigned 32 bit feature hashes.
+	 */
+	private DataCell createSparseCell(final IFingerprinter fp, final IAtomContainer con) throws CDKException {
+
+		if (fp instanceof CircularFingerprinter) {
+			ICountFingerprint fingerprint = fp.getCountFingerprint(con);
+			SparseBitVectorCellFactory fact = new SparseBitVectorCellFactory(fingerprint.size());
+			for (int i = 0; i < fingerprint.numOfPopulatedbins(); i++) {
+				fact.set(fingerprint.getHash(i) & 0xFFFFFFFFL);
+			}
+			return fact.createDataCell();
+		}
+
+		BitSet fingerprint = fp.getBitFingerprint(con).asBitSet();
+		SparseBitVectorCellFactory fact = new SparseBitVectorCellFactory(fp.getSize());
+		for (int i = fingerprint.nextSetBit(0); i >= 0; i = fingerprint.nextSetBit(i + 1)) {
+			fact.set(i);
+		}
+		return fact.createDataCell();
+	}
+
+	/**
+	 * Creates the feature counts as sparse byte vector, counts are capped at 255. Fingerprinters without count support
+	 * yield a count of one for every set bit.
+	 */
+	private DataCell createCountCell(final IFingerprinter fp, final IAtomContainer con) throws CDKException {
+
+		ICountFingerprint fingerprint;
+		try {
+			fingerprint = fp.getCountFingerprint(con);
+		} catch (UnsupportedOperationException exception) {
+			BitSet bits = fp.getBitFingerprint(con).asBitSet();
+			SparseByteVectorCellFactory fact = new SparseByteVectorCellFactory(fp.getSize());
+			for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+				fact.setValue(i, 1);
+			}
+			return fact.createDataCell();
+		}
+
+		SparseByteVectorCellFactory fact = new SparseByteVectorCellFactory(fingerprint.size());
+		for (int i = 0; i < fingerprint.numOfPopulatedbins(); i++) {
+			fact.setValue(fingerprint.getHash(i) & 0xFFFFFFFFL, Math.min(fingerprint.getCount(i), 255));
+		}
+		return fact.createDataCell();
+	}
+
 	@Override
 	protected void processFinished(ComputationTask task) throws ExecutionException, CancellationException,
 			InterruptedException {
 
 		DataRow append = task.get();
 		if (!append.getCell(columnIndex).isMissing()) {
-			bdc.addRowToTable(append);
+			output.push(append);
 		}
 
-		exec.setProgress(
-				this.getFinishedCount() / max,
-				this.getFinishedCount() + " (active/submitted: " + this.getActiveCount() + "/"
-						+ (this.getSubmittedCount() - this.getFinishedCount()) + ")");
-
-		try {
-			exec.checkCanceled();
-		} catch (CanceledExecutionException cee) {
-			throw new CancellationException();
-		}
+		WorkerProgress.update(this, exec, max);
 	}
 }
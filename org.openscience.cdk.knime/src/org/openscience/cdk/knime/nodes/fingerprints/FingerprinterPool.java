@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2016, Stephan Beisken (sbeisken@gmail.com). All rights reserved.
+ *
+ * This file is part of the KNIME CDK plugin.
+ *
+ * The KNIME CDK plugin is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The KNIME CDK plugin is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the plugin. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.openscience.cdk.knime.nodes.fingerprints;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.openscience.cdk.fingerprint.CircularFingerprinter;
+import org.openscience.cdk.fingerprint.EStateFingerprinter;
+import org.openscience.cdk.fingerprint.ExtendedFingerprinter;
+import org.openscience.cdk.fingerprint.Fingerprinter;
+import org.openscience.cdk.fingerprint.IFingerprinter;
+import org.openscience.cdk.fingerprint.MACCSFingerprinter;
+import org.openscience.cdk.fingerprint.PubchemFingerprinter;
+import org.openscience.cdk.knime.nodes.fingerprints.FingerprintSettings.FingerprintClasses;
+import org.openscience.cdk.knime.nodes.fingerprints.FingerprintSettings.FingerprintTypes;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+
+/**
+ * Thread-confined pool of fingerprinter instances. Fingerprinters such as the MACCS and PubChem fingerprinters parse
+ * their SMARTS key definitions on construction, hence every worker thread keeps one instance per fingerprint type and
+ * circular fingerprint class and reuses it for all rows and executions.
+ *
+ * @author Stephan Beisken, European Bioinformatics Institute
+ */
+final class FingerprinterPool {
+
+	private static final ThreadLocal<Map<FingerprintTypes, IFingerprinter>> FINGERPRINTERS =
+			new ThreadLocal<Map<FingerprintTypes, IFingerprinter>>() {
+
+				@Override
+				protected Map<FingerprintTypes, IFingerprinter> initialValue() {
+					return new EnumMap<FingerprintTypes, IFingerprinter>(FingerprintTypes.class);
+				}
+			};
+
+	private static final ThreadLocal<Map<FingerprintClasses, IFingerprinter>> CIRCULAR_FINGERPRINTERS =
+			new ThreadLocal<Map<FingerprintClasses, IFingerprinter>>() {
+
+				@Override
+				protected Map<FingerprintClasses, IFingerprinter> initialValue() {
+					return new EnumMap<FingerprintClasses, IFingerprinter>(FingerprintClasses.class);
+				}
+			};
+
+	private FingerprinterPool() {
+		// utility class
+	}
+
+	/**
+	 * Returns the fingerprinter owned by the calling thread.
+	 *
+	 * @param type the fingerprint type
+	 * @param clazz the circular fingerprint class, only used for circular fingerprints
+	 * @return the thread-confined fingerprinter
+	 */
+	static IFingerprinter acquire(final FingerprintTypes type, final FingerprintClasses clazz) {
+
+		if (type == FingerprintTypes.Circular) {
+			Map<FingerprintClasses, IFingerprinter> fingerprinters = CIRCULAR_FINGERPRINTERS.get();
+			IFingerprinter fp = fingerprinters.get(clazz);
+			if (fp == null) {
+				fp = new CircularFingerprinter(clazz.getValue());
+				fingerprinters.put(clazz, fp);
+			}
+			return fp;
+		}
+
+		Map<FingerprintTypes, IFingerprinter> fingerprinters = FINGERPRINTERS.get();
+		IFingerprinter fp = fingerprinters.get(type);
+		if (fp == null) {
+			fp = newInstance(type);
+			fingerprinters.put(type, fp);
+		}
+		return fp;
+	}
+
+	private static IFingerprinter newInstance(final FingerprintTypes type) {
+
+		switch (type) {
+		case Extended:
+			return new ExtendedFingerprinter();
+		case EState:
+			return new EStateFingerprinter();
+		case Pubchem:
+			return new PubchemFingerprinter(SilentChemObjectBuilder.getInstance());
+		case MACCS:
+			return new MACCSFingerprinter();
+		default:
+			return new Fingerprinter();
+		}
+	}
+}
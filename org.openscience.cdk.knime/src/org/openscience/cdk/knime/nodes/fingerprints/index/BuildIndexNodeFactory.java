@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2016, Stephan Beisken (sbeisken@gmail.com). All rights reserved.
+ *
+ * This file is part of the KNIME CDK plugin.
+ *
+ * The KNIME CDK plugin is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The KNIME CDK plugin is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the plugin. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.openscience.cdk.knime.nodes.fingerprints.index;
+
+import javax.swing.JFileChooser;
+
+import org.knime.core.data.vector.bitvector.BitVectorValue;
+import org.knime.core.node.NodeDialogPane;
+import org.knime.core.node.NodeFactory;
+import org.knime.core.node.NodeView;
+import org.knime.core.node.util.FilesHistoryPanel;
+import org.openscience.cdk.knime.core.CDKDialog;
+import org.openscience.cdk.knime.nodes.fingerprints.index.BuildIndexNodeModel.Setting;
+
+/**
+ * <code>NodeFactory</code> for the "Build Fingerprint Index" Node.
+ *
+ * @author Stephan Beisken, European Bioinformatics Institute
+ */
+public class BuildIndexNodeFactory extends NodeFactory<BuildIndexNodeModel> {
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public BuildIndexNodeModel createNodeModel() {
+		return new BuildIndexNodeModel();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getNrNodeViews() {
+		return 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public NodeView<BuildIndexNodeModel> createNodeView(final int viewIndex, final BuildIndexNodeModel nodeModel) {
+		return null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean hasDialog() {
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public NodeDialogPane createNodeDialogPane() {
+
+		CDKDialog dialog = new CDKDialog();
+
+		dialog.addColumnSelection(Setting.COLUMN_NAME.label(), BitVectorValue.class);
+
+		FilesHistoryPanel indexFile = new FilesHistoryPanel("org.openscience.cdk.knime.fingerprints.index", ".cdki");
+		indexFile.setDialogType(JFileChooser.SAVE_DIALOG);
+		dialog.addCustomOption(Setting.INDEX_FILE.label(), indexFile);
+
+		return dialog.build();
+	}
+}
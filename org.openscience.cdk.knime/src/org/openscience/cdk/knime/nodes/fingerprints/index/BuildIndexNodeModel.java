@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2016, Stephan Beisken (sbeisken@gmail.com). All rights reserved.
+ *
+ * This file is part of the KNIME CDK plugin.
+ *
+ * The KNIME CDK plugin is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The KNIME CDK plugin is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the plugin. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.openscience.cdk.knime.nodes.fingerprints.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.data.def.IntCell;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.data.vector.bitvector.BitVectorValue;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeModel;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.openscience.cdk.knime.commons.CDKNodeUtils;
+import org.openscience.cdk.knime.nodes.fingerprints.similarity.CardinalityIndex;
+import org.openscience.cdk.knime.nodes.fingerprints.similarity.FingerprintMatrix;
+
+/**
+ * This is the model implementation of the build fingerprint index node. The fingerprints of the input table are
+ * sorted by cardinality and written to an index file that is memory-mapped by the query fingerprint index node.
+ *
+ * @author Stephan Beisken, European Bioinformatics Institute
+ */
+public class BuildIndexNodeModel extends NodeModel {
+
+	protected enum Setting {
+		COLUMN_NAME("Fingerprints"), INDEX_FILE("Index file");
+
+		private String name;
+
+		Setting(String name) {
+			this.name = name;
+		}
+
+		public String label() {
+			return name;
+		}
+	};
+
+	private String columnName = null;
+	private String indexFile = "";
+
+	/**
+	 * Constructor for the node model.
+	 */
+	protected BuildIndexNodeModel() {
+		super(1, 1);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected BufferedDataTable[] execute(final BufferedDataTable[] inData, final ExecutionContext exec)
+			throws Exception {
+
+		final int columnIndex = inData[0].getDataTableSpec().findColumnIndex(columnName);
+
+		List<long[]> fingerprints = new ArrayList<long[]>();
+		List<String> keys = new ArrayList<String>();
+		long length = -1;
+		long count = 0;
+		for (DataRow row : inData[0]) {
+			exec.checkCanceled();
+			exec.setProgress(++count / (double) inData[0].size(), "Reading fingerprints");
+			if (row.getCell(columnIndex).isMissing()) {
+				continue;
+			}
+			BitVectorValue fingerprint = (BitVectorValue) row.getCell(columnIndex);
+			if (length == -1) {
+				length = fingerprint.length();
+			} else if (length != fingerprint.length()) {
+				throw new IllegalArgumentException("Fingerprints of different length in row '"
+						+ row.getKey().getString() + "': " + fingerprint.length() + " instead of " + length);
+			}
+			fingerprints.add(FingerprintMatrix.pack(fingerprint));
+			keys.add(row.getKey().getString());
+		}
+
+		exec.setMessage("Writing index");
+		File file = new File(indexFile);
+		new CardinalityIndex(fingerprints, keys).write(file);
+
+		BufferedDataContainer container = exec.createDataContainer(createSpec());
+		container.addRowToTable(new DefaultRow(RowKey.createRowKey(0), new StringCell(file.getAbsolutePath()),
+				new IntCell(fingerprints.size()), new IntCell((int) Math.max(length, 0))));
+		container.close();
+
+		return new BufferedDataTable[] { container.getTable() };
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected DataTableSpec[] configure(final DataTableSpec[] inSpecs) throws InvalidSettingsException {
+
+		columnName = CDKNodeUtils.autoConfigure(inSpecs[0], columnName, BitVectorValue.class);
+		if (indexFile == null || indexFile.isEmpty()) {
+			throw new InvalidSettingsException("No index file chosen");
+		}
+
+		return new DataTableSpec[] { createSpec() };
+	}
+
+	private DataTableSpec createSpec() {
+
+		return new DataTableSpec(new DataColumnSpecCreator("Index file", StringCell.TYPE).createSpec(),
+				new DataColumnSpecCreator("Fingerprints", IntCell.TYPE).createSpec(),
+				new DataColumnSpecCreator("Bit length", IntCell.TYPE).createSpec());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void saveSettingsTo(final NodeSettingsWO settings) {
+
+		settings.addString(Setting.COLUMN_NAME.label(), columnName);
+		settings.addString(Setting.INDEX_FILE.label(), indexFile);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void loadValidatedSettingsFrom(final NodeSettingsRO settings) throws InvalidSettingsException {
+
+		columnName = settings.getString(Setting.COLUMN_NAME.label());
+		indexFile = settings.getString(Setting.INDEX_FILE.label());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void validateSettings(final NodeSettingsRO settings) throws InvalidSettingsException {
+
+		String file = settings.getString(Setting.INDEX_FILE.label());
+		if (file == null || file.length() == 0) {
+			throw new InvalidSettingsException("No index file chosen.");
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void loadInternals(final File internDir, final ExecutionMonitor exec) throws IOException,
+			CanceledExecutionException {
+		// nothing to do
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void saveInternals(final File internDir, final ExecutionMonitor exec) throws IOException,
+			CanceledExecutionException {
+		// nothing to do
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void reset() {
+		// nothing to do
+	}
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2016, Stephan Beisken (sbeisken@gmail.com). All rights reserved.
+ *
+ * This file is part of the KNIME CDK plugin.
+ *
+ * The KNIME CDK plugin is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The KNIME CDK plugin is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the plugin. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.openscience.cdk.knime.nodes.fingerprints.index;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
+import org.knime.core.data.collection.CollectionCellFactory;
+import org.knime.core.data.collection.ListCell;
+import org.knime.core.data.container.AbstractCellFactory;
+import org.knime.core.data.container.ColumnRearranger;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.data.vector.bitvector.BitVectorValue;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.knime.commons.CDKNodeUtils;
+import org.openscience.cdk.knime.core.CDKNodeModel;
+import org.openscience.cdk.knime.nodes.fingerprints.similarity.CardinalityIndex;
+import org.openscience.cdk.knime.nodes.fingerprints.similarity.CardinalityIndex.Hit;
+import org.openscience.cdk.knime.nodes.fingerprints.similarity.FingerprintMatrix;
+import org.openscience.cdk.knime.nodes.fingerprints.similarity.SimilarityKernels;
+
+/**
+ * This is the model implementation of the query fingerprint index node. The index file written by the build
+ * fingerprint index node is memory-mapped and searched for the most similar references of every input fingerprint.
+ * The mapped index is kept between executions as long as the file does not change.
+ *
+ * @author Stephan Beisken, European Bioinformatics Institute
+ */
+public class QueryIndexNodeModel extends CDKNodeModel {
+
+	protected enum Setting {
+		COLUMN_NAME("Fingerprints"), INDEX_FILE("Index file"), TOP_K("Number of hits"), THRESHOLD("Min. similarity");
+
+		private String name;
+
+		Setting(String name) {
+			this.name = name;
+		}
+
+		public String label() {
+			return name;
+		}
+	};
+
+	private String columnName = null;
+	private String indexFile = "";
+	private int topK = 10;
+	private double threshold = 0;
+
+	// the mapped index and the state of its file
+	private CardinalityIndex index;
+	private String indexPath;
+	private long indexModified;
+
+	/**
+	 * Constructor for the node model.
+	 */
+	protected QueryIndexNodeModel() {
+		super(1, 1, null);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected BufferedDataTable[] execute(final BufferedDataTable[] inData, final ExecutionContext exec)
+			throws Exception {
+
+		File file = new File(indexFile);
+		if (index == null || !file.getAbsolutePath().equals(indexPath) || file.lastModified() != indexModified) {
+			exec.setMessage("Mapping index");
+			index = CardinalityIndex.map(file);
+			indexPath = file.getAbsolutePath();
+			indexModified = file.lastModified();
+		}
+
+		return super.execute(inData, exec);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected DataTableSpec[] configure(final DataTableSpec[] inSpecs) throws InvalidSettingsException {
+
+		columnName = CDKNodeUtils.autoConfigure(inSpecs[0], columnName, BitVectorValue.class);
+		if (!new File(indexFile).isFile()) {
+			setWarningMessage("Index file does not exist: " + indexFile);
+		}
+
+		ColumnRearranger arranger = createColumnRearranger(inSpecs[0]);
+		return new DataTableSpec[] { arranger.createSpec() };
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected ColumnRearranger createColumnRearranger(final DataTableSpec spec) throws InvalidSettingsException {
+
+		final int fingerprintColIndex = spec.findColumnIndex(columnName);
+		final CardinalityIndex refs = index;
+
+		DataColumnSpec[] outSpec = new DataColumnSpec[] {
+				new DataColumnSpecCreator(DataTableSpec.getUniqueColumnName(spec, "Tanimoto"),
+						ListCell.getCollectionType(DoubleCell.TYPE)).createSpec(),
+				new DataColumnSpecCreator(DataTableSpec.getUniqueColumnName(spec, "Reference"),
+						ListCell.getCollectionType(StringCell.TYPE)).createSpec() };
+
+		AbstractCellFactory cf = new AbstractCellFactory(true, outSpec) {
+
+			@Override
+			public DataCell[] getCells(final DataRow row) {
+
+				DataCell dataCell = row.getCell(fingerprintColIndex);
+				DataCell[] cells = new DataCell[getColumnSpecs().length];
+
+				if (dataCell.isMissing()) {
+					Arrays.fill(cells, DataType.getMissingCell());
+					return cells;
+				}
+
+				try {
+					BitVectorValue fingerprint = (BitVectorValue) dataCell;
+					List<Hit> hits = refs.search(FingerprintMatrix.pack(fingerprint), fingerprint.length(),
+							SimilarityKernels.TANIMOTO, topK, (float) threshold, null);
+
+					List<DoubleCell> scores = new ArrayList<DoubleCell>();
+					List<StringCell> keys = new ArrayList<StringCell>();
+					for (Hit hit : hits) {
+						scores.add(new DoubleCell(hit.score()));
+						keys.add(new StringCell(hit.key()));
+					}
+					cells[0] = CollectionCellFactory.createListCell(scores);
+					cells[1] = CollectionCellFactory.createListCell(keys);
+				} catch (CDKException exception) {
+					// query and index fingerprints differ in length
+					Arrays.fill(cells, DataType.getMissingCell());
+				}
+				return cells;
+			}
+		};
+
+		ColumnRearranger arranger = new ColumnRearranger(spec);
+		arranger.append(cf);
+		return arranger;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void saveSettingsTo(final NodeSettingsWO settings) {
+
+		settings.addString(Setting.COLUMN_NAME.label(), columnName);
+		settings.addString(Setting.INDEX_FILE.label(), indexFile);
+		settings.addString(Setting.TOP_K.label(), Integer.toString(topK));
+		settings.addString(Setting.THRESHOLD.label(), Double.toString(threshold));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void loadValidatedSettingsFrom(final NodeSettingsRO settings) throws InvalidSettingsException {
+
+		columnName = settings.getString(Setting.COLUMN_NAME.label());
+		indexFile = settings.getString(Setting.INDEX_FILE.label());
+		topK = Integer.parseInt(settings.getString(Setting.TOP_K.label()).trim());
+		threshold = Double.parseDouble(settings.getString(Setting.THRESHOLD.label()).trim());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void validateSettings(final NodeSettingsRO settings) throws InvalidSettingsException {
+
+		String file = settings.getString(Setting.INDEX_FILE.label());
+		if (file == null || file.length() == 0) {
+			throw new InvalidSettingsException("No index file chosen.");
+		}
+		try {
+			Integer.parseInt(settings.getString(Setting.TOP_K.label()).trim());
+			double t = Double.parseDouble(settings.getString(Setting.THRESHOLD.label()).trim());
+			if (t < 0 || t > 1) {
+				throw new InvalidSettingsException("The min. similarity must be between 0 and 1.");
+			}
+		} catch (NumberFormatException exception) {
+			throw new InvalidSettingsException("Number of hits and min. similarity must be numbers.");
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void reset() {
+		// the mapped index is kept, it is reloaded if the file changes
+	}
+}
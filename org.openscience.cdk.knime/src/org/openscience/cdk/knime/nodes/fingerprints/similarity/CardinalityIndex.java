@@ -0,0 +1,383 @@
+/*
+ * Copyright (c) 2016, Stephan Beisken (sbeisken@gmail.com). All rights reserved.
+ *
+ * This file is part of the KNIME CDK plugin.
+ *
+ * The KNIME CDK plugin is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The KNIME CDK plugin is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the plugin. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.openscience.cdk.knime.nodes.fingerprints.similarity;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.openscience.cdk.exception.CDKException;
+
+/**
+ * Reference fingerprints bucketed by cardinality for top-k and threshold similarity searches.
+ * <p>
+ * The Tanimoto coefficient of two fingerprints with a and b bits set is bounded by min(a, b) / max(a, b) (Swamidass
+ * and Baldi), in general by the similarity of two fingerprints sharing min(a, b) bits. The buckets are visited in
+ * order of decreasing bound, starting with the bucket of the query cardinality, and the search stops as soon as the
+ * bound of the next bucket falls below the threshold or the k-th best score found so far. Most references are never
+ * compared.
+ * <p>
+ * The index can be written to a file and memory-mapped again, so that a reference library is indexed once and
+ * queried many times without reading its table. The file holds a header, the bucket offsets, the input order of the
+ * references, the cardinality-sorted fingerprint words and the row keys.
+ *
+ * @author Stephan Beisken, European Bioinformatics Institute
+ */
+public final class CardinalityIndex {
+
+	// "CDKI"
+	private static final int MAGIC = 0x43444B49;
+	private static final int VERSION = 1;
+	// magic, version, size, stride and max. cardinality
+	private static final int HEADER_SIZE = 5 * 4;
+
+	private static final Comparator<Hit> WORST_FIRST = new Comparator<Hit>() {
+
+		@Override
+		public int compare(final Hit o1, final Hit o2) {
+			int cmp = Float.compare(o1.score, o2.score);
+			return (cmp != 0) ? cmp : Integer.compare(o2.reference, o1.reference);
+		}
+	};
+
+	// references ordered by cardinality
+	private final FingerprintMatrix matrix;
+	// bucket c spans [bucketStart[c], bucketStart[c + 1])
+	private final int[] bucketStart;
+	// index of each reference in the input order
+	private final int[] order;
+	private final String[] keys;
+
+	/**
+	 * Creates a new index.
+	 *
+	 * @param fingerprints the packed reference fingerprints
+	 * @param keys the row keys of the references
+	 */
+	public CardinalityIndex(final List<long[]> fingerprints, final List<String> keys) {
+
+		final int[] cardinalities = new int[fingerprints.size()];
+		int maxCardinality = 0;
+		List<Integer> indices = new ArrayList<Integer>(fingerprints.size());
+		for (int i = 0; i < fingerprints.size(); i++) {
+			cardinalities[i] = FingerprintMatrix.cardinality(fingerprints.get(i));
+			maxCardinality = Math.max(maxCardinality, cardinalities[i]);
+			indices.add(i);
+		}
+
+		// stable sort keeps the input order within a bucket
+		Collections.sort(indices, new Comparator<Integer>() {
+
+			@Override
+			public int compare(final Integer o1, final Integer o2) {
+				return Integer.compare(cardinalities[o1], cardinalities[o2]);
+			}
+		});
+
+		List<long[]> sorted = new ArrayList<long[]>(fingerprints.size());
+		order = new int[fingerprints.size()];
+		this.keys = new String[fingerprints.size()];
+		bucketStart = new int[maxCardinality + 2];
+		for (int i = 0; i < indices.size(); i++) {
+			int index = indices.get(i);
+			sorted.add(fingerprints.get(index));
+			order[i] = index;
+			this.keys[i] = keys.get(index);
+			bucketStart[cardinalities[index] + 1]++;
+		}
+		for (int c = 1; c < bucketStart.length; c++) {
+			bucketStart[c] += bucketStart[c - 1];
+		}
+
+		matrix = new FingerprintMatrix(sorted);
+	}
+
+	private CardinalityIndex(final FingerprintMatrix matrix, final int[] bucketStart, final int[] order,
+			final String[] keys) {
+
+		this.matrix = matrix;
+		this.bucketStart = bucketStart;
+		this.order = order;
+		this.keys = keys;
+	}
+
+	/**
+	 * Returns the number of references.
+	 *
+	 * @return the number of references
+	 */
+	public int size() {
+		return order.length;
+	}
+
+	/**
+	 * Writes the index to a file. All references must have the same length.
+	 * <p>
+	 * The index is written to a temporary file next to the index file, which then replaces the index file in one
+	 * rename. An existing index file is never truncated while it may be mapped by a query.
+	 *
+	 * @param file the index file
+	 * @throws IOException if the index cannot be written
+	 */
+	public void write(final File file) throws IOException {
+
+		File dir = file.getAbsoluteFile().getParentFile();
+		File temp = File.createTempFile("." + file.getName() + ".", ".tmp", dir);
+		try {
+			writeTo(temp);
+			try {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException exception) {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp.toPath());
+		}
+	}
+
+	private void writeTo(final File file) throws IOException {
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(size());
+			out.writeInt(matrix.stride());
+			out.writeInt(bucketStart.length - 2);
+			for (int start : bucketStart) {
+				out.writeInt(start);
+			}
+			for (int index : order) {
+				out.writeInt(index);
+			}
+			// aligns the words for the mapped long buffer
+			for (int i = 0; i < padding(bucketStart.length + order.length); i++) {
+				out.writeByte(0);
+			}
+			matrix.write(out);
+			for (String key : keys) {
+				out.writeUTF(key);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Maps an index file into memory. The fingerprint words are not read but paged in on demand.
+	 *
+	 * @param file the index file
+	 * @return the index
+	 * @throws IOException if the file is no index file or cannot be read
+	 */
+	public static CardinalityIndex map(final File file) throws IOException {
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Not a fingerprint index: " + file);
+			}
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported fingerprint index version: " + version);
+			}
+			int size = in.readInt();
+			int stride = in.readInt();
+			int[] bucketStart = new int[in.readInt() + 2];
+			for (int c = 0; c < bucketStart.length; c++) {
+				bucketStart[c] = in.readInt();
+			}
+			int[] order = new int[size];
+			for (int i = 0; i < size; i++) {
+				order[i] = in.readInt();
+			}
+
+			long offset = HEADER_SIZE + 4L * (bucketStart.length + order.length)
+					+ padding(bucketStart.length + order.length);
+			long length = 8L * size * stride;
+			if (length > Integer.MAX_VALUE) {
+				throw new IOException("Fingerprint index too large to be mapped: " + file);
+			}
+
+			int[] cardinalities = new int[size];
+			for (int c = 0; c < bucketStart.length - 1; c++) {
+				for (int i = bucketStart[c]; i < bucketStart[c + 1]; i++) {
+					cardinalities[i] = c;
+				}
+			}
+			FingerprintMatrix matrix = FingerprintMatrix.map(channel.map(MapMode.READ_ONLY, offset, length)
+					.asLongBuffer(), stride, cardinalities);
+
+			// the buffered stream has read ahead, continue behind the words
+			channel.position(offset + length);
+			in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+			String[] keys = new String[size];
+			for (int i = 0; i < size; i++) {
+				keys[i] = in.readUTF();
+			}
+
+			return new CardinalityIndex(matrix, bucketStart, order, keys);
+		} finally {
+			// the mapping stays valid after closing the file
+			raf.close();
+		}
+	}
+
+	private static int padding(final int ints) {
+
+		int bytes = HEADER_SIZE + 4 * ints;
+		return (8 - bytes % 8) % 8;
+	}
+
+	/**
+	 * Searches the most similar references of the query.
+	 *
+	 * @param query the packed query fingerprint
+	 * @param length the bit length of the query
+	 * @param kernel the similarity kernel
+	 * @param k the max. number of hits, no limit if smaller than one
+	 * @param threshold the min. similarity of a hit
+	 * @param excludedKey the row key of a reference to ignore or null
+	 * @return the hits in order of decreasing similarity
+	 * @throws CDKException if the fingerprints differ in length
+	 */
+	public List<Hit> search(final long[] query, final long length, final SimilarityKernel kernel, final int k,
+			final float threshold, final String excludedKey) throws CDKException {
+
+		final int a = FingerprintMatrix.cardinality(query);
+		final int maxCardinality = bucketStart.length - 2;
+		PriorityQueue<Hit> hits = new PriorityQueue<Hit>(11, WORST_FIRST);
+
+		int lower = Math.min(a, maxCardinality);
+		int upper = lower + 1;
+		while (lower >= 0 || upper <= maxCardinality) {
+
+			float lowerBound = (lower >= 0) ? bound(kernel, a, lower, length) : -1;
+			float upperBound = (upper <= maxCardinality) ? bound(kernel, a, upper, length) : -1;
+			int bucket;
+			float bound;
+			if (upper > maxCardinality || (lower >= 0 && lowerBound >= upperBound)) {
+				bucket = lower--;
+				bound = lowerBound;
+			} else {
+				bucket = upper++;
+				bound = upperBound;
+			}
+
+			boolean full = k > 0 && hits.size() == k;
+			if (bound < threshold || (full && bound <= hits.peek().score)) {
+				// the remaining buckets have even smaller bounds
+				break;
+			}
+
+			for (int i = bucketStart[bucket]; i < bucketStart[bucket + 1]; i++) {
+				if (excludedKey != null && excludedKey.equals(keys[i])) {
+					continue;
+				}
+				float score = matrix.similarity(query, a, length, i, kernel);
+				if (Float.isNaN(score) || score < threshold) {
+					continue;
+				}
+				if (k < 1 || hits.size() < k) {
+					hits.add(new Hit(order[i], keys[i], score));
+				} else if (score > hits.peek().score) {
+					hits.poll();
+					hits.add(new Hit(order[i], keys[i], score));
+				}
+			}
+		}
+
+		List<Hit> result = new ArrayList<Hit>(hits);
+		Collections.sort(result, Collections.reverseOrder(WORST_FIRST));
+		return result;
+	}
+
+	/**
+	 * Returns the upper bound of the similarity for the given cardinalities. The bound is computed like the similarity
+	 * itself, hence no similarity exceeds it due to rounding. The bound decreases with the distance of the
+	 * cardinalities for all kernels of {@link SimilarityKernels}.
+	 */
+	private static float bound(final SimilarityKernel kernel, final int a, final int b, final long length) {
+
+		float bound = kernel.similarity(Math.min(a, b), a, b, length);
+		// e.g. empty fingerprints, no pruning
+		return Float.isNaN(bound) ? 1f : bound;
+	}
+
+	/**
+	 * Reference found by a search.
+	 */
+	public static final class Hit {
+
+		private final int reference;
+		private final String key;
+		private final float score;
+
+		private Hit(final int reference, final String key, final float score) {
+			this.reference = reference;
+			this.key = key;
+			this.score = score;
+		}
+
+		/**
+		 * Returns the index of the reference in the input order.
+		 *
+		 * @return the reference index
+		 */
+		public int reference() {
+			return reference;
+		}
+
+		/**
+		 * Returns the row key of the reference.
+		 *
+		 * @return the row key
+		 */
+		public String key() {
+			return key;
+		}
+
+		/**
+		 * Returns the similarity of the query and the reference.
+		 *
+		 * @return the score
+		 */
+		public float score() {
+			return score;
+		}
+	}
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2016, Stephan Beisken (sbeisken@gmail.com). All rights reserved.
+ *
+ * This file is part of the KNIME CDK plugin.
+ *
+ * The KNIME CDK plugin is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The KNIME CDK plugin is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the plugin. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.openscience.cdk.knime.nodes.fingerprints.similarity;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import org.knime.core.data.DataValue;
+import org.knime.core.data.vector.bitvector.BitVectorValue;
+import org.knime.core.data.vector.bitvector.DenseBitVectorCell;
+import org.openscience.cdk.exception.CDKException;
+
+/**
+ * Reference fingerprints packed row by row into a single long array. The cardinality of every reference is computed
+ * once on creation, hence the similarity of a query only needs the popcounts of the word-wise intersection.
+ * The matrix is immutable and can be shared by concurrent queries. The words are either held on the heap or in a
+ * memory-mapped index file.
+ *
+ * @author Stephan Beisken, European Bioinformatics Institute
+ */
+public final class FingerprintMatrix implements ReferenceMatrix {
+
+	// null if mapped
+	private final long[] words;
+	// null if on the heap
+	private final LongBuffer buffer;
+	private final int stride;
+	// number of words per fingerprint, -1 for missing fingerprints
+	private final int[] wordCounts;
+	private final int[] cardinalities;
+
+	/**
+	 * Creates a new matrix.
+	 *
+	 * @param fingerprints the packed fingerprints in their given order, null for missing fingerprints
+	 */
+	FingerprintMatrix(final List<long[]> fingerprints) {
+
+		int maxWords = 0;
+		for (long[] fingerprint : fingerprints) {
+			if (fingerprint != null) {
+				maxWords = Math.max(maxWords, fingerprint.length);
+			}
+		}
+
+		stride = maxWords;
+		words = new long[fingerprints.size() * stride];
+		buffer = null;
+		wordCounts = new int[fingerprints.size()];
+		cardinalities = new int[fingerprints.size()];
+
+		for (int i = 0; i < fingerprints.size(); i++) {
+			long[] fingerprint = fingerprints.get(i);
+			if (fingerprint == null) {
+				wordCounts[i] = -1;
+				continue;
+			}
+			System.arraycopy(fingerprint, 0, words, i * stride, fingerprint.length);
+			wordCounts[i] = fingerprint.length;
+			cardinalities[i] = cardinality(fingerprint);
+		}
+	}
+
+	private FingerprintMatrix(final LongBuffer buffer, final int stride, final int[] cardinalities) {
+
+		this.words = null;
+		this.buffer = buffer;
+		this.stride = stride;
+		this.wordCounts = new int[cardinalities.length];
+		this.cardinalities = cardinalities;
+		Arrays.fill(wordCounts, stride);
+	}
+
+	/**
+	 * Creates a matrix backed by a buffer, e.g. a memory-mapped file, holding the fingerprints row by row.
+	 *
+	 * @param buffer the buffer with the words of the fingerprints
+	 * @param stride the number of words per fingerprint
+	 * @param cardinalities the number of bits set in each fingerprint
+	 * @return the matrix
+	 */
+	static FingerprintMatrix map(final LongBuffer buffer, final int stride, final int[] cardinalities) {
+		return new FingerprintMatrix(buffer, stride, cardinalities);
+	}
+
+	/**
+	 * Writes the words of all fingerprints row by row.
+	 *
+	 * @param out the output
+	 * @throws IOException if the fingerprints differ in length or cannot be written
+	 */
+	void write(final DataOutput out) throws IOException {
+
+		for (int i = 0; i < size(); i++) {
+			if (wordCounts[i] != stride) {
+				throw new IOException("Missing fingerprints or fingerprints of different length cannot be written");
+			}
+			for (int j = 0; j < stride; j++) {
+				out.writeLong(word(i * stride + j));
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of words per fingerprint.
+	 *
+	 * @return the stride
+	 */
+	int stride() {
+		return stride;
+	}
+
+	/**
+	 * Returns the number of bits set in the fingerprint at the given index.
+	 *
+	 * @param index the row index
+	 * @return the cardinality
+	 */
+	int cardinality(final int index) {
+		return cardinalities[index];
+	}
+
+	private long word(final int offset) {
+		return (words != null) ? words[offset] : buffer.get(offset);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int size() {
+		return wordCounts.length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isMissing(final int index) {
+		return wordCounts[index] < 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public float[] similarities(final DataValue query, final SimilarityKernel kernel) throws CDKException {
+
+		if (!(query instanceof BitVectorValue)) {
+			throw new CDKException("Query is no bit vector: " + query.getClass().getName());
+		}
+		long length = ((BitVectorValue) query).length();
+		long[] packed = pack((BitVectorValue) query);
+		int cardinality = cardinality(packed);
+
+		float[] similarities = new float[size()];
+		for (int i = 0; i < similarities.length; i++) {
+			similarities[i] = isMissing(i) ? Float.NaN : similarity(packed, cardinality, length, i, kernel);
+		}
+		return similarities;
+	}
+
+	/**
+	 * Calculates the similarity of the query and the fingerprint at the given index. The Tanimoto kernel yields the
+	 * same result as the CDK's {@link org.openscience.cdk.similarity.Tanimoto#calculate(java.util.BitSet,
+	 * java.util.BitSet)}.
+	 *
+	 * @param query the packed query fingerprint
+	 * @param queryCardinality the number of bits set in the query
+	 * @param length the bit length of the fingerprints
+	 * @param index the row index of the reference
+	 * @param kernel the similarity kernel
+	 * @return the similarity
+	 * @throws CDKException if the fingerprints differ in length
+	 */
+	float similarity(final long[] query, final int queryCardinality, final long length, final int index,
+			final SimilarityKernel kernel) throws CDKException {
+
+		int n = wordCounts[index];
+		if (n != query.length) {
+			throw new CDKException("Bitsets must have the same bit length");
+		}
+
+		int offset = index * stride;
+		int common = 0;
+		if (words != null) {
+			for (int i = 0; i < n; i++) {
+				common += Long.bitCount(query[i] & words[offset + i]);
+			}
+		} else {
+			// absolute reads, the buffer can be shared by concurrent queries
+			for (int i = 0; i < n; i++) {
+				common += Long.bitCount(query[i] & buffer.get(offset + i));
+			}
+		}
+		return kernel.similarity(common, queryCardinality, cardinalities[index], length);
+	}
+
+	/**
+	 * Packs a bit vector into 64 bit words, bit i is stored in word i / 64.
+	 *
+	 * @param value the bit vector
+	 * @return the packed bit vector
+	 */
+	public static long[] pack(final BitVectorValue value) {
+
+		int wordCount = (int) ((value.length() + 63) >>> 6);
+		if (value instanceof DenseBitVectorCell) {
+			long[] packed = ((DenseBitVectorCell) value).getBitVectorCopy().getAllBits();
+			return (packed.length == wordCount) ? packed : Arrays.copyOf(packed, wordCount);
+		}
+
+		long[] packed = new long[wordCount];
+		for (long i = value.nextSetBit(0); i >= 0; i = value.nextSetBit(i + 1)) {
+			packed[(int) (i >>> 6)] |= 1L << i;
+		}
+		return packed;
+	}
+
+	/**
+	 * Returns the number of bits set in the packed bit vector.
+	 *
+	 * @param packed the packed bit vector
+	 * @return the cardinality
+	 */
+	public static int cardinality(final long[] packed) {
+
+		int cardinality = 0;
+		for (long word : packed) {
+			cardinality += Long.bitCount(word);
+		}
+		return cardinality;
+	}
+}
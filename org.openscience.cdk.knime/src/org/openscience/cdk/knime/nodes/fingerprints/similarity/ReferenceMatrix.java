@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2016, Stephan Beisken (sbeisken@gmail.com). All rights reserved.
+ *
+ * This file is part of the KNIME CDK plugin.
+ *
+ * The KNIME CDK plugin is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The KNIME CDK plugin is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the plugin. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.openscience.cdk.knime.nodes.fingerprints.similarity;
+
+import org.knime.core.data.DataValue;
+import org.openscience.cdk.exception.CDKException;
+
+/**
+ * Packed reference vectors compared against one query at a time.
+ *
+ * @author Stephan Beisken, European Bioinformatics Institute
+ */
+interface ReferenceMatrix {
+
+	/**
+	 * Returns the number of references.
+	 *
+	 * @return the number of rows of the matrix
+	 */
+	int size();
+
+	/**
+	 * Returns whether the reference at the given index is missing.
+	 *
+	 * @param index the row index
+	 * @return true if missing
+	 */
+	boolean isMissing(int index);
+
+	/**
+	 * Computes the similarities of the query and all references, NaN for missing references.
+	 *
+	 * @param query the query vector
+	 * @param kernel the similarity kernel
+	 * @return the similarities in the order of the references
+	 * @throws CDKException if the query is not compatible with the references
+	 */
+	float[] similarities(DataValue query, SimilarityKernel kernel) throws CDKException;
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2016, Stephan Beisken (sbeisken@gmail.com). All rights reserved.
+ *
+ * This file is part of the KNIME CDK plugin.
+ *
+ * The KNIME CDK plugin is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The KNIME CDK plugin is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the plugin. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.openscience.cdk.knime.nodes.fingerprints.similarity;
+
+/**
+ * Similarity coefficient computed from the overlap and the sizes of two vectors. For bit vectors the overlap is the
+ * number of common bits and the sizes are the numbers of bits set. For count or descriptor vectors the overlap is the
+ * dot product and the sizes are the squared norms, e.g. the Tanimoto kernel then yields the continuous Tanimoto
+ * coefficient. The kernels work on the popcounts and dot products of the packed matrices, hence the choice of the
+ * coefficient does not change the cost of a comparison.
+ *
+ * @author Stephan Beisken, European Bioinformatics Institute
+ */
+public interface SimilarityKernel {
+
+	/**
+	 * Computes the similarity coefficient.
+	 *
+	 * @param common the number of common bits or the dot product
+	 * @param a the number of bits set in or the squared norm of the first vector
+	 * @param b the number of bits set in or the squared norm of the second vector
+	 * @param length the length of the vectors
+	 * @return the similarity coefficient
+	 */
+	float similarity(double common, double a, double b, long length);
+}
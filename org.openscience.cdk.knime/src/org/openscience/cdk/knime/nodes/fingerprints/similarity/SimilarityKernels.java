@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2016, Stephan Beisken (sbeisken@gmail.com). All rights reserved.
+ *
+ * This file is part of the KNIME CDK plugin.
+ *
+ * The KNIME CDK plugin is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The KNIME CDK plugin is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the plugin. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.openscience.cdk.knime.nodes.fingerprints.similarity;
+
+import org.openscience.cdk.knime.nodes.fingerprints.similarity.SimilaritySettings.Metric;
+
+/**
+ * The similarity kernels supported by the similarity nodes.
+ *
+ * @author Stephan Beisken, European Bioinformatics Institute
+ */
+public final class SimilarityKernels {
+
+	/** Tanimoto (Jaccard) coefficient c / (a + b - c), the same as the CDK's Tanimoto for bit vectors. */
+	public static final SimilarityKernel TANIMOTO = new SimilarityKernel() {
+
+		@Override
+		public float similarity(final double common, final double a, final double b, final long length) {
+			return (float) (common / (a + b - common));
+		}
+	};
+
+	/** Dice coefficient 2c / (a + b). */
+	public static final SimilarityKernel DICE = new SimilarityKernel() {
+
+		@Override
+		public float similarity(final double common, final double a, final double b, final long length) {
+			return (float) (2 * common / (a + b));
+		}
+	};
+
+	/** Cosine coefficient c / sqrt(a * b). */
+	public static final SimilarityKernel COSINE = new SimilarityKernel() {
+
+		@Override
+		public float similarity(final double common, final double a, final double b, final long length) {
+			return (float) (common / Math.sqrt(a * b));
+		}
+	};
+
+	/** Russell-Rao coefficient c / n. */
+	public static final SimilarityKernel RUSSELL_RAO = new SimilarityKernel() {
+
+		@Override
+		public float similarity(final double common, final double a, final double b, final long length) {
+			return (float) (common / length);
+		}
+	};
+
+	private SimilarityKernels() {
+		// utility class
+	}
+
+	/**
+	 * Returns the Tversky kernel c / (alpha * (a - c) + beta * (b - c) + c). Alpha = beta = 1 gives the Tanimoto,
+	 * alpha = beta = 0.5 the Dice coefficient.
+	 *
+	 * @param alpha the weight of the features unique to the first vector
+	 * @param beta the weight of the features unique to the second vector
+	 * @return the kernel
+	 */
+	public static SimilarityKernel tversky(final double alpha, final double beta) {
+
+		return new SimilarityKernel() {
+
+			@Override
+			public float similarity(final double common, final double a, final double b, final long length) {
+				return (float) (common / (alpha * (a - common) + beta * (b - common) + common));
+			}
+		};
+	}
+
+	/**
+	 * Returns the kernel of the metric.
+	 *
+	 * @param metric the metric
+	 * @param alpha the Tversky alpha
+	 * @param beta the Tversky beta
+	 * @return the kernel
+	 */
+	public static SimilarityKernel create(final Metric metric, final double alpha, final double beta) {
+
+		switch (metric) {
+		case Dice:
+			return DICE;
+		case Cosine:
+			return COSINE;
+		case Tversky:
+			return tversky(alpha, beta);
+		case RussellRao:
+			return RUSSELL_RAO;
+		default:
+			return TANIMOTO;
+		}
+	}
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2016, Stephan Beisken (sbeisken@gmail.com). All rights reserved.
+ *
+ * This file is part of the KNIME CDK plugin.
+ *
+ * The KNIME CDK plugin is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The KNIME CDK plugin is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the plugin. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.openscience.cdk.knime.nodes.fingerprints.similarity;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataType;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.append.AppendedColumnRow;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.data.vector.bitvector.BitVectorValue;
+import org.knime.core.data.vector.doublevector.DoubleVectorCellFactory;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.streamable.RowOutput;
+import org.knime.core.util.MultiThreadWorker;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.knime.core.WorkerProgress;
+
+/**
+ * Worker computing the all-vs-all similarity matrix of the query rows and the reference fingerprints.
+ * <p>
+ * Every task processes a block of query rows. The references are traversed in tiles small enough to stay in the
+ * cache while all queries of the block are compared against them. The similarities are either appended as double
+ * vector cell or written as sparse edge table with one row per pair above the similarity cutoff. Edges are collected
+ * tile by tile without holding score rows, vector blocks are sized so that their score rows fit a fixed budget.
+ * <p>
+ * Vector scores are written straight into the double row backing the output cell. KNIME core has no float vector
+ * cell, and {@link org.knime.core.data.vector.doublevector.DoubleVectorValue} is the primitive vector type the
+ * downstream vector and distance nodes understand, so a custom float cell would be opaque to them.
+ *
+ * @author Stephan Beisken, European Bioinformatics Institute
+ */
+public class SimilarityMatrixWorker extends MultiThreadWorker<List<DataRow>, List<DataRow>> {
+
+	/** Max. number of query rows per task. */
+	static final int BLOCK_SIZE = 64;
+	// number of references per tile, 1024 fingerprints of 1024 bits occupy 128 kB
+	private static final int TILE_SIZE = 1024;
+	// max. bytes of the double score rows of a vector block, 8 MB
+	private static final long SCORE_BUDGET = 8L << 20;
+
+	private final ExecutionMonitor exec;
+	private final double max;
+	private final int blockSize;
+	private final int columnIndex;
+	private final RowOutput output;
+	private final FingerprintMatrix refs;
+	private final String[] refKeys;
+	private final boolean edges;
+	private final float threshold;
+	private final SimilarityKernel kernel;
+
+	/**
+	 * Creates a new worker.
+	 *
+	 * @param maxQueueSize the max. number of blocks in flight
+	 * @param maxActiveInstanceSize the max. number of parallel workers
+	 * @param columnIndex the index of the fingerprint column
+	 * @param exec the execution monitor
+	 * @param max the number of blocks, -1 if unknown
+	 * @param blockSize the number of query rows per block
+	 * @param output the row output
+	 * @param refs the packed reference fingerprints
+	 * @param refKeys the row keys of the references
+	 * @param edges whether to write an edge table instead of appending vector cells
+	 * @param threshold the min. similarity of an edge
+	 * @param kernel the similarity kernel
+	 */
+	public SimilarityMatrixWorker(final int maxQueueSize, final int maxActiveInstanceSize, final int columnIndex,
+			final ExecutionMonitor exec, final long max, final int blockSize, final RowOutput output,
+			final FingerprintMatrix refs,
+			final String[] refKeys, final boolean edges, final float threshold,
+			final SimilarityKernel kernel) {
+
+		super(maxQueueSize, maxActiveInstanceSize);
+		this.exec = exec;
+		this.max = max;
+		this.blockSize = blockSize;
+		this.columnIndex = columnIndex;
+		this.output = output;
+		this.refs = refs;
+		this.refKeys = refKeys;
+		this.edges = edges;
+		this.threshold = threshold;
+		this.kernel = kernel;
+	}
+
+	@Override
+	protected List<DataRow> compute(final List<DataRow> block, final long index) throws Exception {
+
+		final int n = block.size();
+		final int m = refs.size();
+
+		long[][] queries = new long[n][];
+		int[] cardinalities = new int[n];
+		long[] lengths = new long[n];
+		for (int q = 0; q < n; q++) {
+			DataCell cell = block.get(q).getCell(columnIndex);
+			if (!cell.isMissing()) {
+				lengths[q] = ((BitVectorValue) cell).length();
+				queries[q] = FingerprintMatrix.pack((BitVectorValue) cell);
+				cardinalities[q] = FingerprintMatrix.cardinality(queries[q]);
+			}
+		}
+
+		// vector rows hold the double per reference of the output cell, edge rows only the pairs above the cutoff
+		double[][] scores = edges ? null : new double[n][];
+		List<List<DataRow>> pairs = new ArrayList<List<DataRow>>(n);
+		for (int q = 0; q < n; q++) {
+			if (queries[q] != null && !edges) {
+				scores[q] = new double[m];
+			}
+			pairs.add(edges ? new ArrayList<DataRow>() : null);
+		}
+
+		for (int start = 0; start < m; start += TILE_SIZE) {
+			int end = Math.min(m, start + TILE_SIZE);
+			for (int q = 0; q < n; q++) {
+				if (queries[q] == null) {
+					continue;
+				}
+				try {
+					if (edges) {
+						addEdges(block.get(q).getKey().getString(), queries[q], cardinalities[q], lengths[q], start,
+								end, pairs.get(q));
+					} else {
+						for (int r = start; r < end; r++) {
+							scores[q][r] = refs.isMissing(r) ? Float.NaN
+									: refs.similarity(queries[q], cardinalities[q], lengths[q], r, kernel);
+						}
+					}
+				} catch (CDKException exception) {
+					// fingerprints of different length
+					queries[q] = null;
+					if (edges) {
+						pairs.get(q).clear();
+					} else {
+						scores[q] = null;
+					}
+				}
+			}
+		}
+
+		List<DataRow> result = new ArrayList<DataRow>(n);
+		for (int q = 0; q < n; q++) {
+			if (edges) {
+				result.addAll(pairs.get(q));
+			} else if (queries[q] == null) {
+				result.add(new AppendedColumnRow(block.get(q), DataType.getMissingCell()));
+			} else {
+				result.add(new AppendedColumnRow(block.get(q), DoubleVectorCellFactory.createCell(scores[q])));
+				scores[q] = null;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Adds the edges of a query to the references of a tile whose similarity reaches the cutoff.
+	 */
+	private void addEdges(final String key, final long[] query, final int cardinality, final long length,
+			final int start, final int end, final List<DataRow> pairs) throws CDKException {
+
+		for (int r = start; r < end; r++) {
+			if (refs.isMissing(r)) {
+				continue;
+			}
+			float score = refs.similarity(query, cardinality, length, r, kernel);
+			if (score >= threshold) {
+				// the reference index never contains '_', hence the key is unique
+				pairs.add(new DefaultRow(new RowKey(key + "_" + r), new StringCell(key), new StringCell(refKeys[r]),
+						new DoubleCell(score)));
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of query rows per block. Edge blocks hold no score rows and use the full block size, vector
+	 * blocks are limited by the memory of their score rows.
+	 *
+	 * @param references the number of references
+	 * @param edges whether an edge table is written
+	 * @return the block size
+	 */
+	static int blockSize(final int references, final boolean edges) {
+
+		if (edges || references == 0) {
+			return BLOCK_SIZE;
+		}
+		return (int) Math.max(1, Math.min(BLOCK_SIZE, SCORE_BUDGET / (8L * references)));
+	}
+
+	@Override
+	protected void processFinished(final ComputationTask task) throws ExecutionException, CancellationException,
+			InterruptedException {
+
+		for (DataRow row : task.get()) {
+			output.push(row);
+		}
+
+		WorkerProgress.update(this, exec, max, blockSize);
+	}
+
+	/**
+	 * Splits the rows into blocks of consecutive rows.
+	 *
+	 * @param rows the rows
+	 * @param blockSize the number of rows per block
+	 * @return the blocks
+	 */
+	static Iterable<List<DataRow>> blocks(final Iterable<DataRow> rows, final int blockSize) {
+
+		return new Iterable<List<DataRow>>() {
+
+			@Override
+			public Iterator<List<DataRow>> iterator() {
+
+				final Iterator<DataRow> it = rows.iterator();
+				return new Iterator<List<DataRow>>() {
+
+					@Override
+					public boolean hasNext() {
+						return it.hasNext();
+					}
+
+					@Override
+					public List<DataRow> next() {
+
+						if (!it.hasNext()) {
+							throw new NoSuchElementException();
+						}
+						List<DataRow> block = new ArrayList<DataRow>(blockSize);
+						while (it.hasNext() && block.size() < blockSize) {
+							block.add(it.next());
+						}
+						return block;
+					}
+
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+	}
+}
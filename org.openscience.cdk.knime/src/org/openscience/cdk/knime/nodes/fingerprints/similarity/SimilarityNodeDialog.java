@@ -18,18 +18,25 @@ package org.openscience.cdk.knime.nodes.fingerprints.similarity;
 
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 
 import javax.swing.ButtonGroup;
 import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JRadioButton;
+import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
 import javax.swing.border.Border;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
 import org.knime.core.data.DataTableSpec;
 import org.knime.core.data.vector.bitvector.BitVectorValue;
+import org.knime.core.data.vector.bytevector.ByteVectorValue;
+import org.knime.core.data.vector.doublevector.DoubleVectorValue;
 import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeDialogPane;
 import org.knime.core.node.NodeSettingsRO;
@@ -37,6 +44,8 @@ import org.knime.core.node.NodeSettingsWO;
 import org.knime.core.node.NotConfigurableException;
 import org.knime.core.node.util.ColumnSelectionComboxBox;
 import org.openscience.cdk.knime.nodes.fingerprints.similarity.SimilaritySettings.AggregationMethod;
+import org.openscience.cdk.knime.nodes.fingerprints.similarity.SimilaritySettings.MatrixOutput;
+import org.openscience.cdk.knime.nodes.fingerprints.similarity.SimilaritySettings.Metric;
 import org.openscience.cdk.knime.nodes.fingerprints.similarity.SimilaritySettings.ReturnType;
 
 /**
@@ -48,19 +57,31 @@ public class SimilarityNodeDialog extends NodeDialogPane {
 
 	@SuppressWarnings("unchecked")
 	private final ColumnSelectionComboxBox m_fingerprintColumn = new ColumnSelectionComboxBox((Border) null,
-			BitVectorValue.class);
+			BitVectorValue.class, ByteVectorValue.class, DoubleVectorValue.class);
 	@SuppressWarnings("unchecked")
 	private final ColumnSelectionComboxBox m_fingerprintRefColumn = new ColumnSelectionComboxBox((Border) null,
-			BitVectorValue.class);
+			BitVectorValue.class, ByteVectorValue.class, DoubleVectorValue.class);
+
+	private final JComboBox<Metric> metric = new JComboBox<Metric>(Metric.values());
+	private final JSpinner alpha = new JSpinner(new SpinnerNumberModel(1.0, 0.0, 10.0, 0.1));
+	private final JSpinner beta = new JSpinner(new SpinnerNumberModel(1.0, 0.0, 10.0, 0.1));
 
 	private final JRadioButton m_minimum = new JRadioButton("Minimum");
 	private final JRadioButton m_maximum = new JRadioButton("Maximum");
 	private final JRadioButton m_average = new JRadioButton("Average");
 	private final JRadioButton m_matrix = new JRadioButton("Matrix");
+	private final JRadioButton m_topK = new JRadioButton("Top k");
+
+	private final JSpinner topK = new JSpinner(new SpinnerNumberModel(10, 0, Integer.MAX_VALUE, 1));
+	private final JSpinner threshold = new JSpinner(new SpinnerNumberModel(0.0, 0.0, 1.0, 0.05));
 
 	private final JRadioButton returnString = new JRadioButton("String");
 	private final JRadioButton returnCollection = new JRadioButton("Collection");
 
+	private final JRadioButton matrixList = new JRadioButton("List");
+	private final JRadioButton matrixVector = new JRadioButton("Vector");
+	private final JRadioButton matrixEdges = new JRadioButton("Edges");
+
 	private final JCheckBox identicalBox = new JCheckBox();
 
 	private final SimilaritySettings m_settings = new SimilaritySettings();
@@ -87,6 +108,32 @@ public class SimilarityNodeDialog extends NodeDialogPane {
 		c.gridx = 1;
 		p.add(m_fingerprintRefColumn, c);
 
+		c.gridy++;
+		c.gridx = 0;
+		p.add(new JLabel("Metric   "), c);
+		c.gridx = 1;
+		p.add(metric, c);
+		c.gridy++;
+		c.gridx = 0;
+		p.add(new JLabel("Tversky alpha   "), c);
+		c.gridx = 1;
+		p.add(alpha, c);
+		c.gridy++;
+		c.gridx = 0;
+		p.add(new JLabel("Tversky beta   "), c);
+		c.gridx = 1;
+		p.add(beta, c);
+		alpha.setEnabled(false);
+		beta.setEnabled(false);
+		metric.addActionListener(new ActionListener() {
+
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				alpha.setEnabled(metric.getSelectedItem() == Metric.Tversky);
+				beta.setEnabled(metric.getSelectedItem() == Metric.Tversky);
+			}
+		});
+
 		c.gridy++;
 		c.gridx = 0;
 		p.add(new JLabel("Aggregation method   "), c);
@@ -99,11 +146,42 @@ public class SimilarityNodeDialog extends NodeDialogPane {
 		p.add(m_average, c);
 		c.gridy++;
 		p.add(m_matrix, c);
+		c.gridy++;
+		p.add(m_topK, c);
 
 		m_minimum.addChangeListener(new SimListener());
 		m_maximum.addChangeListener(new SimListener());
 		m_average.addChangeListener(new SimListener());
 		m_matrix.addChangeListener(new SimListener());
+		m_topK.addChangeListener(new SimListener());
+
+		c.gridy++;
+		c.gridx = 0;
+		p.add(new JLabel("Number of hits (0 = all)   "), c);
+		c.gridx = 1;
+		p.add(topK, c);
+		c.gridy++;
+		c.gridx = 0;
+		p.add(new JLabel("Min. similarity   "), c);
+		c.gridx = 1;
+		p.add(threshold, c);
+		topK.setEnabled(false);
+		threshold.setEnabled(false);
+
+		c.gridy++;
+		c.gridx = 0;
+		p.add(new JLabel("Matrix output   "), c);
+		c.gridx = 1;
+		p.add(matrixList, c);
+		c.gridy++;
+		p.add(matrixVector, c);
+		c.gridy++;
+		p.add(matrixEdges, c);
+		matrixList.setSelected(true);
+		matrixList.setEnabled(false);
+		matrixVector.setEnabled(false);
+		matrixEdges.setEnabled(false);
+		matrixEdges.addChangeListener(new SimListener());
 
 		c.gridy++;
 		c.gridx = 0;
@@ -127,11 +205,17 @@ public class SimilarityNodeDialog extends NodeDialogPane {
 		bg1.add(m_maximum);
 		bg1.add(m_average);
 		bg1.add(m_matrix);
+		bg1.add(m_topK);
 
 		ButtonGroup bg2 = new ButtonGroup();
 		bg2.add(returnString);
 		bg2.add(returnCollection);
 
+		ButtonGroup bg3 = new ButtonGroup();
+		bg3.add(matrixList);
+		bg3.add(matrixVector);
+		bg3.add(matrixEdges);
+
 		addTab("Similarity Options", p);
 	}
 
@@ -159,6 +243,8 @@ public class SimilarityNodeDialog extends NodeDialogPane {
 			m_average.setSelected(true);
 		} else if (m_settings.aggregationMethod() == AggregationMethod.Matrix) {
 			m_matrix.setSelected(true);
+		} else if (m_settings.aggregationMethod() == AggregationMethod.TopK) {
+			m_topK.setSelected(true);
 		}
 
 		if (m_settings.returnType().equals(ReturnType.String)) {
@@ -176,6 +262,19 @@ public class SimilarityNodeDialog extends NodeDialogPane {
 		}
 
 		identicalBox.setSelected(m_settings.identical());
+		topK.setValue(m_settings.topK());
+		threshold.setValue(m_settings.threshold());
+		metric.setSelectedItem(m_settings.metric());
+		alpha.setValue(m_settings.alpha());
+		beta.setValue(m_settings.beta());
+
+		if (m_settings.matrixOutput() == MatrixOutput.List) {
+			matrixList.setSelected(true);
+		} else if (m_settings.matrixOutput() == MatrixOutput.Vector) {
+			matrixVector.setSelected(true);
+		} else if (m_settings.matrixOutput() == MatrixOutput.Edges) {
+			matrixEdges.setSelected(true);
+		}
 	}
 
 	/**
@@ -194,6 +293,8 @@ public class SimilarityNodeDialog extends NodeDialogPane {
 			m_settings.aggregationMethod(AggregationMethod.Average);
 		} else if (m_matrix.isSelected()) {
 			m_settings.aggregationMethod(AggregationMethod.Matrix);
+		} else if (m_topK.isSelected()) {
+			m_settings.aggregationMethod(AggregationMethod.TopK);
 		}
 		if (returnString.isSelected()) {
 			m_settings.returnType(ReturnType.String);
@@ -202,6 +303,18 @@ public class SimilarityNodeDialog extends NodeDialogPane {
 		}
 
 		m_settings.identical(identicalBox.isSelected());
+		m_settings.topK(((Number) topK.getValue()).intValue());
+		m_settings.threshold(((Number) threshold.getValue()).doubleValue());
+		m_settings.metric((Metric) metric.getSelectedItem());
+		m_settings.alpha(((Number) alpha.getValue()).doubleValue());
+		m_settings.beta(((Number) beta.getValue()).doubleValue());
+		if (matrixList.isSelected()) {
+			m_settings.matrixOutput(MatrixOutput.List);
+		} else if (matrixVector.isSelected()) {
+			m_settings.matrixOutput(MatrixOutput.Vector);
+		} else if (matrixEdges.isSelected()) {
+			m_settings.matrixOutput(MatrixOutput.Edges);
+		}
 		
 		m_settings.saveSettings(settings);
 	}
@@ -215,7 +328,7 @@ public class SimilarityNodeDialog extends NodeDialogPane {
 				returnString.setEnabled(false);
 				returnCollection.setEnabled(false);
 				identicalBox.setEnabled(false);
-			} else if (m_maximum.isSelected()) {
+			} else if (m_maximum.isSelected() || m_topK.isSelected()) {
 				identicalBox.setEnabled(true);
 				returnString.setEnabled(true);
 				returnCollection.setEnabled(true);
@@ -224,6 +337,12 @@ public class SimilarityNodeDialog extends NodeDialogPane {
 				returnString.setEnabled(true);
 				returnCollection.setEnabled(true);
 			}
+			topK.setEnabled(m_topK.isSelected());
+			// the cutoff applies to the top-k search and the matrix edges
+			threshold.setEnabled(m_topK.isSelected() || (m_matrix.isSelected() && matrixEdges.isSelected()));
+			matrixList.setEnabled(m_matrix.isSelected());
+			matrixVector.setEnabled(m_matrix.isSelected());
+			matrixEdges.setEnabled(m_matrix.isSelected());
 		}
 	}
 }
@@ -20,9 +20,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 import org.knime.core.data.DataCell;
 import org.knime.core.data.DataColumnSpec;
@@ -31,6 +31,7 @@ import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTable;
 import org.knime.core.data.DataTableSpec;
 import org.knime.core.data.DataType;
+import org.knime.core.data.DataValue;
 import org.knime.core.data.collection.CollectionCellFactory;
 import org.knime.core.data.collection.ListCell;
 import org.knime.core.data.container.AbstractCellFactory;
@@ -38,30 +39,42 @@ import org.knime.core.data.container.ColumnRearranger;
 import org.knime.core.data.def.DoubleCell;
 import org.knime.core.data.def.StringCell;
 import org.knime.core.data.vector.bitvector.BitVectorValue;
-import org.knime.core.data.vector.bitvector.DenseBitVectorCell;
+import org.knime.core.data.vector.bytevector.ByteVectorValue;
+import org.knime.core.data.vector.doublevector.DoubleVectorCellFactory;
+import org.knime.core.data.vector.doublevector.DoubleVectorValue;
+import org.knime.core.node.BufferedDataContainer;
 import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.streamable.BufferedDataTableRowOutput;
+import org.knime.core.node.streamable.RowOutput;
 import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.knime.commons.CDKNodeUtils;
+import org.openscience.cdk.knime.commons.CDKScheduler;
+import org.openscience.cdk.knime.commons.CDKScheduler.Lease;
+import org.openscience.cdk.knime.commons.CDKScheduler.Workload;
 import org.openscience.cdk.knime.core.CDKNodeModel;
+import org.openscience.cdk.knime.nodes.fingerprints.similarity.CardinalityIndex.Hit;
 import org.openscience.cdk.knime.nodes.fingerprints.similarity.SimilaritySettings.AggregationMethod;
+import org.openscience.cdk.knime.nodes.fingerprints.similarity.SimilaritySettings.MatrixOutput;
 import org.openscience.cdk.knime.nodes.fingerprints.similarity.SimilaritySettings.ReturnType;
-import org.openscience.cdk.similarity.Tanimoto;
 
 /**
- * This is the model implementation of the similarity node. CDK is used to
- * calculate the Tanimoto coefficient for two fingerprints. The minimum, maximum
- * or average can be selected as aggregation method.
+ * This is the model implementation of the similarity node. The Tanimoto, Dice,
+ * Cosine, Tversky or Russell-Rao coefficient is calculated for two fingerprints
+ * or two count or descriptor vectors. The minimum, maximum or average can be
+ * selected as aggregation method.
  * 
  * @author Stephan Beisken, European Bioinformatics Institute
  */
 public class SimilarityNodeModel extends CDKNodeModel {
 
-	private Map<BitSet, ArrayList<String>> fingerprintRefs;
-	private List<BitSet> matrixFingerprintRefs;
-	private int rowCount;
+	private ReferenceMatrix fingerprintRefs;
+	private List<ArrayList<String>> fingerprintRefKeys;
+	private ReferenceMatrix matrixFingerprintRefs;
+	private CardinalityIndex searchFingerprintRefs;
 
 	/**
 	 * Constructor for the node model.
@@ -79,14 +92,86 @@ public class SimilarityNodeModel extends CDKNodeModel {
 
 		String sr = ((SimilaritySettings) settings).fingerprintRefColumn();
 		final int fingerprintRefColIndex = inData[1].getDataTableSpec().findColumnIndex(sr);
-		fingerprintRefs = getFingerprintRefs(inData[1], fingerprintRefColIndex);
-		matrixFingerprintRefs = getMatrixRefs(inData[1], fingerprintRefColIndex);
-		rowCount = fingerprintRefs.size();
+		if (settings(SimilaritySettings.class).aggregationMethod() == AggregationMethod.Matrix) {
+			List<String> keys = new ArrayList<String>();
+			matrixFingerprintRefs = getMatrixRefs(inData[1], fingerprintRefColIndex, keys);
+			if (settings(SimilaritySettings.class).matrixOutput() != MatrixOutput.List) {
+				return new BufferedDataTable[] { executeMatrix(inData[0], keys, exec) };
+			}
+		} else if (settings(SimilaritySettings.class).aggregationMethod() == AggregationMethod.TopK) {
+			searchFingerprintRefs = getSearchRefs(inData[1], fingerprintRefColIndex);
+		} else {
+			fingerprintRefKeys = new ArrayList<ArrayList<String>>();
+			fingerprintRefs = getFingerprintRefs(inData[1], fingerprintRefColIndex, fingerprintRefKeys);
+		}
 
 		ColumnRearranger cr = createColumnRearranger(inData[0].getDataTableSpec());
 		return new BufferedDataTable[] { exec.createColumnRearrangeTable(inData[0], cr, exec) };
 	}
 
+	/**
+	 * Computes the all-vs-all similarity matrix in parallel and appends the rows as double vectors or writes the pairs
+	 * above the similarity cutoff as edge table.
+	 * 
+	 * @param table the query table
+	 * @param refKeys the row keys of the references
+	 * @param exec the execution context
+	 * @return the output table
+	 * @throws Exception if an error has occurred during execution
+	 */
+	private BufferedDataTable executeMatrix(final BufferedDataTable table, final List<String> refKeys,
+			final ExecutionContext exec) throws Exception {
+
+		SimilaritySettings s = settings(SimilaritySettings.class);
+		SimilarityKernel kernel = SimilarityKernels.create(s.metric(), s.alpha(), s.beta());
+		boolean edges = s.matrixOutput() == MatrixOutput.Edges;
+		DataTableSpec spec = table.getDataTableSpec();
+		DataTableSpec outSpec = edges ? createEdgeSpec() : new DataTableSpec(spec, new DataTableSpec(createSpec(spec)));
+		BufferedDataContainer container = exec.createDataContainer(outSpec);
+		RowOutput output = new BufferedDataTableRowOutput(container);
+
+		int columnIndex = spec.findColumnIndex(settings.targetColumn());
+		int blockSize = SimilarityMatrixWorker.blockSize(refKeys.size(), edges);
+		long blocks = (table.size() + blockSize - 1) / blockSize;
+
+		// a task holds a block of rows, a short queue keeps the score rows in flight small
+		Lease lease = CDKScheduler.getInstance().acquire(getClass().getName(), Workload.CPU, Integer.MAX_VALUE);
+		long rows = 0;
+		try {
+			SimilarityMatrixWorker worker = new SimilarityMatrixWorker(2 * lease.parallelism(), lease.parallelism(),
+					columnIndex, exec, blocks, blockSize, output, (FingerprintMatrix) matrixFingerprintRefs,
+					refKeys.toArray(new String[refKeys.size()]), edges, (float) s.threshold(), kernel);
+			worker.run(SimilarityMatrixWorker.blocks(table, blockSize));
+			rows = table.size();
+		} catch (InterruptedException e) {
+			CanceledExecutionException cee = new CanceledExecutionException(e.getMessage());
+			cee.initCause(e);
+			throw cee;
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause == null) {
+				cause = e;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new RuntimeException(cause);
+		} finally {
+			lease.release(rows);
+			output.close();
+		}
+
+		return container.getTable();
+	}
+
+	private DataTableSpec createEdgeSpec() {
+
+		return new DataTableSpec(new DataColumnSpecCreator("Query", StringCell.TYPE).createSpec(),
+				new DataColumnSpecCreator("Reference", StringCell.TYPE).createSpec(),
+				new DataColumnSpecCreator(settings(SimilaritySettings.class).metric().toString(), DoubleCell.TYPE)
+						.createSpec());
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -94,6 +179,8 @@ public class SimilarityNodeModel extends CDKNodeModel {
 	protected ColumnRearranger createColumnRearranger(final DataTableSpec spec) throws InvalidSettingsException {
 
 		final int fingerprintColIndex = spec.findColumnIndex(settings.targetColumn());
+		final SimilarityKernel kernel = SimilarityKernels.create(settings(SimilaritySettings.class).metric(),
+				settings(SimilaritySettings.class).alpha(), settings(SimilaritySettings.class).beta());
 
 		DataColumnSpec[] outSpec = createSpec(spec);
 
@@ -109,86 +196,106 @@ public class SimilarityNodeModel extends CDKNodeModel {
 					Arrays.fill(cells, DataType.getMissingCell());
 					return cells;
 				}
-				if (!(dataCell instanceof DenseBitVectorCell)) {
-					throw new IllegalArgumentException("No String cell at " + fingerprintColIndex + ": "
-							+ dataCell.getClass().getName());
-				}
-				DenseBitVectorCell bitVectorCell = (DenseBitVectorCell) dataCell;
-
-				String bitString = bitVectorCell.toBinaryString();
-				BitSet bs = new BitSet((int) bitVectorCell.length());
-				for (int j = 0; j < bitString.length(); j++) {
-					if (bitString.charAt(j) == '1')
-						bs.set(j);
-				}
-
 				try {
 					if (settings(SimilaritySettings.class).aggregationMethod() == AggregationMethod.Matrix) {
+						float[] scores = matrixFingerprintRefs.similarities(dataCell, kernel);
 						List<DataCell> results = new ArrayList<DataCell>();
-						for (BitSet refBs : matrixFingerprintRefs) {
-							if (refBs == null)
+						for (int i = 0; i < scores.length; i++) {
+							if (matrixFingerprintRefs.isMissing(i))
 								results.add(DataType.getMissingCell());
 							else
-								results.add(new DoubleCell(Tanimoto.calculate(bs, refBs)));
+								results.add(new DoubleCell(scores[i]));
 						}
 						cells[0] = CollectionCellFactory.createListCell(results);
+					} else if (settings(SimilaritySettings.class).aggregationMethod() == AggregationMethod.TopK) {
+						SimilaritySettings s = settings(SimilaritySettings.class);
+						String excludedKey = s.identical() ? row.getKey().getString() : null;
+						BitVectorValue fingerprint = (BitVectorValue) dataCell;
+						List<Hit> hits = searchFingerprintRefs.search(FingerprintMatrix.pack(fingerprint),
+								fingerprint.length(), kernel, s.topK(), (float) s.threshold(), excludedKey);
+
+						List<DoubleCell> scores = new ArrayList<DoubleCell>();
+						List<StringCell> keys = new ArrayList<StringCell>();
+						for (Hit hit : hits) {
+							scores.add(new DoubleCell(hit.score()));
+							keys.add(new StringCell(hit.key()));
+						}
+						cells[0] = CollectionCellFactory.createListCell(scores);
+						if (s.returnType().equals(ReturnType.String)) {
+							StringBuilder resString = new StringBuilder();
+							for (StringCell cell : keys) {
+								if (resString.length() > 0) {
+									resString.append('|');
+								}
+								resString.append(cell.getStringValue());
+							}
+							cells[1] = new StringCell(resString.toString());
+						} else {
+							cells[1] = CollectionCellFactory.createListCell(keys);
+						}
 					} else {
+						float[] scores = fingerprintRefs.similarities(dataCell, kernel);
 						float coeff = 0.0f;
 						float pcoeff = 0.0f;
 						ArrayList<String> pkey = null;
-						Iterator<Map.Entry<BitSet, ArrayList<String>>> it = fingerprintRefs.entrySet().iterator();
 
 						if (settings(SimilaritySettings.class).aggregationMethod() == AggregationMethod.Minimum) {
-							pcoeff = 1;
-							while (it.hasNext()) {
-								Map.Entry<BitSet, ArrayList<String>> pairs = it.next();
-								coeff = Tanimoto.calculate(bs, pairs.getKey());
+							// continuous coefficients may be negative
+							pcoeff = Float.POSITIVE_INFINITY;
+							for (int i = 0; i < scores.length; i++) {
+								coeff = scores[i];
 								if (coeff <= pcoeff) {
 									pcoeff = coeff;
-									pkey = pairs.getValue();
+									pkey = fingerprintRefKeys.get(i);
 								}
 							}
 
 						} else if (settings(SimilaritySettings.class).aggregationMethod() == AggregationMethod.Maximum) {
 
+							pcoeff = Float.NEGATIVE_INFINITY;
 							if (settings(SimilaritySettings.class).identical()) {
-								while (it.hasNext()) {
-									Map.Entry<BitSet, ArrayList<String>> pairs = it.next();
-									coeff = Tanimoto.calculate(bs, pairs.getKey());
+								for (int i = 0; i < scores.length; i++) {
+									coeff = scores[i];
 									if (coeff >= pcoeff) {
-										if (pairs.getValue().contains(row.getKey().getString())) {
-											if (pairs.getValue().size() > 1) {
-												ArrayList<String> keys = pairs.getValue();
+										if (fingerprintRefKeys.get(i).contains(row.getKey().getString())) {
+											if (fingerprintRefKeys.get(i).size() > 1) {
+												// copy, the reference keys are shared by all rows
+												ArrayList<String> keys = new ArrayList<String>(
+														fingerprintRefKeys.get(i));
 												keys.remove(row.getKey().getString());
 												pcoeff = coeff;
 												pkey = keys;
 											}
 										} else {
 											pcoeff = coeff;
-											pkey = (ArrayList<String>) pairs.getValue();
+											pkey = fingerprintRefKeys.get(i);
 										}
 									}
 								}
 							} else {
-								while (it.hasNext()) {
-									Map.Entry<BitSet, ArrayList<String>> pairs = it.next();
-									coeff = Tanimoto.calculate(bs, pairs.getKey());
+								for (int i = 0; i < scores.length; i++) {
+									coeff = scores[i];
 									if (coeff >= pcoeff) {
 										pcoeff = coeff;
-										pkey = (ArrayList<String>) pairs.getValue();
+										pkey = fingerprintRefKeys.get(i);
 									}
 								}
 							}
 
 						} else if (settings(SimilaritySettings.class).aggregationMethod() == AggregationMethod.Average) {
-							while (it.hasNext()) {
-								Map.Entry<BitSet, ArrayList<String>> pairs = it.next();
-								coeff += Tanimoto.calculate(bs, pairs.getKey());
+							for (int i = 0; i < scores.length; i++) {
+								coeff += scores[i];
 							}
-							pcoeff = coeff / rowCount;
+							pcoeff = coeff / scores.length;
 							pkey = new ArrayList<String>();
 						}
 
+						if (pkey == null) {
+							// no comparable reference
+							Arrays.fill(cells, DataType.getMissingCell());
+							return cells;
+						}
+
 						cells[0] = new DoubleCell(pcoeff);
 						List<StringCell> res = new ArrayList<StringCell>();
 						for (String st : pkey) {
@@ -227,16 +334,29 @@ public class SimilarityNodeModel extends CDKNodeModel {
 	private DataColumnSpec[] createSpec(final DataTableSpec oldSpec) {
 
 		DataColumnSpec[] outSpec = null;
-		String uniqueColName = DataTableSpec.getUniqueColumnName(oldSpec, "Tanimoto");
+		String uniqueColName = DataTableSpec.getUniqueColumnName(oldSpec,
+				settings(SimilaritySettings.class).metric().toString());
 		String uniqueColRefName = DataTableSpec.getUniqueColumnName(oldSpec, "Reference");
 		if (settings(SimilaritySettings.class).aggregationMethod() == AggregationMethod.Average) {
 			DataColumnSpec colSpec = new DataColumnSpecCreator(uniqueColName, DoubleCell.TYPE).createSpec();
 			outSpec = new DataColumnSpec[] { colSpec };
 			
 		} else if (settings(SimilaritySettings.class).aggregationMethod() == AggregationMethod.Matrix) {
-			DataColumnSpec colSpec = new DataColumnSpecCreator(uniqueColName, ListCell.getCollectionType(DoubleCell.TYPE))
-					.createSpec();
+			DataType type = (settings(SimilaritySettings.class).matrixOutput() == MatrixOutput.List)
+					? ListCell.getCollectionType(DoubleCell.TYPE) : DoubleVectorCellFactory.TYPE;
+			DataColumnSpec colSpec = new DataColumnSpecCreator(uniqueColName, type).createSpec();
 			outSpec = new DataColumnSpec[] { colSpec };
+		} else if (settings(SimilaritySettings.class).aggregationMethod() == AggregationMethod.TopK) {
+			DataColumnSpec colSpec1 = new DataColumnSpecCreator(uniqueColName,
+					ListCell.getCollectionType(DoubleCell.TYPE)).createSpec();
+			DataColumnSpec colSpec2 = null;
+			if (settings(SimilaritySettings.class).returnType().equals(ReturnType.String)) {
+				colSpec2 = new DataColumnSpecCreator(uniqueColRefName, StringCell.TYPE).createSpec();
+			} else {
+				colSpec2 = new DataColumnSpecCreator(uniqueColRefName, ListCell.getCollectionType(StringCell.TYPE))
+						.createSpec();
+			}
+			outSpec = new DataColumnSpec[] { colSpec1, colSpec2 };
 		} else {
 			DataColumnSpec colSpec1 = new DataColumnSpecCreator(uniqueColName, DoubleCell.TYPE).createSpec();
 			DataColumnSpec colSpec2 = null;
@@ -253,67 +373,117 @@ public class SimilarityNodeModel extends CDKNodeModel {
 	}
 
 	/**
-	 * Provides a map of bitsets and their corresponding rows.
+	 * Provides the packed distinct fingerprints and their corresponding rows. Count and descriptor vectors are packed
+	 * row by row without grouping.
 	 * 
-	 * @param bdt a buffered data table with DenseBitVector cells
-	 * @param fingerprintRefColIndex a fingerprint column index in bdt
-	 * @return the map
+	 * @param dt a data table with bit, byte or double vector cells
+	 * @param fingerprintRefColIndex a fingerprint column index in dt
+	 * @param keys the list the row keys of each distinct fingerprint are added to
+	 * @return the packed fingerprints
 	 */
-	private Map<BitSet, ArrayList<String>> getFingerprintRefs(DataTable dt, int fingerprintRefColIndex) {
+	private ReferenceMatrix getFingerprintRefs(DataTable dt, int fingerprintRefColIndex,
+			List<ArrayList<String>> keys) {
+
+		if (!isBitVector(dt.getDataTableSpec(), fingerprintRefColIndex)) {
+			List<DataValue> vectors = new ArrayList<DataValue>();
+			for (DataRow row : dt) {
+				if (row.getCell(fingerprintRefColIndex).isMissing()) {
+					continue;
+				}
+				vectors.add(row.getCell(fingerprintRefColIndex));
+				keys.add(new ArrayList<String>(Arrays.asList(row.getKey().getString())));
+			}
+			return new VectorMatrix(vectors);
+		}
 
-		Map<BitSet, ArrayList<String>> fingerprintRefs = new HashMap<BitSet, ArrayList<String>>();
+		Map<BitSet, Integer> indices = new HashMap<BitSet, Integer>();
+		List<long[]> fingerprints = new ArrayList<long[]>();
 
 		for (DataRow row : dt) {
 			if (row.getCell(fingerprintRefColIndex).isMissing()) {
 				continue;
 			}
-			BitVectorValue bitVectorValue = (BitVectorValue) row.getCell(fingerprintRefColIndex);
-			String bitString = bitVectorValue.toBinaryString();
-			BitSet bs = new BitSet((int) bitVectorValue.length());
-
-			for (int j = 0; j < bitString.length(); j++) {
-				if (bitString.charAt(j) == '1')
-					bs.set(j);
-			}
-			if (fingerprintRefs.containsKey(bs)) {
-				fingerprintRefs.get(bs).add(row.getKey().getString());
+			long[] fingerprint = FingerprintMatrix.pack((BitVectorValue) row.getCell(fingerprintRefColIndex));
+			BitSet bs = BitSet.valueOf(fingerprint);
+			Integer index = indices.get(bs);
+			if (index != null) {
+				keys.get(index).add(row.getKey().getString());
 			} else {
 				ArrayList<String> keyList = new ArrayList<String>();
 				keyList.add(row.getKey().getString());
-				fingerprintRefs.put(bs, keyList);
+				indices.put(bs, fingerprints.size());
+				fingerprints.add(fingerprint);
+				keys.add(keyList);
 			}
 		}
-		return fingerprintRefs;
+		return new FingerprintMatrix(fingerprints);
 	}
 
 	/**
-	 * Provides a list of bitsets in their given order.
+	 * Provides the packed fingerprints in their given order.
 	 * 
-	 * @param bdt a buffered data table with DenseBitVector cells
-	 * @param fingerprintRefColIndex a fingerprint column index in bdt
-	 * @return the map
+	 * @param dt a data table with bit, byte or double vector cells
+	 * @param fingerprintRefColIndex a fingerprint column index in dt
+	 * @param keys the list the row keys are added to
+	 * @return the packed fingerprints
 	 */
-	private List<BitSet> getMatrixRefs(DataTable dt, int fingerprintRefColIndex) {
+	private ReferenceMatrix getMatrixRefs(DataTable dt, int fingerprintRefColIndex, List<String> keys) {
+
+		if (!isBitVector(dt.getDataTableSpec(), fingerprintRefColIndex)) {
+			List<DataValue> vectors = new ArrayList<DataValue>();
+			for (DataRow row : dt) {
+				keys.add(row.getKey().getString());
+				DataCell cell = row.getCell(fingerprintRefColIndex);
+				vectors.add(cell.isMissing() ? null : cell);
+			}
+			return new VectorMatrix(vectors);
+		}
 
-		List<BitSet> fingerprintRefs = new ArrayList<BitSet>();
+		List<long[]> fingerprints = new ArrayList<long[]>();
 
 		for (DataRow row : dt) {
+			keys.add(row.getKey().getString());
 			if (row.getCell(fingerprintRefColIndex).isMissing()) {
-				fingerprintRefs.add(null);
+				fingerprints.add(null);
 				continue;
 			}
-			BitVectorValue bitVectorValue = (BitVectorValue) row.getCell(fingerprintRefColIndex);
-			String bitString = bitVectorValue.toBinaryString();
-			BitSet bs = new BitSet((int) bitVectorValue.length());
+			fingerprints.add(FingerprintMatrix.pack((BitVectorValue) row.getCell(fingerprintRefColIndex)));
+		}
+
+		return new FingerprintMatrix(fingerprints);
+	}
+
+	/**
+	 * Provides the packed fingerprints bucketed by cardinality.
+	 * 
+	 * @param dt a data table with bit vector cells
+	 * @param fingerprintRefColIndex a fingerprint column index in dt
+	 * @return the search index
+	 */
+	private CardinalityIndex getSearchRefs(DataTable dt, int fingerprintRefColIndex) {
 
-			for (int j = 0; j < bitString.length(); j++) {
-				if (bitString.charAt(j) == '1')
-					bs.set(j);
+		List<long[]> fingerprints = new ArrayList<long[]>();
+		List<String> keys = new ArrayList<String>();
+
+		for (DataRow row : dt) {
+			if (row.getCell(fingerprintRefColIndex).isMissing()) {
+				continue;
 			}
-			fingerprintRefs.add(bs);
+			fingerprints.add(FingerprintMatrix.pack((BitVectorValue) row.getCell(fingerprintRefColIndex)));
+			keys.add(row.getKey().getString());
 		}
 
-		return fingerprintRefs;
+		return new CardinalityIndex(fingerprints, keys);
+	}
+
+	private static boolean isBitVector(final DataTableSpec spec, final int columnIndex) {
+		return spec.getColumnSpec(columnIndex).getType().isCompatible(BitVectorValue.class);
+	}
+
+	private static boolean isVector(final DataTableSpec spec, final int columnIndex) {
+
+		DataType type = spec.getColumnSpec(columnIndex).getType();
+		return type.isCompatible(ByteVectorValue.class) || type.isCompatible(DoubleVectorValue.class);
 	}
 
 	/**
@@ -322,7 +492,12 @@ public class SimilarityNodeModel extends CDKNodeModel {
 	@Override
 	protected DataTableSpec[] configure(final DataTableSpec[] inSpecs) throws InvalidSettingsException {
 
-		settings.targetColumn(CDKNodeUtils.autoConfigure(inSpecs[0], settings.targetColumn(), BitVectorValue.class));
+		// count and descriptor vectors are used if selected, bit vectors are auto-configured
+		int columnIndex = inSpecs[0].findColumnIndex(settings.targetColumn());
+		if (columnIndex == -1 || !isVector(inSpecs[0], columnIndex)) {
+			settings.targetColumn(CDKNodeUtils.autoConfigure(inSpecs[0], settings.targetColumn(),
+					BitVectorValue.class));
+		}
 
 		String refCol = ((SimilaritySettings) settings).fingerprintRefColumn();
 		if (refCol == null || inSpecs[1].findColumnIndex(refCol) == -1) {
@@ -339,6 +514,23 @@ public class SimilarityNodeModel extends CDKNodeModel {
 			}
 		}
 
+		SimilaritySettings s = settings(SimilaritySettings.class);
+		boolean bits = isBitVector(inSpecs[0], inSpecs[0].findColumnIndex(s.targetColumn()));
+		if (bits != isBitVector(inSpecs[1], inSpecs[1].findColumnIndex(s.fingerprintRefColumn()))) {
+			throw new InvalidSettingsException("Fingerprints and reference fingerprints must both be bit vectors or "
+					+ "both be count or descriptor vectors");
+		}
+		if (!bits && (s.aggregationMethod() == AggregationMethod.TopK || (s.aggregationMethod() == AggregationMethod
+				.Matrix && s.matrixOutput() != MatrixOutput.List))) {
+			throw new InvalidSettingsException("The top-k search and the matrix vector and edge output require bit "
+					+ "vectors");
+		}
+
+		if (settings(SimilaritySettings.class).aggregationMethod() == AggregationMethod.Matrix
+				&& settings(SimilaritySettings.class).matrixOutput() == MatrixOutput.Edges) {
+			return new DataTableSpec[] { createEdgeSpec() };
+		}
+
 		// creates the column rearranger -- does the heavy lifting for adapter cells
 		ColumnRearranger arranger = createColumnRearranger(inSpecs[0]);
 		return new DataTableSpec[] { arranger.createSpec() };
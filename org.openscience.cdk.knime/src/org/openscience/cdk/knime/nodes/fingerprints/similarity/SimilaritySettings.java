@@ -30,7 +30,7 @@ public class SimilaritySettings implements CDKSettings {
 
 	/** Enum for the different aggregation methods. */
 	public enum AggregationMethod {
-		Minimum, Maximum, Average, Matrix
+		Minimum, Maximum, Average, Matrix, TopK
 	}
 
 	/** Enum for the different fingerprint types. */
@@ -38,6 +38,16 @@ public class SimilaritySettings implements CDKSettings {
 		Standard, Extended, EState, MACCS, Pubchem
 	}
 
+	/** Enum for the output options of the matrix aggregation. */
+	public enum MatrixOutput {
+		List, Vector, Edges
+	}
+
+	/** Enum for the similarity metrics. */
+	public enum Metric {
+		Tanimoto, Dice, Cosine, Tversky, RussellRao
+	}
+
 	/** Enum for the two return type options. */
 	public enum ReturnType {
 		String, Collection
@@ -49,6 +59,12 @@ public class SimilaritySettings implements CDKSettings {
 	private AggregationMethod m_aggregation = AggregationMethod.Average;
 	private ReturnType returnType = ReturnType.String;
 	private boolean identicalInput = false;
+	private int topK = 10;
+	private double threshold = 0;
+	private MatrixOutput matrixOutput = MatrixOutput.List;
+	private Metric metric = Metric.Tanimoto;
+	private double alpha = 1;
+	private double beta = 1;
 
 	/**
 	 * Returns the name of the column that holds the fingerprints.
@@ -136,6 +152,114 @@ public class SimilaritySettings implements CDKSettings {
 		return identicalInput;
 	}
 
+	/**
+	 * Returns the max. number of hits per row of the top-k search.
+	 * 
+	 * @return the number of hits, no limit if smaller than one
+	 */
+	public int topK() {
+		return topK;
+	}
+
+	/**
+	 * Sets the max. number of hits per row of the top-k search.
+	 * 
+	 * @param topK the number of hits, no limit if smaller than one
+	 */
+	public void topK(final int topK) {
+		this.topK = topK;
+	}
+
+	/**
+	 * Returns the min. similarity of a hit of the top-k search.
+	 * 
+	 * @return the similarity cutoff
+	 */
+	public double threshold() {
+		return threshold;
+	}
+
+	/**
+	 * Sets the min. similarity of a hit of the top-k search.
+	 * 
+	 * @param threshold the similarity cutoff
+	 */
+	public void threshold(final double threshold) {
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Returns the output of the matrix aggregation.
+	 * 
+	 * @return the matrix output
+	 */
+	public MatrixOutput matrixOutput() {
+		return matrixOutput;
+	}
+
+	/**
+	 * Sets the output of the matrix aggregation.
+	 * 
+	 * @param matrixOutput the matrix output
+	 */
+	public void matrixOutput(final MatrixOutput matrixOutput) {
+		this.matrixOutput = matrixOutput;
+	}
+
+	/**
+	 * Returns the similarity metric.
+	 * 
+	 * @return the metric
+	 */
+	public Metric metric() {
+		return metric;
+	}
+
+	/**
+	 * Sets the similarity metric.
+	 * 
+	 * @param metric the metric
+	 */
+	public void metric(final Metric metric) {
+		this.metric = metric;
+	}
+
+	/**
+	 * Returns the Tversky weight of the features unique to the query.
+	 * 
+	 * @return the alpha
+	 */
+	public double alpha() {
+		return alpha;
+	}
+
+	/**
+	 * Sets the Tversky weight of the features unique to the query.
+	 * 
+	 * @param alpha the alpha
+	 */
+	public void alpha(final double alpha) {
+		this.alpha = alpha;
+	}
+
+	/**
+	 * Returns the Tversky weight of the features unique to the reference.
+	 * 
+	 * @return the beta
+	 */
+	public double beta() {
+		return beta;
+	}
+
+	/**
+	 * Sets the Tversky weight of the features unique to the reference.
+	 * 
+	 * @param beta the beta
+	 */
+	public void beta(final double beta) {
+		this.beta = beta;
+	}
+
 	/**
 	 * Loads the settings from the given node settings object.
 	 * 
@@ -149,6 +273,13 @@ public class SimilaritySettings implements CDKSettings {
 		returnType = ReturnType.valueOf(settings.getString("returnType"));
 		m_aggregation = AggregationMethod.valueOf(settings.getString("aggregationMethod"));
 		identicalInput = settings.getBoolean("identical");
+		// added later, default values for older nodes
+		topK = settings.getInt("topK", 10);
+		threshold = settings.getDouble("threshold", 0);
+		matrixOutput = MatrixOutput.valueOf(settings.getString("matrixOutput", MatrixOutput.List.toString()));
+		metric = Metric.valueOf(settings.getString("metric", Metric.Tanimoto.toString()));
+		alpha = settings.getDouble("alpha", 1);
+		beta = settings.getDouble("beta", 1);
 	}
 
 	/**
@@ -163,5 +294,11 @@ public class SimilaritySettings implements CDKSettings {
 		settings.addString("returnType", returnType.toString());
 		settings.addString("aggregationMethod", m_aggregation.toString());
 		settings.addBoolean("identical", identicalInput);
+		settings.addInt("topK", topK);
+		settings.addDouble("threshold", threshold);
+		settings.addString("matrixOutput", matrixOutput.toString());
+		settings.addString("metric", metric.toString());
+		settings.addDouble("alpha", alpha);
+		settings.addDouble("beta", beta);
 	}
 }
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2016, Stephan Beisken (sbeisken@gmail.com). All rights reserved.
+ *
+ * This file is part of the KNIME CDK plugin.
+ *
+ * The KNIME CDK plugin is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The KNIME CDK plugin is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the plugin. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.openscience.cdk.knime.nodes.fingerprints.similarity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.knime.core.data.DataValue;
+import org.knime.core.data.vector.bytevector.ByteVectorValue;
+import org.knime.core.data.vector.doublevector.DoubleVectorValue;
+import org.openscience.cdk.exception.CDKException;
+
+/**
+ * Reference count or descriptor vectors packed row by row into compressed sparse rows. Only the non-zero entries are
+ * kept, the squared norm of every reference is computed once on creation, hence the similarity of a query only needs
+ * the dot product, a merge of the sorted indices of both vectors.
+ *
+ * @author Stephan Beisken, European Bioinformatics Institute
+ */
+final class VectorMatrix implements ReferenceMatrix {
+
+	// row i spans [rowStart[i], rowStart[i + 1])
+	private final int[] rowStart;
+	private final long[] indices;
+	private final double[] values;
+	private final double[] norms;
+	// length of each vector, -1 for missing vectors
+	private final long[] lengths;
+
+	/**
+	 * Creates a new matrix.
+	 *
+	 * @param vectors the count or descriptor vectors in their given order, null for missing vectors
+	 */
+	VectorMatrix(final List<DataValue> vectors) {
+
+		List<Vector> packed = new ArrayList<Vector>(vectors.size());
+		int nonZeros = 0;
+		for (DataValue vector : vectors) {
+			Vector v = (vector == null) ? null : pack(vector);
+			packed.add(v);
+			if (v != null) {
+				nonZeros += v.indices.length;
+			}
+		}
+
+		rowStart = new int[vectors.size() + 1];
+		indices = new long[nonZeros];
+		values = new double[nonZeros];
+		norms = new double[vectors.size()];
+		lengths = new long[vectors.size()];
+
+		for (int i = 0; i < packed.size(); i++) {
+			Vector v = packed.get(i);
+			if (v == null) {
+				rowStart[i + 1] = rowStart[i];
+				lengths[i] = -1;
+				continue;
+			}
+			System.arraycopy(v.indices, 0, indices, rowStart[i], v.indices.length);
+			System.arraycopy(v.values, 0, values, rowStart[i], v.values.length);
+			rowStart[i + 1] = rowStart[i] + v.indices.length;
+			norms[i] = v.norm;
+			lengths[i] = v.length;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int size() {
+		return lengths.length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isMissing(final int index) {
+		return lengths[index] < 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public float[] similarities(final DataValue query, final SimilarityKernel kernel) throws CDKException {
+
+		Vector q = pack(query);
+		float[] similarities = new float[size()];
+		for (int i = 0; i < similarities.length; i++) {
+			if (isMissing(i)) {
+				similarities[i] = Float.NaN;
+				continue;
+			}
+			if (lengths[i] != q.length) {
+				throw new CDKException("Vectors must have the same length");
+			}
+
+			double dot = 0;
+			int j = 0;
+			int k = rowStart[i];
+			int end = rowStart[i + 1];
+			while (j < q.indices.length && k < end) {
+				if (q.indices[j] < indices[k]) {
+					j++;
+				} else if (q.indices[j] > indices[k]) {
+					k++;
+				} else {
+					dot += q.values[j++] * values[k++];
+				}
+			}
+			similarities[i] = kernel.similarity(dot, q.norm, norms[i], q.length);
+		}
+		return similarities;
+	}
+
+	/**
+	 * Returns the non-zero entries of a byte or double vector in order of increasing index.
+	 */
+	private static Vector pack(final DataValue value) {
+
+		long[] indices;
+		double[] values;
+		int size = 0;
+		long length;
+		if (value instanceof ByteVectorValue) {
+			ByteVectorValue vector = (ByteVectorValue) value;
+			length = vector.length();
+			indices = new long[(int) vector.cardinality()];
+			values = new double[indices.length];
+			for (long i = vector.nextCountIndex(0); i >= 0; i = vector.nextCountIndex(i + 1)) {
+				indices[size] = i;
+				values[size++] = vector.get(i);
+			}
+		} else if (value instanceof DoubleVectorValue) {
+			DoubleVectorValue vector = (DoubleVectorValue) value;
+			length = vector.getLength();
+			indices = new long[(int) length];
+			values = new double[indices.length];
+			for (int i = 0; i < length; i++) {
+				double v = vector.getValue(i);
+				if (v != 0) {
+					indices[size] = i;
+					values[size++] = v;
+				}
+			}
+		} else {
+			throw new IllegalArgumentException("No byte or double vector: " + value.getClass().getName());
+		}
+
+		Vector vector = new Vector();
+		vector.length = length;
+		// dense double vectors are sized by their length, trim to the non-zero entries
+		vector.indices = (size == indices.length) ? indices : Arrays.copyOf(indices, size);
+		vector.values = (size == values.length) ? values : Arrays.copyOf(values, size);
+		for (int i = 0; i < size; i++) {
+			vector.norm += vector.values[i] * vector.values[i];
+		}
+		return vector;
+	}
+
+	private static final class Vector {
+
+		private long length;
+		private long[] indices;
+		private double[] values;
+		private double norm;
+	}
+}
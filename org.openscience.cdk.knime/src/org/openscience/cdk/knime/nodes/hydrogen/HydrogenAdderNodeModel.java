@@ -17,18 +17,19 @@
  */
 package org.openscience.cdk.knime.nodes.hydrogen;
 
-import java.util.concurrent.ExecutionException;
-
 import org.knime.core.data.DataColumnSpec;
 import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTableSpec;
 import org.knime.core.node.BufferedDataContainer;
 import org.knime.core.node.BufferedDataTable;
-import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.streamable.RowOutput;
+import org.knime.core.util.MultiThreadWorker;
 import org.openscience.cdk.knime.core.CDKAdapterNodeModel;
+import org.openscience.cdk.knime.core.ConvertedTable;
 import org.openscience.cdk.knime.type.CDKAdapterCell;
 
 /**
@@ -63,33 +64,22 @@ public class HydrogenAdderNodeModel extends CDKAdapterNodeModel {
 	 * {@inheritDoc}
 	 */
 	@Override
-	protected BufferedDataTable[] process(BufferedDataTable[] convertedTables, ExecutionContext exec) throws Exception {
+	protected BufferedDataTable[] process(ConvertedTable[] convertedTables, ExecutionContext exec) throws Exception {
 
 		BufferedDataContainer outputTable = exec.createDataContainer(appendSpec(convertedTables[0].getDataTableSpec()));
 
-		HydrogenAdderWorker worker = new HydrogenAdderWorker(maxQueueSize, maxParallelWorkers, columnIndex, exec,
-				outputTable, settings(HydrogenAdderSettings.class));
+		return run(convertedTables, exec, outputTable);
+	}
 
-		try {
-			worker.run(convertedTables[0]);
-		} catch (InterruptedException e) {
-			CanceledExecutionException cee = new CanceledExecutionException(e.getMessage());
-			cee.initCause(e);
-			throw cee;
-		} catch (ExecutionException e) {
-			Throwable cause = e.getCause();
-			if (cause == null) {
-				cause = e;
-			}
-			if (cause instanceof RuntimeException) {
-				throw (RuntimeException) cause;
-			}
-			throw new RuntimeException(cause);
-		} finally {
-			outputTable.close();
-		}
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected MultiThreadWorker<DataRow, ?> createWorker(ConvertedTable[] convertedTables, RowOutput[] outputs,
+			ExecutionContext exec) throws Exception {
 
-		return new BufferedDataTable[] { outputTable.getTable() };
+		return new HydrogenAdderWorker(maxQueueSize, maxParallelWorkers, columnIndex, exec, outputs[0],
+				settings(HydrogenAdderSettings.class));
 	}
 
 	private DataTableSpec appendSpec(DataTableSpec spec) {
@@ -25,12 +25,12 @@ import org.knime.core.data.DataCell;
 import org.knime.core.data.DataRow;
 import org.knime.core.data.DataType;
 import org.knime.core.data.append.AppendedColumnRow;
-import org.knime.core.node.BufferedDataContainer;
-import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.streamable.RowOutput;
 import org.knime.core.util.MultiThreadWorker;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.knime.commons.CDKNodeUtils;
+import org.openscience.cdk.knime.core.WorkerProgress;
 import org.openscience.cdk.knime.type.CDKCell3;
 import org.openscience.cdk.knime.type.CDKValue;
 import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
@@ -45,15 +45,15 @@ public class HydrogenAdderWorker extends MultiThreadWorker<DataRow, DataRow> {
 
 	private final ExecutionContext exec;
 	private final int columnIndex;
-	private final BufferedDataContainer bdc;
+	private final RowOutput output;
 	private final HydrogenAdderSettings settings;
 
 	public HydrogenAdderWorker(final int maxQueueSize, final int maxActiveInstanceSize, final int columnIndex,
-			final ExecutionContext exec, final BufferedDataContainer bdc, final HydrogenAdderSettings settings) {
+			final ExecutionContext exec, final RowOutput output, final HydrogenAdderSettings settings) {
 
 		super(maxQueueSize, maxActiveInstanceSize);
 		this.exec = exec;
-		this.bdc = bdc;
+		this.output = output;
 		this.settings = settings;
 		this.columnIndex = columnIndex;
 	}
@@ -98,13 +98,9 @@ public class HydrogenAdderWorker extends MultiThreadWorker<DataRow, DataRow> {
 
 		DataRow append = task.get();
 		if (!append.getCell(columnIndex).isMissing()) {
-			bdc.addRowToTable(append);
+			output.push(append);
 		}
 
-		try {
-			exec.checkCanceled();
-		} catch (CanceledExecutionException cee) {
-			throw new CancellationException();
-		}
+		WorkerProgress.checkCanceled(exec);
 	}
 }
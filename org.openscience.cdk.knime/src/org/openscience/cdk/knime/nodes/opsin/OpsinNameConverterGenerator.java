@@ -32,7 +32,7 @@ import org.knime.core.data.DataRow;
 import org.knime.core.data.DataType;
 import org.knime.core.data.RowKey;
 import org.knime.core.data.StringValue;
-import org.knime.core.data.container.CellFactory;
+import org.knime.core.data.container.AbstractCellFactory;
 import org.knime.core.data.def.StringCell;
 import org.knime.core.data.image.png.PNGImageContent;
 import org.knime.core.data.xml.XMLCellFactory;
@@ -52,7 +52,7 @@ import org.openscience.cdk.tools.manipulator.ChemFileManipulator;
  * 
  * @author Stephan Beisken, European Bioinformatics Institute
  */
-public class OpsinNameConverterGenerator implements CellFactory {
+public class OpsinNameConverterGenerator extends AbstractCellFactory {
 
 	private final DataColumnSpec[] dataColumnSpec;
 	private final List<String> urlSuffix;
@@ -67,6 +67,7 @@ public class OpsinNameConverterGenerator implements CellFactory {
 	 */
 	public OpsinNameConverterGenerator(int iupacColIndex, List<String> urlSuffix, DataColumnSpec[] dataColumnSpec) {
 
+		super(dataColumnSpec);
 		this.dataColumnSpec = dataColumnSpec;
 		this.iupacColIndex = iupacColIndex;
 		this.urlSuffix = urlSuffix;
@@ -23,6 +23,8 @@ import javax.swing.BorderFactory;
 import javax.swing.JCheckBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
 import javax.swing.border.Border;
 
 import org.knime.core.data.DataTableSpec;
@@ -48,6 +50,8 @@ public class OpsinNameConverterNodeDialog extends NodeDialogPane {
 	private final JCheckBox inchiBox = new JCheckBox();
 	private final JCheckBox pngBox = new JCheckBox();
 	private final JCheckBox cmlBox = new JCheckBox();
+	private final JSpinner maxRequests = new JSpinner(new SpinnerNumberModel(
+			OpsinNameConverterSettings.DEFAULT_MAX_REQUESTS, 1, OpsinNameConverterSettings.MAX_REQUESTS, 1));
 
 	private OpsinNameConverterSettings settings = new OpsinNameConverterSettings();
 
@@ -101,6 +105,12 @@ public class OpsinNameConverterNodeDialog extends NodeDialogPane {
 		c.gridy++;
 		c.gridx = 0;
 
+		panel.add(new JLabel("Max. parallel requests  "), c);
+		c.gridx++;
+		panel.add(maxRequests, c);
+		c.gridy++;
+		c.gridx = 0;
+
 		this.addTab("Settings", panel);
 	}
 
@@ -123,6 +133,7 @@ public class OpsinNameConverterNodeDialog extends NodeDialogPane {
 		cdkBox.setSelected(this.settings.isAddCdk());
 		inchiBox.setSelected(this.settings.isAddInChI());
 		pngBox.setSelected(this.settings.isAddPng());
+		maxRequests.setValue(this.settings.getMaxRequests());
 	}
 
 	/**
@@ -137,6 +148,7 @@ public class OpsinNameConverterNodeDialog extends NodeDialogPane {
 		this.settings.setAddCml(cmlBox.isSelected());
 		this.settings.setAddInChI(inchiBox.isSelected());
 		this.settings.setAddPng(pngBox.isSelected());
+		this.settings.setMaxRequests((Integer) maxRequests.getValue());
 
 		this.settings.saveSettings(settings);
 	}
@@ -38,6 +38,9 @@ import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeModel;
 import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
+import org.openscience.cdk.knime.commons.CDKScheduler;
+import org.openscience.cdk.knime.commons.CDKScheduler.Lease;
+import org.openscience.cdk.knime.commons.CDKScheduler.Workload;
 import org.openscience.cdk.knime.type.CDKCell3;
 
 /**
@@ -65,13 +68,23 @@ public class OpsinNameConverterNodeModel extends NodeModel {
 			throws Exception {
 
 		DataTableSpec inSpec = inData[0].getDataTableSpec();
-		ColumnRearranger rearranger = createColumnRearranger(inSpec);
-		BufferedDataTable outTable = exec.createColumnRearrangeTable(inData[0], rearranger, exec);
+		// the web service calls are I/O bound, but the public service must not be flooded with requests
+		Lease lease = CDKScheduler.getInstance().acquire(getClass().getName(), Workload.IO,
+				settings.getMaxRequests());
+		BufferedDataTable outTable;
+		long rows = 0;
+		try {
+			ColumnRearranger rearranger = createColumnRearranger(inSpec, lease);
+			outTable = exec.createColumnRearrangeTable(inData[0], rearranger, exec);
+			rows = outTable.size();
+		} finally {
+			lease.release(rows);
+		}
 
 		return new BufferedDataTable[] { outTable };
 	}
 
-	private ColumnRearranger createColumnRearranger(DataTableSpec spec) throws InvalidSettingsException {
+	private ColumnRearranger createColumnRearranger(DataTableSpec spec, Lease lease) throws InvalidSettingsException {
 
 		// get user configuration and collect corresponding webservice suffices
 		List<DataColumnSpec> dataColumnSpecs = new ArrayList<DataColumnSpec>();
@@ -111,6 +124,9 @@ public class OpsinNameConverterNodeModel extends NodeModel {
 		// create the OPSIN calling data cell factory
 		OpsinNameConverterGenerator generator = new OpsinNameConverterGenerator(colIndex, urlSuffix,
 				dataColumnSpecs.toArray(new DataColumnSpec[] {}));
+		if (lease != null) {
+			generator.setParallelProcessing(true, lease.parallelism(), lease.queueSize());
+		}
 		ColumnRearranger arrange = new ColumnRearranger(spec);
 		arrange.append(generator);
 
@@ -137,7 +153,7 @@ public class OpsinNameConverterNodeModel extends NodeModel {
 			throw new InvalidSettingsException("String column '" + settings.getNameColumn() + "' does not exist");
 		}
 
-		DataTableSpec outSpec = createColumnRearranger(inSpecs[0]).createSpec();
+		DataTableSpec outSpec = createColumnRearranger(inSpecs[0], null).createSpec();
 		return new DataTableSpec[] { outSpec };
 	}
 
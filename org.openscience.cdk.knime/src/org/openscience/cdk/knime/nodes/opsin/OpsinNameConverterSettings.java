@@ -28,12 +28,18 @@ import org.knime.core.node.NodeSettingsWO;
  */
 public class OpsinNameConverterSettings {
 
+	/** Default max. number of concurrent requests to the OPSIN web service. */
+	public static final int DEFAULT_MAX_REQUESTS = 2;
+	/** Upper limit of concurrent requests, the service is a shared public resource. */
+	public static final int MAX_REQUESTS = 4;
+
 	private String nameColumn;
 	private boolean addCdk;
 	private boolean addInChI;
 	private boolean addCml;
 	private boolean addSmiles;
 	private boolean addPng;
+	private int maxRequests = DEFAULT_MAX_REQUESTS;
 
 	/**
 	 * Checks if a CDK molecule is to be generated.
@@ -149,6 +155,26 @@ public class OpsinNameConverterSettings {
 		this.addInChI = addInChI;
 	}
 
+	/**
+	 * Gets the max. number of concurrent requests to the OPSIN web service.
+	 * 
+	 * @return the number of requests
+	 */
+	public final int getMaxRequests() {
+
+		return maxRequests;
+	}
+
+	/**
+	 * Sets the max. number of concurrent requests to the OPSIN web service, limited to {@link #MAX_REQUESTS}.
+	 * 
+	 * @param maxRequests the number of requests
+	 */
+	public final void setMaxRequests(int maxRequests) {
+
+		this.maxRequests = Math.max(1, Math.min(MAX_REQUESTS, maxRequests));
+	}
+
 	/**
 	 * Saves the settings into the given node settings object.
 	 * 
@@ -161,6 +187,7 @@ public class OpsinNameConverterSettings {
 		settings.addBoolean("addSmiles", addSmiles);
 		settings.addBoolean("addPng", addPng);
 		settings.addBoolean("addCml", addCml);
+		settings.addInt("maxRequests", maxRequests);
 	}
 
 	/**
@@ -177,5 +204,7 @@ public class OpsinNameConverterSettings {
 		addSmiles = settings.getBoolean("addSmiles");
 		addPng = settings.getBoolean("addPng");
 		addCml = settings.getBoolean("addCml");
+		// added later, older workflows fall back to the default
+		setMaxRequests(settings.getInt("maxRequests", DEFAULT_MAX_REQUESTS));
 	}
 }
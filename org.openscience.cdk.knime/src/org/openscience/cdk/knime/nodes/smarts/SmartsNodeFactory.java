@@ -43,6 +43,10 @@ public class SmartsNodeFactory extends NodeFactory<SmartsNodeModel> {
 		dialog.addColumnSelection("SMARTS", 1, SmartsValue.class);
 		dialog.addCustomOption("Count Unique", new JCheckBox("", false));
 		dialog.addCustomOption("Record match positions", new JCheckBox("", false));
+		dialog.addCustomOption("Record matching SMARTS", new JCheckBox("", false));
+		dialog.addTextOption("Max. mappings per SMARTS", 5);
+		dialog.addTextOption("Max. mappings per molecule", 5);
+		dialog.addTextOption("Time budget per molecule (ms)", 5);
 		return dialog.build();
 	}
 
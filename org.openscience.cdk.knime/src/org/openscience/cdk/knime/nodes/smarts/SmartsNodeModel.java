@@ -18,7 +18,6 @@ package org.openscience.cdk.knime.nodes.smarts;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
 
 import org.knime.chem.types.SmartsValue;
 import org.knime.core.data.DataColumnSpec;
@@ -26,16 +25,20 @@ import org.knime.core.data.DataColumnSpecCreator;
 import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTableSpec;
 import org.knime.core.data.collection.ListCell;
+import org.knime.core.data.def.BooleanCell;
 import org.knime.core.data.def.IntCell;
+import org.knime.core.data.vector.bitvector.DenseBitVectorCell;
 import org.knime.core.node.BufferedDataContainer;
 import org.knime.core.node.BufferedDataTable;
-import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.streamable.RowOutput;
+import org.knime.core.util.MultiThreadWorker;
 import org.openscience.cdk.knime.commons.CDKNodeUtils;
 import org.openscience.cdk.knime.core.CDKAdapterNodeModel;
+import org.openscience.cdk.knime.core.ConvertedTable;
 import org.openscience.cdk.knime.type.CDKCell3;
 
 /**
@@ -51,6 +54,10 @@ public class SmartsNodeModel extends CDKAdapterNodeModel
 	private String colMolecule = "";
 	private boolean count = false;
 	private boolean matchedPositions = false;
+	private boolean matchedSmarts = false;
+	private int maxPerPattern = 0;
+	private int maxPerMolecule = 0;
+	private long timeBudget = 0;
 
 	private int smartsIndex = 0;
 
@@ -66,54 +73,38 @@ public class SmartsNodeModel extends CDKAdapterNodeModel
 	 * {@inheritDoc}
 	 */
 	@Override
-	protected BufferedDataTable[] process(BufferedDataTable[] convertedTables, ExecutionContext exec) throws Exception
+	protected BufferedDataTable[] process(ConvertedTable[] convertedTables, ExecutionContext exec) throws Exception
 	{
 
-		List<String> smarts = new ArrayList<String>();
-		for (DataRow row : convertedTables[1])
-		{
-			if (!row.getCell(smartsIndex).isMissing())
-			{
-				String smart = ((SmartsValue) row.getCell(smartsIndex)).getSmartsValue();
-				smarts.add(smart);
-			}
-		}
-
+		boolean append = count || matchedPositions || matchedSmarts;
 		BufferedDataContainer outputTable[] = new BufferedDataContainer[] {
-				exec.createDataContainer(count || matchedPositions ? appendSpecCount(convertedTables[0].getDataTableSpec())
+				exec.createDataContainer(append ? appendSpecCount(convertedTables[0].getDataTableSpec())
 						: appendSpec(convertedTables[0].getDataTableSpec())),
 				exec.createDataContainer(appendSpec(convertedTables[0].getDataTableSpec())) };
 
-		SmartsWorker worker = new SmartsWorker(maxQueueSize, maxParallelWorkers, columnIndex, convertedTables[0].size(),
-				smarts, count, matchedPositions, exec, outputTable);
+		return run(convertedTables, exec, outputTable);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected MultiThreadWorker<DataRow, ?> createWorker(ConvertedTable[] convertedTables, RowOutput[] outputs,
+			ExecutionContext exec) throws Exception
+	{
 
-		try
-		{
-			worker.run(convertedTables[0]);
-		} catch (InterruptedException e)
-		{
-			CanceledExecutionException cee = new CanceledExecutionException(e.getMessage());
-			cee.initCause(e);
-			throw cee;
-		} catch (ExecutionException e)
+		List<String> smarts = new ArrayList<String>();
+		for (DataRow row : convertedTables[1])
 		{
-			Throwable cause = e.getCause();
-			if (cause == null)
-			{
-				cause = e;
-			}
-			if (cause instanceof RuntimeException)
+			if (!row.getCell(smartsIndex).isMissing())
 			{
-				throw (RuntimeException) cause;
+				String smart = ((SmartsValue) row.getCell(smartsIndex)).getSmartsValue();
+				smarts.add(smart);
 			}
-			throw new RuntimeException(cause);
-		} finally
-		{
-			outputTable[0].close();
-			outputTable[1].close();
 		}
 
-		return new BufferedDataTable[] { outputTable[0].getTable(), outputTable[1].getTable() };
+		return new SmartsWorker(maxQueueSize, maxParallelWorkers, columnIndex, convertedTables[0].size(), smarts,
+				count, matchedPositions, matchedSmarts, maxPerPattern, maxPerMolecule, timeBudget, exec, outputs);
 	}
 
 	/**
@@ -132,7 +123,7 @@ public class SmartsNodeModel extends CDKAdapterNodeModel
 		DataTableSpec outSpec = convertTables(new DataTableSpec[] { inSpecs[0] })[0];
 		DataTableSpec outSpecSecond = appendSpec(outSpec);
 		DataTableSpec outSpecFirst = outSpecSecond;
-		if (count || matchedPositions)
+		if (count || matchedPositions || matchedSmarts)
 		{
 			outSpecFirst = appendSpecCount(outSpec);
 		}
@@ -163,7 +154,10 @@ public class SmartsNodeModel extends CDKAdapterNodeModel
 	private DataTableSpec appendSpecCount(DataTableSpec spec)
 	{
 
-		int numAppend = matchedPositions ? 3 : 1;
+		boolean limited = (count || matchedPositions)
+				&& SmartsWorker.limited(maxPerPattern, maxPerMolecule, timeBudget);
+		int numAppend = (count || matchedPositions ? 1 : 0) + (matchedPositions ? 2 : 0) + (matchedSmarts ? 1 : 0)
+				+ (limited ? 1 : 0);
 		
 		DataColumnSpec[] dcs = new DataColumnSpec[spec.getNumColumns() + numAppend];
 		int i = 0;
@@ -179,12 +173,25 @@ public class SmartsNodeModel extends CDKAdapterNodeModel
 			}
 			i++;
 		}
-		dcs[i] = new DataColumnSpecCreator("Unique Count", ListCell.getCollectionType(IntCell.TYPE)).createSpec();
+		if (count || matchedPositions)
+		{
+			dcs[i++] = new DataColumnSpecCreator("Unique Count", ListCell.getCollectionType(IntCell.TYPE)).createSpec();
+		}
 		
 		if(matchedPositions)
 		{
-			dcs[i + 1] = new DataColumnSpecCreator("Atoms", ListCell.getCollectionType(IntCell.TYPE)).createSpec();
-			dcs[i + 2] = new DataColumnSpecCreator("Bonds", ListCell.getCollectionType(IntCell.TYPE)).createSpec();
+			dcs[i++] = new DataColumnSpecCreator("Atoms", ListCell.getCollectionType(IntCell.TYPE)).createSpec();
+			dcs[i++] = new DataColumnSpecCreator("Bonds", ListCell.getCollectionType(IntCell.TYPE)).createSpec();
+		}
+
+		if (matchedSmarts)
+		{
+			dcs[i++] = new DataColumnSpecCreator("Matching SMARTS", DenseBitVectorCell.TYPE).createSpec();
+		}
+
+		if (limited)
+		{
+			dcs[i++] = new DataColumnSpecCreator("Limit reached", BooleanCell.TYPE).createSpec();
 		}
 			
 		
@@ -202,6 +209,11 @@ public class SmartsNodeModel extends CDKAdapterNodeModel
 		colSmarts = settings.getString("SMARTS");
 		count = settings.getBoolean("Count Unique");
 		matchedPositions = settings.getBoolean("Record match positions");
+		// added later, default false for older nodes
+		matchedSmarts = settings.getBoolean("Record matching SMARTS", false);
+		maxPerPattern = Integer.parseInt(settings.getString("Max. mappings per SMARTS", "0").trim());
+		maxPerMolecule = Integer.parseInt(settings.getString("Max. mappings per molecule", "0").trim());
+		timeBudget = Long.parseLong(settings.getString("Time budget per molecule (ms)", "0").trim());
 	}
 
 	/**
@@ -215,6 +227,10 @@ public class SmartsNodeModel extends CDKAdapterNodeModel
 		settings.addString("SMARTS", colSmarts);
 		settings.addBoolean("Count Unique", count);
 		settings.addBoolean("Record match positions", matchedPositions);
+		settings.addBoolean("Record matching SMARTS", matchedSmarts);
+		settings.addString("Max. mappings per SMARTS", Integer.toString(maxPerPattern));
+		settings.addString("Max. mappings per molecule", Integer.toString(maxPerMolecule));
+		settings.addString("Time budget per molecule (ms)", Long.toString(timeBudget));
 	}
 
 	/**
@@ -235,5 +251,15 @@ public class SmartsNodeModel extends CDKAdapterNodeModel
 		{
 			throw new InvalidSettingsException("No column choosen");
 		}
+
+		try
+		{
+			Integer.parseInt(settings.getString("Max. mappings per SMARTS", "0").trim());
+			Integer.parseInt(settings.getString("Max. mappings per molecule", "0").trim());
+			Long.parseLong(settings.getString("Time budget per molecule (ms)", "0").trim());
+		} catch (NumberFormatException exception)
+		{
+			throw new InvalidSettingsException("The mapping limits and the time budget must be whole numbers.");
+		}
 	}
 }
@@ -17,11 +17,8 @@
 package org.openscience.cdk.knime.nodes.smarts;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 
@@ -32,22 +29,25 @@ import org.knime.core.data.DataRow;
 import org.knime.core.data.DataType;
 import org.knime.core.data.append.AppendedColumnRow;
 import org.knime.core.data.collection.CollectionCellFactory;
+import org.knime.core.data.def.BooleanCell.BooleanCellFactory;
 import org.knime.core.data.def.IntCell;
 import org.knime.core.data.def.IntCell.IntCellFactory;
-import org.knime.core.node.BufferedDataContainer;
-import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.data.vector.bitvector.DenseBitVector;
+import org.knime.core.data.vector.bitvector.DenseBitVectorCellFactory;
 import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.NodeLogger;
+import org.knime.core.node.streamable.RowOutput;
 import org.knime.core.util.MultiThreadWorker;
-import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.interfaces.IBond;
-import org.openscience.cdk.isomorphism.Mappings;
+import org.openscience.cdk.knime.core.RoutedRow;
+import org.openscience.cdk.knime.core.WorkerProgress;
 import org.openscience.cdk.knime.type.CDKCell3;
 import org.openscience.cdk.knime.type.CDKValue;
 import org.openscience.cdk.smiles.smarts.SmartSMARTSQueryTool;
+import org.openscience.cdk.smiles.smarts.SmartSMARTSQueryTool.Match;
 
-public class SmartsWorker extends MultiThreadWorker<DataRow, DataRow>
+public class SmartsWorker extends MultiThreadWorker<DataRow, RoutedRow>
 {
 
 	private final static NodeLogger LOGGER = NodeLogger.getLogger(SmartsWorker.class);
@@ -55,35 +55,45 @@ public class SmartsWorker extends MultiThreadWorker<DataRow, DataRow>
 	private final ExecutionContext exec;
 	private final int columnIndex;
 	private final double max;
-	private final BufferedDataContainer[] bdc;
+	private final RowOutput[] outputs;
 
 	private final boolean count;
 	private final boolean matchedPositions;
+	private final boolean matchedSmarts;
+
+	// enumeration limits, no limit if smaller than one
+	private final int maxPerPattern;
+	private final int maxPerMolecule;
+	private final long timeBudget;
 
 	private final SmartSMARTSQueryTool smarts;
-	private final Set<Long> matchedRows;
 
 	public SmartsWorker(final int maxQueueSize, final int maxActiveInstanceSize, final int columnIndex, final long max,
-			final List<String> smarts, final boolean count, final boolean matchedPositions, final ExecutionContext exec,
-			final BufferedDataContainer[] bdc)
+			final List<String> smarts, final boolean count, final boolean matchedPositions,
+			final boolean matchedSmarts, final int maxPerPattern, final int maxPerMolecule, final long timeBudget,
+			final ExecutionContext exec, final RowOutput[] outputs)
 	{
 
 		super(maxQueueSize, maxActiveInstanceSize);
 		this.exec = exec;
-		this.bdc = bdc;
+		this.outputs = outputs;
 		this.count = count;
 		this.max = max;
 		this.smarts = new SmartSMARTSQueryTool(smarts);
 		this.columnIndex = columnIndex;
-		this.matchedRows = Collections.synchronizedSet(new HashSet<Long>());
 		this.matchedPositions = matchedPositions;
+		this.matchedSmarts = matchedSmarts;
+		this.maxPerPattern = maxPerPattern;
+		this.maxPerMolecule = maxPerMolecule;
+		this.timeBudget = timeBudget;
 	}
 
 	@Override
-	protected DataRow compute(DataRow row, long index) throws Exception
+	protected RoutedRow compute(DataRow row, long index) throws Exception
 	{
 
 		DataCell outCell;
+		boolean matched = false;
 		List<IntCell> uniqueCounts = new ArrayList<>();
 		DataRow countRow = row;
 		if (row.getCell(columnIndex).isMissing()
@@ -97,47 +107,82 @@ public class SmartsWorker extends MultiThreadWorker<DataRow, DataRow>
 
 			try
 			{
-				if (smarts.matches(m))
+				if (!count && !matchedPositions && !matchedSmarts)
+				{
+					matched = smarts.matches(m);
+				} else if (!count && !matchedPositions)
+				{
+					BitSet hits = smarts.hits(m);
+					if (!hits.isEmpty())
+					{
+						countRow = new AppendedColumnRow(row, hitCell(hits));
+						matched = true;
+					}
+				} else
 				{
-					matchedRows.add(index);
-					if (count || matchedPositions)
+					// a single enumeration per SMARTS serves the match, the counts and the positions
+					List<Match> matches = smarts.match(m, maxPerPattern, maxPerMolecule, timeBudget);
+					BitSet hits = new BitSet(matches.size());
+					boolean truncated = false;
+					for (int i = 0; i < matches.size(); i++)
+					{
+						if (matches.get(i).matched())
+						{
+							hits.set(i);
+						}
+						truncated |= matches.get(i).truncated();
+						uniqueCounts.add(new IntCell(matches.get(i).countUnique()));
+					}
+					// the row is only routed as match once all appended cells have been built
+					if (!hits.isEmpty())
 					{
-						uniqueCounts = smarts.countUnique(m);
+						List<DataCell> cells = new ArrayList<DataCell>();
+						cells.add(CollectionCellFactory.createListCell(uniqueCounts));
 
 						if (matchedPositions)
 						{
-							List<Mappings> mappings = smarts.getMappings(m);
-
 							List<DataCell> atoms = new ArrayList<DataCell>();
 							List<DataCell> bonds = new ArrayList<DataCell>();
 
-							for (Mappings map : mappings)
+							for (Match match : matches)
 							{
-								for (Map<IAtom, IAtom> current : map.toAtomMap())
+								for (int[] mapping : match.mappings())
 								{
-									for (IAtom atom : current.values())
+									for (int atom : mapping)
 									{
-										atoms.add((IntCell) IntCellFactory.create(Integer.parseInt(atom.getID())));
+										atoms.add((IntCell) IntCellFactory.create(atom));
 									}
 								}
 
-								for (Map<IBond, IBond> current : map.toBondMap())
+								IAtomContainer query = match.query();
+								for (int[] mapping : match.mappings())
 								{
-									for (IBond bond : current.values())
-									{								
-										bonds.add((IntCell) IntCellFactory.create(m.getBondNumber(bond)));
+									for (IBond bond : query.bonds())
+									{
+										int begin = mapping[query.indexOf(bond.getBegin())];
+										int end = mapping[query.indexOf(bond.getEnd())];
+										IBond target = m.getBond(m.getAtom(begin), m.getAtom(end));
+										bonds.add((IntCell) IntCellFactory.create(m.getBondNumber(target)));
 									}
 								}
-
 							}
 
-							countRow = new AppendedColumnRow(row, CollectionCellFactory.createListCell(uniqueCounts),
-									CollectionCellFactory.createListCell(atoms),
-									CollectionCellFactory.createListCell(bonds));
-						} else
+							cells.add(CollectionCellFactory.createListCell(atoms));
+							cells.add(CollectionCellFactory.createListCell(bonds));
+						}
+
+						if (matchedSmarts)
 						{
-							countRow = new AppendedColumnRow(row, CollectionCellFactory.createListCell(uniqueCounts));
+							cells.add(hitCell(hits));
 						}
+
+						if (limited(maxPerPattern, maxPerMolecule, timeBudget))
+						{
+							cells.add(BooleanCellFactory.create(truncated));
+						}
+
+						countRow = new AppendedColumnRow(row, cells.toArray(new DataCell[cells.size()]));
+						matched = true;
 					}
 				}
 			} catch (ThreadDeath d)
@@ -152,32 +197,39 @@ public class SmartsWorker extends MultiThreadWorker<DataRow, DataRow>
 			outCell = CDKCell3.createCDKCell(m);
 		}
 
-		return new ReplacedColumnsDataRow(countRow, outCell, columnIndex);
+		return new RoutedRow(new ReplacedColumnsDataRow(countRow, outCell, columnIndex), matched ? 0 : 1);
 	}
 
-	@Override
-	protected void processFinished(ComputationTask task)
-			throws ExecutionException, CancellationException, InterruptedException
+	/**
+	 * Returns whether any enumeration limit is set, the limit flag column is only appended then.
+	 */
+	static boolean limited(int maxPerPattern, int maxPerMolecule, long timeBudget)
 	{
+		return maxPerPattern > 0 || maxPerMolecule > 0 || timeBudget > 0;
+	}
 
-		DataRow append = task.get();
-		if (matchedRows.contains(task.getIndex()))
-		{
-			bdc[0].addRowToTable(append);
-		} else
+	/**
+	 * Creates the bit vector of the matching SMARTS, bit i is set if the i-th SMARTS matches.
+	 */
+	private DataCell hitCell(BitSet hits)
+	{
+
+		DenseBitVector vector = new DenseBitVector(smarts.size());
+		for (int i = hits.nextSetBit(0); i >= 0; i = hits.nextSetBit(i + 1))
 		{
-			bdc[1].addRowToTable(append);
+			vector.set(i);
 		}
+		return new DenseBitVectorCellFactory(vector).createDataCell();
+	}
 
-		exec.setProgress(this.getFinishedCount() / max, this.getFinishedCount() + " (active/submitted: "
-				+ this.getActiveCount() + "/" + (this.getSubmittedCount() - this.getFinishedCount()) + ")");
+	@Override
+	protected void processFinished(ComputationTask task)
+			throws ExecutionException, CancellationException, InterruptedException
+	{
 
-		try
-		{
-			exec.checkCanceled();
-		} catch (CanceledExecutionException cee)
-		{
-			throw new CancellationException();
-		}
+		RoutedRow append = task.get();
+		outputs[append.port()].push(append.row());
+
+		WorkerProgress.update(this, exec, max);
 	}
 }
@@ -0,0 +1,357 @@
+/*
+ * Copyright (c) 2016, Stephan Beisken (sbeisken@gmail.com). All rights reserved.
+ *
+ * This file is part of the KNIME CDK plugin.
+ *
+ * The KNIME CDK plugin is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The KNIME CDK plugin is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the plugin. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.openscience.cdk.knime.nodes.sssearch;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.knime.chem.types.SmilesValue;
+import org.knime.core.data.AdapterValue;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataCellTypeConverter;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
+import org.knime.core.data.StringValue;
+import org.knime.core.data.collection.ListCell;
+import org.knime.core.data.def.IntCell;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.port.PortType;
+import org.knime.core.node.streamable.RowOutput;
+import org.knime.core.util.MultiThreadWorker;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.knime.commons.CDKNodeUtils;
+import org.openscience.cdk.knime.core.CDKAdapterNodeModel;
+import org.openscience.cdk.knime.core.ConvertedTable;
+import org.openscience.cdk.knime.type.CDKTypeConverter;
+import org.openscience.cdk.knime.type.CDKValue;
+
+/**
+ * This is the model implementation of the substructure search node. The target molecules are indexed in a
+ * {@link SubstructureIndex}, which is kept between executions as long as the targets do not change and which is saved
+ * with the node and, optionally, to an index file. Without a target table the index file is searched.
+ *
+ * @author Stephan Beisken, European Bioinformatics Institute
+ */
+public class SSSearchNodeModel extends CDKAdapterNodeModel {
+
+	private static final NodeLogger LOGGER = NodeLogger.getLogger(SSSearchNodeModel.class);
+
+	private static final String INTERNAL_INDEX = "targets.cdks";
+
+	protected enum Setting {
+		COLUMN_NAME("Query molecules"), TARGET_COLUMN("Target molecules"), INDEX_FILE("Index file"), MAX_HITS(
+				"Max. hits per query");
+
+		private String name;
+
+		Setting(String name) {
+			this.name = name;
+		}
+
+		public String label() {
+			return name;
+		}
+	};
+
+	private String columnName = null;
+	private String targetName = null;
+	private String indexFile = "";
+	private int maxHits = 0;
+
+	// the target store and the state of the index file it was read from or written to
+	private SubstructureIndex index;
+	private String indexPath;
+	private long indexModified;
+
+	/**
+	 * Constructor for the node model.
+	 */
+	protected SSSearchNodeModel() {
+		super(new PortType[] { BufferedDataTable.TYPE, BufferedDataTable.TYPE_OPTIONAL },
+				new PortType[] { BufferedDataTable.TYPE }, null);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected BufferedDataTable[] process(final ConvertedTable[] convertedTables, final ExecutionContext exec)
+			throws Exception {
+
+		BufferedDataContainer container = exec.createDataContainer(appendSpec(convertedTables[0]
+				.getDataTableSpec()));
+		return run(convertedTables, exec, container);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected MultiThreadWorker<DataRow, ?> createWorker(final ConvertedTable[] convertedTables,
+			final RowOutput[] outputs, final ExecutionContext exec) throws Exception {
+
+		if (convertedTables[1] == null) {
+			readIndex(exec);
+		} else {
+			buildIndex(convertedTables[1].getTable(), exec);
+		}
+
+		return new SSSearchWorker(maxQueueSize, maxParallelWorkers, columnIndex, convertedTables[0].size(), index,
+				maxHits, exec, outputs[0]);
+	}
+
+	/**
+	 * Reads the index file unless it has been read or written before and has not changed since.
+	 */
+	private void readIndex(final ExecutionContext exec) throws IOException {
+
+		File file = new File(indexFile);
+		if (index == null || !file.getAbsolutePath().equals(indexPath) || file.lastModified() != indexModified) {
+			exec.setMessage("Reading index");
+			closeIndex();
+			index = SubstructureIndex.read(file, false);
+			indexPath = file.getAbsolutePath();
+			indexModified = file.lastModified();
+		}
+	}
+
+	/**
+	 * Indexes the targets unless the current index holds the same targets, and writes the index file if chosen.
+	 */
+	private void buildIndex(final BufferedDataTable targets, final ExecutionContext exec) throws Exception {
+
+		DataTableSpec spec = targets.getDataTableSpec();
+		int targetIndex = spec.findColumnIndex(targetName);
+		String source = signature(targets, targetIndex, exec);
+
+		if (index == null || !source.equals(index.source())) {
+			DataType type = spec.getColumnSpec(targetIndex).getType();
+			DataCellTypeConverter converter = (type.isAdaptable(CDKValue.class) || type
+					.isCompatible(CDKValue.class)) ? null : CDKTypeConverter.createConverter(spec, targetIndex);
+
+			SubstructureIndex.Builder builder = new SubstructureIndex.Builder();
+			long count = 0;
+			for (DataRow row : targets) {
+				exec.checkCanceled();
+				exec.setProgress(++count / (double) targets.size(), "Indexing targets");
+				IAtomContainer molecule = molecule(row, targetIndex, converter);
+				if (molecule != null) {
+					builder.add(row.getKey().getString(), molecule);
+				}
+			}
+			closeIndex();
+			index = builder.build(source);
+			indexPath = null;
+		}
+
+		if (!indexFile.isEmpty()) {
+			File file = new File(indexFile);
+			if (!file.getAbsolutePath().equals(indexPath) || file.lastModified() != indexModified) {
+				exec.setMessage("Writing index");
+				index.write(file);
+				indexPath = file.getAbsolutePath();
+				indexModified = file.lastModified();
+			}
+		}
+	}
+
+	/**
+	 * Describes the targets by the column, the row count and a hash of the row keys and the stored strings of the
+	 * molecule cells. Neither molecules are parsed nor cell hashes computed.
+	 */
+	private String signature(final BufferedDataTable targets, final int targetIndex, final ExecutionMonitor exec)
+			throws CanceledExecutionException {
+
+		exec.setMessage("Checking targets");
+		long hash = 1;
+		for (DataRow row : targets) {
+			exec.checkCanceled();
+			hash = 31 * hash + row.getKey().getString().hashCode();
+			hash = 31 * hash + contentHash(row.getCell(targetIndex));
+		}
+		return targetName + ":" + targets.size() + ":" + Long.toHexString(hash);
+	}
+
+	private static int contentHash(final DataCell cell) {
+
+		if (cell.isMissing()) {
+			return 0;
+		} else if (cell instanceof SmilesValue) {
+			return ((SmilesValue) cell).getSmilesValue().hashCode();
+		} else if (cell instanceof StringValue) {
+			return ((StringValue) cell).getStringValue().hashCode();
+		}
+		return cell.hashCode();
+	}
+
+	private IAtomContainer molecule(final DataRow row, final int targetIndex, final DataCellTypeConverter converter) {
+
+		DataCell cell = row.getCell(targetIndex);
+		try {
+			if (!cell.isMissing() && converter != null) {
+				cell = converter.convert(cell);
+			}
+		} catch (Exception exception) {
+			LOGGER.warn("Auto conversion in row '" + row.getKey().getString() + "' failed - Skipping target.");
+			return null;
+		}
+
+		if (cell.isMissing()) {
+			return null;
+		} else if (cell instanceof CDKValue) {
+			return ((CDKValue) cell).getAtomContainer();
+		} else if (((AdapterValue) cell).getAdapterError(CDKValue.class) != null) {
+			return null;
+		}
+		return ((AdapterValue) cell).getAdapter(CDKValue.class).getAtomContainer();
+	}
+
+	private void closeIndex() {
+
+		if (index != null) {
+			try {
+				index.close();
+			} catch (IOException exception) {
+				LOGGER.warn("Index file could not be closed.", exception);
+			}
+			index = null;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected DataTableSpec[] configure(final DataTableSpec[] inSpecs) throws InvalidSettingsException {
+
+		columnName = CDKNodeUtils.autoConfigure(inSpecs[0], columnName);
+		columnIndex = inSpecs[0].findColumnIndex(columnName);
+
+		if (inSpecs[1] != null) {
+			targetName = CDKNodeUtils.autoConfigure(inSpecs[1], targetName);
+		} else if (indexFile == null || indexFile.isEmpty()) {
+			throw new InvalidSettingsException("Connect a target table or choose an index file.");
+		} else if (!new File(indexFile).isFile()) {
+			setWarningMessage("Index file does not exist: " + indexFile);
+		}
+
+		DataTableSpec outSpec = convertTables(new DataTableSpec[] { inSpecs[0] })[0];
+		return new DataTableSpec[] { appendSpec(outSpec) };
+	}
+
+	private DataTableSpec appendSpec(final DataTableSpec spec) {
+
+		return new DataTableSpec(spec, new DataTableSpec(new DataColumnSpecCreator(DataTableSpec.getUniqueColumnName(
+				spec, "Matching targets"), ListCell.getCollectionType(StringCell.TYPE)).createSpec(),
+				new DataColumnSpecCreator(DataTableSpec.getUniqueColumnName(spec, "Hits"), IntCell.TYPE)
+						.createSpec()));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void saveSettingsTo(final NodeSettingsWO settings) {
+
+		settings.addString(Setting.COLUMN_NAME.label(), columnName);
+		settings.addString(Setting.TARGET_COLUMN.label(), targetName);
+		settings.addString(Setting.INDEX_FILE.label(), indexFile);
+		settings.addString(Setting.MAX_HITS.label(), Integer.toString(maxHits));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void loadValidatedSettingsFrom(final NodeSettingsRO settings) throws InvalidSettingsException {
+
+		columnName = settings.getString(Setting.COLUMN_NAME.label());
+		targetName = settings.getString(Setting.TARGET_COLUMN.label());
+		indexFile = settings.getString(Setting.INDEX_FILE.label());
+		maxHits = Integer.parseInt(settings.getString(Setting.MAX_HITS.label()).trim());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void validateSettings(final NodeSettingsRO settings) throws InvalidSettingsException {
+
+		settings.getString(Setting.COLUMN_NAME.label());
+		settings.getString(Setting.TARGET_COLUMN.label());
+		settings.getString(Setting.INDEX_FILE.label());
+		try {
+			Integer.parseInt(settings.getString(Setting.MAX_HITS.label()).trim());
+		} catch (NumberFormatException exception) {
+			throw new InvalidSettingsException("The max. number of hits must be a whole number.");
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void loadInternals(final File nodeInternDir, final ExecutionMonitor exec) throws IOException,
+			CanceledExecutionException {
+
+		File file = new File(nodeInternDir, INTERNAL_INDEX);
+		if (file.isFile()) {
+			closeIndex();
+			index = SubstructureIndex.read(file, true);
+			indexPath = null;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void saveInternals(final File nodeInternDir, final ExecutionMonitor exec) throws IOException,
+			CanceledExecutionException {
+
+		if (index != null) {
+			index.write(new File(nodeInternDir, INTERNAL_INDEX));
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void reset() {
+		// the index is kept, it is rebuilt if the targets change
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void onDispose() {
+		closeIndex();
+	}
+}
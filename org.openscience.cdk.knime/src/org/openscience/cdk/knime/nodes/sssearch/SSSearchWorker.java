@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2016, Stephan Beisken (sbeisken@gmail.com). All rights reserved.
+ *
+ * This file is part of the KNIME CDK plugin.
+ *
+ * The KNIME CDK plugin is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The KNIME CDK plugin is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the plugin. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.openscience.cdk.knime.nodes.sssearch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import org.knime.core.data.AdapterValue;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataType;
+import org.knime.core.data.append.AppendedColumnRow;
+import org.knime.core.data.collection.CollectionCellFactory;
+import org.knime.core.data.def.IntCell;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.streamable.RowOutput;
+import org.knime.core.util.MultiThreadWorker;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.knime.core.WorkerProgress;
+import org.openscience.cdk.knime.type.CDKValue;
+
+/**
+ * Multi-threaded worker searching the target store for every query molecule. The row keys of the matching targets
+ * and their number are appended to the query row.
+ *
+ * @author Stephan Beisken, European Bioinformatics Institute
+ */
+public class SSSearchWorker extends MultiThreadWorker<DataRow, DataRow> {
+
+	private final ExecutionContext exec;
+	private final int columnIndex;
+	private final double max;
+	private final SubstructureIndex index;
+	private final int maxHits;
+	private final RowOutput output;
+
+	SSSearchWorker(final int maxQueueSize, final int maxActiveInstanceSize, final int columnIndex, final long max,
+			final SubstructureIndex index, final int maxHits, final ExecutionContext exec, final RowOutput output) {
+
+		super(maxQueueSize, maxActiveInstanceSize);
+		this.exec = exec;
+		this.columnIndex = columnIndex;
+		this.max = max;
+		this.index = index;
+		this.maxHits = maxHits;
+		this.output = output;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected DataRow compute(final DataRow row, final long rowIndex) throws Exception {
+
+		DataCell cell = row.getCell(columnIndex);
+		if (cell.isMissing() || (((AdapterValue) cell).getAdapterError(CDKValue.class) != null)) {
+			return new AppendedColumnRow(row, DataType.getMissingCell(), DataType.getMissingCell());
+		}
+
+		IAtomContainer query = ((AdapterValue) cell).getAdapter(CDKValue.class).getAtomContainer();
+		List<Integer> hits = index.search(query, maxHits);
+
+		List<StringCell> keys = new ArrayList<StringCell>(hits.size());
+		for (int hit : hits) {
+			keys.add(new StringCell(index.key(hit)));
+		}
+		return new AppendedColumnRow(row, CollectionCellFactory.createListCell(keys), new IntCell(hits.size()));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void processFinished(final ComputationTask task) throws ExecutionException, CancellationException,
+			InterruptedException {
+
+		output.push(task.get());
+
+		WorkerProgress.update(this, exec, max);
+	}
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright (c) 2016, Stephan Beisken (sbeisken@gmail.com). All rights reserved.
+ *
+ * This file is part of the KNIME CDK plugin.
+ *
+ * The KNIME CDK plugin is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The KNIME CDK plugin is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the plugin. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.openscience.cdk.knime.nodes.sssearch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.knime.core.node.NodeLogger;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.isomorphism.Pattern;
+import org.openscience.cdk.isomorphism.VentoFoggia;
+import org.openscience.cdk.knime.commons.CDKNodeUtils;
+import org.openscience.cdk.knime.commons.PathFingerprint;
+import org.openscience.cdk.knime.type.MoleculeGraphCodec;
+
+/**
+ * Target store of the substructure search. Every target is held with its atom and bond count, its
+ * {@link PathFingerprint} and its serialized graph, i.e. the bytes of the {@link MoleculeGraphCodec} or the SMILES if
+ * the molecule cannot be represented as graph. A search compares the counts and fingerprints of all targets and only
+ * decodes and matches the graphs of the remaining candidates.
+ * <p>
+ * The store can be written to a file and read again, so that a target library is indexed once and searched many
+ * times without reading its table. The file holds a header, the graphs and the metadata, i.e. the source, keys,
+ * counts, fingerprints and graph offsets, followed by the offset of the metadata. The graphs of a read store are
+ * either loaded to the heap or read from the file on demand.
+ *
+ * @author Stephan Beisken, European Bioinformatics Institute
+ */
+final class SubstructureIndex implements Closeable {
+
+	private static final NodeLogger LOGGER = NodeLogger.getLogger(SubstructureIndex.class);
+
+	// "CDKS"
+	private static final int MAGIC = 0x43444B53;
+	private static final int VERSION = 1;
+	// magic and version
+	private static final int HEADER_SIZE = 2 * 4;
+
+	// first byte of a serialized graph
+	private static final byte GRAPH = 0;
+	private static final byte SMILES = 1;
+
+	private final String source;
+	private final String[] keys;
+	private final int[] atomCounts;
+	private final int[] bondCounts;
+	private final long[] fingerprints;
+	// null if read from the file on demand
+	private final byte[][] graphs;
+	// graph i spans [offsets[i], offsets[i + 1]) behind the header, null if on the heap
+	private final long[] offsets;
+	private final FileChannel channel;
+
+	private SubstructureIndex(final String source, final String[] keys, final int[] atomCounts,
+			final int[] bondCounts, final long[] fingerprints, final byte[][] graphs, final long[] offsets,
+			final FileChannel channel) {
+
+		this.source = source;
+		this.keys = keys;
+		this.atomCounts = atomCounts;
+		this.bondCounts = bondCounts;
+		this.fingerprints = fingerprints;
+		this.graphs = graphs;
+		this.offsets = offsets;
+		this.channel = channel;
+	}
+
+	/**
+	 * Returns the number of targets.
+	 *
+	 * @return the number of targets
+	 */
+	int size() {
+		return keys.length;
+	}
+
+	/**
+	 * Returns the description of the indexed targets, e.g. a signature of the target table.
+	 *
+	 * @return the source
+	 */
+	String source() {
+		return source;
+	}
+
+	/**
+	 * Returns the row key of the target at the given index.
+	 *
+	 * @param index the target index
+	 * @return the row key
+	 */
+	String key(final int index) {
+		return keys[index];
+	}
+
+	/**
+	 * Searches the targets containing the query as substructure. Atoms are matched by element and bonds by order or
+	 * aromaticity.
+	 *
+	 * @param query the fully configured query molecule
+	 * @param maxHits the max. number of hits, no limit if smaller than one
+	 * @return the indices of the matching targets in ascending order
+	 * @throws IOException if a graph cannot be read from the file
+	 * @throws InterruptedException if the search is interrupted
+	 */
+	List<Integer> search(final IAtomContainer query, final int maxHits) throws IOException, InterruptedException {
+
+		List<Integer> hits = new ArrayList<Integer>();
+		int atomCount = query.getAtomCount();
+		int bondCount = query.getBondCount();
+		long[] fingerprint = PathFingerprint.create(query, false);
+		Pattern pattern = null;
+
+		for (int i = 0; i < size(); i++) {
+			if ((i & 0x3FF) == 0 && Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			if (atomCounts[i] < atomCount || bondCounts[i] < bondCount
+					|| !PathFingerprint.covers(fingerprints, i * PathFingerprint.WORDS, fingerprint)) {
+				continue;
+			}
+
+			IAtomContainer target = decode(graph(i));
+			if (target == null) {
+				LOGGER.debug("Skipping undecodable target " + keys[i]);
+				continue;
+			}
+			if (pattern == null) {
+				// compiled once the first candidate is found
+				pattern = VentoFoggia.findSubstructure(query);
+			}
+			if (pattern.matches(target)) {
+				hits.add(i);
+				if (maxHits > 0 && hits.size() == maxHits) {
+					break;
+				}
+			}
+		}
+		return hits;
+	}
+
+	private byte[] graph(final int index) throws IOException {
+
+		if (graphs != null) {
+			return graphs[index];
+		}
+
+		// positional reads, the channel can be shared by concurrent searches
+		ByteBuffer buffer = ByteBuffer.allocate((int) (offsets[index + 1] - offsets[index]));
+		long position = HEADER_SIZE + offsets[index];
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new EOFException("Truncated substructure index");
+			}
+		}
+		return buffer.array();
+	}
+
+	/**
+	 * Serializes a fully configured molecule.
+	 */
+	private static byte[] encode(final IAtomContainer molecule) {
+
+		byte[] graph = MoleculeGraphCodec.encode(molecule);
+		byte format = GRAPH;
+		if (graph.length == 0) {
+			graph = CDKNodeUtils.calculateSmiles(molecule, null).getBytes(StandardCharsets.UTF_8);
+			format = SMILES;
+		}
+
+		byte[] bytes = new byte[graph.length + 1];
+		bytes[0] = format;
+		System.arraycopy(graph, 0, bytes, 1, graph.length);
+		return bytes;
+	}
+
+	private static IAtomContainer decode(final byte[] bytes) {
+
+		if (bytes.length < 2) {
+			return null;
+		}
+		if (bytes[0] == GRAPH) {
+			return MoleculeGraphCodec.decode(Arrays.copyOfRange(bytes, 1, bytes.length));
+		}
+		return CDKNodeUtils.getFullMolecule(new String(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Writes the store to a file. The store is written to a temporary file that replaces the index file, so a store
+	 * that reads its graphs from the index file keeps reading the old contents and never sees a partly written file.
+	 *
+	 * @param file the index file
+	 * @throws IOException if the store cannot be written
+	 */
+	void write(final File file) throws IOException {
+
+		File dir = file.getAbsoluteFile().getParentFile();
+		File temp = File.createTempFile("." + file.getName() + ".", ".tmp", dir);
+		try {
+			writeTo(temp);
+			try {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException exception) {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp.toPath());
+		}
+	}
+
+	private void writeTo(final File file) throws IOException {
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			long[] positions = new long[size() + 1];
+			for (int i = 0; i < size(); i++) {
+				byte[] graph = graph(i);
+				out.write(graph);
+				positions[i + 1] = positions[i] + graph.length;
+			}
+
+			out.writeUTF(source);
+			out.writeInt(size());
+			for (String key : keys) {
+				out.writeUTF(key);
+			}
+			for (int i = 0; i < size(); i++) {
+				out.writeInt(atomCounts[i]);
+				out.writeInt(bondCounts[i]);
+			}
+			for (long word : fingerprints) {
+				out.writeLong(word);
+			}
+			for (long position : positions) {
+				out.writeLong(position);
+			}
+			out.writeLong(HEADER_SIZE + positions[size()]);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads a store from a file.
+	 *
+	 * @param file the index file
+	 * @param heap whether the graphs are loaded to the heap, otherwise the file stays open until the store is closed
+	 * @return the store
+	 * @throws IOException if the file is no substructure index or cannot be read
+	 */
+	static SubstructureIndex read(final File file, final boolean heap) throws IOException {
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		boolean open = false;
+		try {
+			if (raf.length() < HEADER_SIZE + 8 || raf.readInt() != MAGIC) {
+				throw new IOException("Not a substructure index: " + file);
+			}
+			int version = raf.readInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported substructure index version: " + version);
+			}
+			raf.seek(raf.length() - 8);
+			long metadata = raf.readLong();
+
+			FileChannel channel = raf.getChannel();
+			channel.position(metadata);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+			String source = in.readUTF();
+			int size = in.readInt();
+			String[] keys = new String[size];
+			for (int i = 0; i < size; i++) {
+				keys[i] = in.readUTF();
+			}
+			int[] atomCounts = new int[size];
+			int[] bondCounts = new int[size];
+			for (int i = 0; i < size; i++) {
+				atomCounts[i] = in.readInt();
+				bondCounts[i] = in.readInt();
+			}
+			long[] fingerprints = new long[size * PathFingerprint.WORDS];
+			for (int i = 0; i < fingerprints.length; i++) {
+				fingerprints[i] = in.readLong();
+			}
+			long[] offsets = new long[size + 1];
+			for (int i = 0; i < offsets.length; i++) {
+				offsets[i] = in.readLong();
+			}
+
+			if (!heap) {
+				open = true;
+				return new SubstructureIndex(source, keys, atomCounts, bondCounts, fingerprints, null, offsets,
+						channel);
+			}
+
+			// the buffered stream has read ahead, continue at the first graph
+			channel.position(HEADER_SIZE);
+			in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+			byte[][] graphs = new byte[size][];
+			for (int i = 0; i < size; i++) {
+				graphs[i] = new byte[(int) (offsets[i + 1] - offsets[i])];
+				in.readFully(graphs[i]);
+			}
+			return new SubstructureIndex(source, keys, atomCounts, bondCounts, fingerprints, graphs, null, null);
+		} finally {
+			if (!open) {
+				raf.close();
+			}
+		}
+	}
+
+	/**
+	 * Closes the file of a store whose graphs are read on demand.
+	 *
+	 * @throws IOException if the file cannot be closed
+	 */
+	@Override
+	public void close() throws IOException {
+
+		if (channel != null) {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Collects the targets of a new store on the heap.
+	 */
+	static final class Builder {
+
+		private final List<String> keys = new ArrayList<String>();
+		private final List<byte[]> graphs = new ArrayList<byte[]>();
+		private int[] atomCounts = new int[1024];
+		private int[] bondCounts = new int[1024];
+		private long[] fingerprints = new long[1024 * PathFingerprint.WORDS];
+
+		/**
+		 * Adds a target.
+		 *
+		 * @param key the row key of the target
+		 * @param molecule the fully configured target molecule
+		 */
+		void add(final String key, final IAtomContainer molecule) {
+
+			int index = keys.size();
+			if (index == atomCounts.length) {
+				atomCounts = Arrays.copyOf(atomCounts, 2 * index);
+				bondCounts = Arrays.copyOf(bondCounts, 2 * index);
+				fingerprints = Arrays.copyOf(fingerprints, 2 * index * PathFingerprint.WORDS);
+			}
+
+			atomCounts[index] = molecule.getAtomCount();
+			bondCounts[index] = molecule.getBondCount();
+			System.arraycopy(PathFingerprint.create(molecule, true), 0, fingerprints, index
+					* PathFingerprint.WORDS, PathFingerprint.WORDS);
+			graphs.add(encode(molecule));
+			keys.add(key);
+		}
+
+		/**
+		 * Creates the store of all added targets.
+		 *
+		 * @param source the description of the targets
+		 * @return the store
+		 */
+		SubstructureIndex build(final String source) {
+
+			int size = keys.size();
+			return new SubstructureIndex(source, keys.toArray(new String[size]), Arrays.copyOf(atomCounts, size),
+					Arrays.copyOf(bondCounts, size), Arrays.copyOf(fingerprints, size * PathFingerprint.WORDS),
+					graphs.toArray(new byte[size][]), null, null);
+		}
+	}
+}
@@ -28,9 +28,8 @@ import org.knime.core.data.DataCell;
 import org.knime.core.data.DataRow;
 import org.knime.core.data.DataType;
 import org.knime.core.data.append.AppendedColumnRow;
-import org.knime.core.node.BufferedDataContainer;
-import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.streamable.RowOutput;
 import org.knime.core.util.MultiThreadWorker;
 import org.openscience.cdk.Atom;
 import org.openscience.cdk.exception.CDKException;
@@ -44,6 +43,7 @@ import org.openscience.cdk.interfaces.IRing;
 import org.openscience.cdk.interfaces.IRingSet;
 import org.openscience.cdk.isomorphism.UniversalIsomorphismTester;
 import org.openscience.cdk.knime.commons.CDKNodeUtils;
+import org.openscience.cdk.knime.core.WorkerProgress;
 import org.openscience.cdk.knime.type.CDKCell3;
 import org.openscience.cdk.knime.type.CDKValue;
 import org.openscience.cdk.normalize.SMSDNormalizer;
@@ -63,19 +63,19 @@ public class SugarRemoverWorker extends MultiThreadWorker<DataRow, DataRow> {
 	private final ExecutionContext exec;
 	private final int columnIndex;
 	private final List<IAtomContainer> sugarChains;
-	private final BufferedDataContainer bdc;
+	private final RowOutput output;
 	private final SugarRemoverSettings settings;
 
 	private boolean explicitH_flag;
 	private final UniversalIsomorphismTester isomorphismTester = new UniversalIsomorphismTester();
 
 	public SugarRemoverWorker(final int maxQueueSize, final int maxActiveInstanceSize, final int columnIndex,
-			final ExecutionContext exec, final BufferedDataContainer bdc, final SugarRemoverSettings settings,
+			final ExecutionContext exec, final RowOutput output, final SugarRemoverSettings settings,
 			final List<IAtomContainer> sugarChains) {
 
 		super(maxQueueSize, maxActiveInstanceSize);
 		this.exec = exec;
-		this.bdc = bdc;
+		this.output = output;
 		this.settings = settings;
 		this.columnIndex = columnIndex;
 		this.sugarChains = sugarChains;
@@ -340,13 +340,9 @@ public class SugarRemoverWorker extends MultiThreadWorker<DataRow, DataRow> {
 
 		DataRow append = task.get();
 		if (!append.getCell(columnIndex).isMissing()) {
-			bdc.addRowToTable(append);
+			output.push(append);
 		}
 
-		try {
-			exec.checkCanceled();
-		} catch (CanceledExecutionException cee) {
-			throw new CancellationException();
-		}
+		WorkerProgress.checkCanceled(exec);
 	}
 }
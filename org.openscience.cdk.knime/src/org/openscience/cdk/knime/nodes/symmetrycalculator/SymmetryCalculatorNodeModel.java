@@ -17,22 +17,23 @@
 
 package org.openscience.cdk.knime.nodes.symmetrycalculator;
 
-import java.util.concurrent.ExecutionException;
-
 import org.knime.core.data.DataColumnSpec;
 import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTableSpec;
 import org.knime.core.data.def.IntCell;
 import org.knime.core.data.def.StringCell;
 import org.knime.core.node.BufferedDataContainer;
 import org.knime.core.node.BufferedDataTable;
-import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.InvalidSettingsException;
 import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.streamable.RowOutput;
+import org.knime.core.util.MultiThreadWorker;
 import org.openscience.cdk.knime.commons.CDKNodeUtils;
 import org.openscience.cdk.knime.core.CDKAdapterNodeModel;
+import org.openscience.cdk.knime.core.ConvertedTable;
 import org.openscience.cdk.knime.type.CDKCell3;
 
 /**
@@ -59,7 +60,7 @@ public class SymmetryCalculatorNodeModel extends CDKAdapterNodeModel {
 	 * {@inheritDoc}
 	 */
 	@Override
-	protected BufferedDataTable[] process(BufferedDataTable[] convertedTables, ExecutionContext exec) throws Exception {
+	protected BufferedDataTable[] process(ConvertedTable[] convertedTables, ExecutionContext exec) throws Exception {
 
 		DataTableSpec convertedSpec = convertedTables[0].getDataTableSpec();
 		DataTableSpec appendSpec = appendSpec(convertedSpec);
@@ -67,31 +68,19 @@ public class SymmetryCalculatorNodeModel extends CDKAdapterNodeModel {
 
 		BufferedDataContainer outputTable = exec.createDataContainer(outSpec);
 
-		int addColumns = (visual) ? 1 : 2;
-		SymmetryCalculatorWorker worker = new SymmetryCalculatorWorker(maxQueueSize, maxParallelWorkers, columnIndex,
-				exec, outputTable, addColumns, visual);
-
-		try {
-			worker.run(convertedTables[0]);
-		} catch (InterruptedException e) {
-			CanceledExecutionException cee = new CanceledExecutionException(e.getMessage());
-			cee.initCause(e);
-			throw cee;
-		} catch (ExecutionException e) {
-			Throwable cause = e.getCause();
-			if (cause == null) {
-				cause = e;
-			}
-			if (cause instanceof RuntimeException) {
-				throw (RuntimeException) cause;
-			}
-			throw new RuntimeException(cause);
-		} finally {
-			outputTable.close();
-		}
+		return run(convertedTables, exec, outputTable);
+	}
 
-		return new BufferedDataTable[] { outputTable.getTable() };
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected MultiThreadWorker<DataRow, ?> createWorker(ConvertedTable[] convertedTables, RowOutput[] outputs,
+			ExecutionContext exec) throws Exception {
 
+		int addColumns = (visual) ? 1 : 2;
+		return new SymmetryCalculatorWorker(maxQueueSize, maxParallelWorkers, columnIndex, exec, outputs[0],
+				addColumns, visual);
 	}
 
 	/**
@@ -33,9 +33,8 @@ import org.knime.core.data.RowKey;
 import org.knime.core.data.append.AppendedColumnRow;
 import org.knime.core.data.def.IntCell;
 import org.knime.core.data.def.StringCell;
-import org.knime.core.node.BufferedDataContainer;
-import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.streamable.RowOutput;
 import org.knime.core.util.MultiThreadWorker;
 import org.openscience.cdk.graph.ConnectivityChecker;
 import org.openscience.cdk.graph.invariant.EquivalentClassPartitioner;
@@ -43,6 +42,7 @@ import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.knime.CDKNodePlugin;
 import org.openscience.cdk.knime.commons.CDKNodeUtils;
+import org.openscience.cdk.knime.core.WorkerProgress;
 import org.openscience.cdk.knime.preferences.CDKPreferencePage.NUMBERING;
 import org.openscience.cdk.knime.type.CDKCell3;
 import org.openscience.cdk.knime.type.CDKValue;
@@ -58,18 +58,18 @@ public class SymmetryCalculatorWorker extends MultiThreadWorker<DataRow, List<Da
 
 	private final ExecutionContext exec;
 	private final int columnIndex;
-	private final BufferedDataContainer bdc;
+	private final RowOutput output;
 	private final int addNbColumns;
 	private final boolean visual;
 
 	public SymmetryCalculatorWorker(final int maxQueueSize, final int maxActiveInstanceSize, final int columnIndex,
-			final ExecutionContext exec, final BufferedDataContainer bdc, final int addNbColumns, final boolean visual) {
+			final ExecutionContext exec, final RowOutput output, final int addNbColumns, final boolean visual) {
 
 		super(maxQueueSize, maxActiveInstanceSize);
 		this.addNbColumns = addNbColumns;
 		this.columnIndex = columnIndex;
 		this.exec = exec;
-		this.bdc = bdc;
+		this.output = output;
 		this.visual = visual;
 	}
 
@@ -166,14 +166,10 @@ public class SymmetryCalculatorWorker extends MultiThreadWorker<DataRow, List<Da
 		List<DataRow> append = task.get();
 
 		for (DataRow row : append) {
-			bdc.addRowToTable(row);
+			output.push(row);
 		}
 
-		try {
-			exec.checkCanceled();
-		} catch (CanceledExecutionException cee) {
-			throw new CancellationException();
-		}
+		WorkerProgress.checkCanceled(exec);
 	}
 
 	private List<DataRow> getMissing(DataRow row) {
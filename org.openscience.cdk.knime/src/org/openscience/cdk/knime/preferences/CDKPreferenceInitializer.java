@@ -32,6 +32,12 @@ public class CDKPreferenceInitializer extends AbstractPreferenceInitializer {
 
 	/** Preference key for the "numbering type" setting. */
 	public static final String NUMBERING_TYPE = "knime.cdk.numbering";
+
+	/** Preference key for the "compact molecule encoding" setting. */
+	public static final String COMPACT_ENCODING = "knime.cdk.compactencoding";
+
+	/** Preference key for the "thread budget" setting. */
+	public static final String THREAD_BUDGET = "knime.cdk.threadbudget";
 	
 	/**
 	 * {@inheritDoc}
@@ -44,5 +50,7 @@ public class CDKPreferenceInitializer extends AbstractPreferenceInitializer {
 
 		// set default values
 		store.setDefault(NUMBERING_TYPE, NUMBERING.NONE.name());
+		store.setDefault(COMPACT_ENCODING, false);
+		store.setDefault(THREAD_BUDGET, 0);
 	}
 }
@@ -17,7 +17,9 @@
  */
 package org.openscience.cdk.knime.preferences;
 
+import org.eclipse.jface.preference.BooleanFieldEditor;
 import org.eclipse.jface.preference.FieldEditorPreferencePage;
+import org.eclipse.jface.preference.IntegerFieldEditor;
 import org.eclipse.jface.preference.RadioGroupFieldEditor;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.ui.IWorkbench;
@@ -65,6 +67,17 @@ public class CDKPreferencePage extends FieldEditorPreferencePage implements IWor
 				"Atom number type: ", 1, numberingLabelsAndValues, parent);
 
 		addField(numbering);
+
+		BooleanFieldEditor compact = new BooleanFieldEditor(CDKPreferenceInitializer.COMPACT_ENCODING,
+				"Compact molecule encoding (single precision coordinates)", parent);
+
+		addField(compact);
+
+		IntegerFieldEditor threads = new IntegerFieldEditor(CDKPreferenceInitializer.THREAD_BUDGET,
+				"Max. number of worker threads shared by all CDK nodes (0 = automatic)", parent);
+		threads.setValidRange(0, 1024);
+
+		addField(threads);
 	}
 
 	/**
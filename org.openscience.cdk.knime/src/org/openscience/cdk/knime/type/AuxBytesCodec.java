@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) 2016, Stephan Beisken (sbeisken@gmail.com). All rights reserved.
+ *
+ * This file is part of the KNIME CDK plugin.
+ *
+ * The KNIME CDK plugin is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The KNIME CDK plugin is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the plugin. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.openscience.cdk.knime.type;
+
+import java.awt.Color;
+import java.nio.ByteBuffer;
+
+import javax.vecmath.Point2d;
+import javax.vecmath.Point3d;
+
+import org.openscience.cdk.geometry.GeometryTools;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.renderer.generators.standard.StandardGenerator;
+
+/**
+ * Encoder and decoder for the aux bytes of a {@link CDKCell3} holding atom coordinates as well as atom and bond
+ * highlight colours.
+ * <p>
+ * Two layouts are supported. The default layout is the one written by all previous versions of the plugin:
+ *
+ * <pre>
+ * header (0 = 2D, 1 = 3D, 3 = 2D and 3D) | coordinates as float64 | (atom index int32, rgb int32)* | -127 | (bond index int32, rgb int32)*
+ * </pre>
+ *
+ * The compact layout is flagged in the header and stores coordinates as float32 and indices as unsigned varints:
+ *
+ * <pre>
+ * header (0x40 | dimension) | coordinates as float32 | n | (atom index, rgb int32)* | m | (begin index, end index, rgb int32)*
+ * </pre>
+ *
+ * Atom indices always refer to the atom order of the canonical SMILES of the cell.
+ *
+ * @author Stephan Beisken, European Bioinformatics Institute
+ */
+final class AuxBytesCodec {
+
+	private static final byte DIM_2D = 0;
+	private static final byte DIM_3D = 1;
+	private static final byte DIM_2D3D = 3;
+	private static final byte DIM_NONE = 4;
+
+	private static final byte COMPACT_FLAG = 0x40;
+	private static final byte ATOM_BOND_SEPARATOR = -127;
+
+	private AuxBytesCodec() {
+		// utility class
+	}
+
+	/**
+	 * Encodes the coordinates and highlight colours of a molecule.
+	 *
+	 * @param molecule the CDK molecule
+	 * @param order the atom indices of the molecule in canonical SMILES order
+	 * @param compact whether to use the compact layout
+	 * @return the aux bytes
+	 */
+	static byte[] encode(final IAtomContainer molecule, final int[] order, final boolean compact) {
+
+		byte dim = DIM_NONE;
+		boolean has2d = GeometryTools.has2DCoordinates(molecule);
+		boolean has3d = GeometryTools.has3DCoordinates(molecule);
+		if (has2d && has3d) {
+			dim = DIM_2D3D;
+		} else if (has3d) {
+			dim = DIM_3D;
+		} else if (has2d) {
+			dim = DIM_2D;
+		}
+
+		return compact ? encodeCompact(molecule, order, dim) : encodeDefault(molecule, order, dim);
+	}
+
+	private static byte[] encodeDefault(final IAtomContainer molecule, final int[] order, final byte dim) {
+
+		int nAtoms = order.length;
+		int nAtomCols = 0;
+		if (dim != DIM_NONE) { // atom colours are bound to the coordinate block in this layout
+			for (int v = 0; v < nAtoms; v++) {
+				if (color(molecule.getAtom(order[v])) != null) {
+					nAtomCols++;
+				}
+			}
+		}
+		int nBondCols = 0;
+		for (IBond bond : molecule.bonds()) {
+			if (color(bond) != null) {
+				nBondCols++;
+			}
+		}
+
+		int coordLength = (dim == DIM_NONE) ? 0 : 1 + nAtoms * dimensions(dim) * 8;
+		ByteBuffer buffer = ByteBuffer.allocate(coordLength + nAtomCols * 8 + 1 + nBondCols * 8);
+
+		if (dim != DIM_NONE) {
+			buffer.put(dim);
+			for (int v = 0; v < nAtoms; v++) {
+				IAtom atom = molecule.getAtom(order[v]);
+				if (dim != DIM_3D) {
+					Point2d p = atom.getPoint2d();
+					buffer.putDouble(p.x).putDouble(p.y);
+				}
+				if (dim != DIM_2D) {
+					Point3d p = atom.getPoint3d();
+					buffer.putDouble(p.x).putDouble(p.y).putDouble(p.z);
+				}
+			}
+			for (int v = 0; v < nAtoms; v++) {
+				Color color = color(molecule.getAtom(order[v]));
+				if (color != null) {
+					buffer.putInt(v).putInt(color.getRGB());
+				}
+			}
+		}
+
+		buffer.put(ATOM_BOND_SEPARATOR);
+		for (int v = 0; v < molecule.getBondCount(); v++) {
+			Color color = color(molecule.getBond(v));
+			if (color != null) {
+				buffer.putInt(v).putInt(color.getRGB());
+			}
+		}
+
+		return buffer.array();
+	}
+
+	private static byte[] encodeCompact(final IAtomContainer molecule, final int[] order, final byte dim) {
+
+		int nAtoms = order.length;
+		int[] positions = new int[nAtoms];
+		for (int v = 0; v < nAtoms; v++) {
+			positions[order[v]] = v;
+		}
+
+		int nAtomCols = 0;
+		int atomColLength = 0;
+		for (int v = 0; v < nAtoms; v++) {
+			if (color(molecule.getAtom(order[v])) != null) {
+				nAtomCols++;
+				atomColLength += varIntLength(v) + 4;
+			}
+		}
+		int nBondCols = 0;
+		int bondColLength = 0;
+		for (IBond bond : molecule.bonds()) {
+			if (color(bond) != null) {
+				nBondCols++;
+				bondColLength += varIntLength(positions[molecule.indexOf(bond.getBegin())])
+						+ varIntLength(positions[molecule.indexOf(bond.getEnd())]) + 4;
+			}
+		}
+
+		int coordLength = (dim == DIM_NONE) ? 0 : nAtoms * dimensions(dim) * 4;
+		ByteBuffer buffer = ByteBuffer.allocate(1 + coordLength + varIntLength(nAtomCols) + atomColLength
+				+ varIntLength(nBondCols) + bondColLength);
+
+		buffer.put((byte) (COMPACT_FLAG | dim));
+		if (dim != DIM_NONE) {
+			for (int v = 0; v < nAtoms; v++) {
+				IAtom atom = molecule.getAtom(order[v]);
+				if (dim != DIM_3D) {
+					Point2d p = atom.getPoint2d();
+					buffer.putFloat((float) p.x).putFloat((float) p.y);
+				}
+				if (dim != DIM_2D) {
+					Point3d p = atom.getPoint3d();
+					buffer.putFloat((float) p.x).putFloat((float) p.y).putFloat((float) p.z);
+				}
+			}
+		}
+
+		putVarInt(buffer, nAtomCols);
+		for (int v = 0; v < nAtoms; v++) {
+			Color color = color(molecule.getAtom(order[v]));
+			if (color != null) {
+				putVarInt(buffer, v);
+				buffer.putInt(color.getRGB());
+			}
+		}
+
+		putVarInt(buffer, nBondCols);
+		for (IBond bond : molecule.bonds()) {
+			Color color = color(bond);
+			if (color != null) {
+				putVarInt(buffer, positions[molecule.indexOf(bond.getBegin())]);
+				putVarInt(buffer, positions[molecule.indexOf(bond.getEnd())]);
+				buffer.putInt(color.getRGB());
+			}
+		}
+
+		return buffer.array();
+	}
+
+	/**
+	 * Decodes the aux bytes and sets coordinates, atom IDs and highlight colours on the molecule parsed from the
+	 * canonical SMILES of the cell.
+	 *
+	 * @param aux the aux bytes
+	 * @param molecule the CDK molecule in canonical SMILES order
+	 */
+	static void decode(final byte[] aux, final IAtomContainer molecule) {
+
+		if (aux.length == 0) {
+			return;
+		}
+
+		if ((aux[0] & COMPACT_FLAG) != 0) {
+			decodeCompact(ByteBuffer.wrap(aux), molecule);
+		} else {
+			decodeDefault(ByteBuffer.wrap(aux), molecule);
+		}
+	}
+
+	private static void decodeDefault(final ByteBuffer buffer, final IAtomContainer molecule) {
+
+		int nAtoms = molecule.getAtomCount();
+		byte dim = buffer.get(0) == ATOM_BOND_SEPARATOR ? DIM_NONE : buffer.get();
+
+		if (dim != DIM_NONE) {
+			for (int v = 0; v < nAtoms; v++) {
+				IAtom atom = molecule.getAtom(v);
+				atom.setID(Integer.toString(v));
+				if (dim != DIM_3D) {
+					atom.setPoint2d(new Point2d(buffer.getDouble(), buffer.getDouble()));
+				}
+				if (dim != DIM_2D) {
+					atom.setPoint3d(new Point3d(buffer.getDouble(), buffer.getDouble(), buffer.getDouble()));
+				}
+			}
+			while (buffer.remaining() >= 8 && buffer.get(buffer.position()) != ATOM_BOND_SEPARATOR) {
+				int pos = buffer.getInt();
+				int col = buffer.getInt();
+				if (col != 0) {
+					molecule.getAtom(pos).setProperty(StandardGenerator.HIGHLIGHT_COLOR, new Color(col));
+				}
+			}
+		}
+
+		if (!buffer.hasRemaining()) { // written before bond colours were supported
+			return;
+		}
+		buffer.get(); // separator between atoms and bonds
+
+		while (buffer.remaining() >= 8) {
+			int pos = buffer.getInt();
+			int col = buffer.getInt();
+			molecule.getBond(pos).setProperty(StandardGenerator.HIGHLIGHT_COLOR, new Color(col));
+		}
+	}
+
+	private static void decodeCompact(final ByteBuffer buffer, final IAtomContainer molecule) {
+
+		int nAtoms = molecule.getAtomCount();
+		byte dim = (byte) (buffer.get() & ~COMPACT_FLAG);
+
+		if (dim != DIM_NONE) {
+			for (int v = 0; v < nAtoms; v++) {
+				IAtom atom = molecule.getAtom(v);
+				atom.setID(Integer.toString(v));
+				if (dim != DIM_3D) {
+					atom.setPoint2d(new Point2d(buffer.getFloat(), buffer.getFloat()));
+				}
+				if (dim != DIM_2D) {
+					atom.setPoint3d(new Point3d(buffer.getFloat(), buffer.getFloat(), buffer.getFloat()));
+				}
+			}
+		}
+
+		for (int i = getVarInt(buffer); i > 0; i--) {
+			int pos = getVarInt(buffer);
+			molecule.getAtom(pos).setProperty(StandardGenerator.HIGHLIGHT_COLOR, new Color(buffer.getInt()));
+		}
+
+		for (int i = getVarInt(buffer); i > 0; i--) {
+			IAtom begin = molecule.getAtom(getVarInt(buffer));
+			IAtom end = molecule.getAtom(getVarInt(buffer));
+			IBond bond = molecule.getBond(begin, end);
+			int col = buffer.getInt();
+			if (bond != null) {
+				bond.setProperty(StandardGenerator.HIGHLIGHT_COLOR, new Color(col));
+			}
+		}
+	}
+
+	private static Color color(final IAtom atom) {
+		return atom.getProperty(StandardGenerator.HIGHLIGHT_COLOR, Color.class);
+	}
+
+	private static Color color(final IBond bond) {
+		return bond.getProperty(StandardGenerator.HIGHLIGHT_COLOR, Color.class);
+	}
+
+	private static int dimensions(final byte dim) {
+		return dim == DIM_2D ? 2 : (dim == DIM_3D ? 3 : 5);
+	}
+
+	private static int varIntLength(int value) {
+
+		int length = 1;
+		while ((value >>>= 7) != 0) {
+			length++;
+		}
+		return length;
+	}
+
+	private static void putVarInt(final ByteBuffer buffer, int value) {
+
+		while ((value & ~0x7f) != 0) {
+			buffer.put((byte) ((value & 0x7f) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	private static int getVarInt(final ByteBuffer buffer) {
+
+		int value = 0;
+		for (int shift = 0;; shift += 7) {
+			byte b = buffer.get();
+			value |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+	}
+}
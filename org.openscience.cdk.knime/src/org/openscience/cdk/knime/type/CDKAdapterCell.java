@@ -159,12 +159,15 @@ public class CDKAdapterCell extends AdapterCell implements CDKValue, SmilesValue
 			return true;
 		}
 
-		int hashCodeDc = ((AdapterValue) dc).getAdapter(CDKValue.class).hashCode();
-		if (dc instanceof CDKValue && this.hashCode() == hashCodeDc) {
-			Long fullHashCode = CDKNodeUtils.calculateFullHash(this.getAtomContainer());
-			Long fullHashCodeDc = CDKNodeUtils.calculateFullHash(((AdapterValue) dc).getAdapter(CDKValue.class)
-					.getAtomContainer());
-			return fullHashCode.hashCode() == fullHashCodeDc.hashCode();
+		CDKValue value = (CDKValue) lookupFromAdapterMap(CDKValue.class);
+		CDKValue valueDc = ((AdapterValue) dc).getAdapter(CDKValue.class);
+		if (value instanceof CDKCell3 && valueDc instanceof CDKCell3) { // memoised hashes
+			return ((CDKCell3) value).equalsDataCell((CDKCell3) valueDc);
+		}
+
+		if (dc instanceof CDKValue && value.hashCode() == valueDc.hashCode()) {
+			return CDKNodeUtils.calculateFullHash(value.getAtomContainer()) == CDKNodeUtils
+					.calculateFullHash(valueDc.getAtomContainer());
 		}
 
 		return false;
@@ -17,15 +17,11 @@
  */
 package org.openscience.cdk.knime.type;
 
-import java.awt.Color;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.util.zip.GZIPInputStream;
 
-import javax.vecmath.Point2d;
-import javax.vecmath.Point3d;
-
 import org.knime.chem.types.SdfValue;
 import org.knime.chem.types.SmilesValue;
 import org.knime.core.data.AdapterValue;
@@ -38,7 +34,6 @@ import org.knime.core.data.StringValue;
 import org.knime.core.node.NodeLogger;
 import org.openscience.cdk.exception.CDKException;
 import org.openscience.cdk.geometry.GeometryTools;
-import org.openscience.cdk.graph.ConnectivityChecker;
 import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
 import org.openscience.cdk.interfaces.IChemFile;
@@ -46,6 +41,7 @@ import org.openscience.cdk.interfaces.IStereoElement;
 import org.openscience.cdk.io.CMLReader;
 import org.openscience.cdk.io.SDFWriter;
 import org.openscience.cdk.io.cml.CmlKnimeCore;
+import org.openscience.cdk.knime.CDKNodePlugin;
 import org.openscience.cdk.knime.commons.CDKNodeUtils;
 import org.openscience.cdk.layout.LayoutHelper;
 import org.openscience.cdk.renderer.generators.standard.StandardGenerator;
@@ -96,10 +92,27 @@ public final class CDKCell3 extends DataCell implements CDKValue, SmilesValue, S
 	 * The hash code.
 	 */
 	private final long hash;
+	/**
+	 * Whether the hash was calculated by the hash generator of earlier versions rather than from the canonical
+	 * SMILES.
+	 */
+	private final boolean legacy;
+	/**
+	 * The hash from the canonical SMILES of a legacy cell, computed lazily.
+	 */
+	private volatile Long canonicalHash;
+	/**
+	 * The full hash including stereochemistry and isotopes, computed lazily to compare cells of earlier versions.
+	 */
+	private volatile Long fullHash;
 	/**
 	 * The aux vector: 2d|3d;coords;atomIndex-color
 	 */
 	private final byte[] auxBytes;
+	/**
+	 * The pre-perceived molecule graph, computed lazily and empty if the molecule has no graph representation.
+	 */
+	private volatile byte[] graph;
 
 	/**
 	 * Creates a new DataCell containing the atom container.
@@ -130,7 +143,9 @@ public final class CDKCell3 extends DataCell implements CDKValue, SmilesValue, S
 
 		int[] seq = new int[atomContainer.getAtomCount()];
 
-		smiles = CDKNodeUtils.calculateSmiles(atomContainer, seq);
+		// a single canonical labelling yields the SMILES, the atom order and the hash
+		smiles = CDKNodeUtils.calculateCanonicalSmiles(atomContainer, seq);
+		legacy = false;
 
 		if (smiles.length() == 0) { // should never happen
 			hash = -1;
@@ -141,151 +156,38 @@ public final class CDKCell3 extends DataCell implements CDKValue, SmilesValue, S
 				aux[seq[v]] = v;
 			}
 
-			hash = CDKNodeUtils.calculateSimpleHash(atomContainer);
-			auxBytes = toByte(atomContainer, aux);
+			hash = CDKNodeUtils.calculateSmilesHash(smiles);
+			auxBytes = AuxBytesCodec.encode(atomContainer, aux, CDKNodePlugin.compactEncoding());
 		}
 	}
 
-	
-	protected final int multiplier_2d3d = 5;
-	protected final int multiplier_3d = 3;
-	protected final int multiplier_2d = 2;
-	protected final int numBytesPerUnit = 8;
-	protected final int atomBondSeparationVal = -127;
-	
-	
 	/**
-	 * Some sort of representation where the IAtomContainer object is serialised into bytes.
+	 * Creates new CDK cell. The hash is treated as a hash of earlier versions, i.e. the canonical hash is calculated on
+	 * first use by {@link #canonicalHash64()}.
 	 * 
-	 * The bytes contain atom coordinates, atom colour and bond colour information
-	 * 
-	 * @param atomContainer
-	 * @param seq
-	 * @return
+	 * @param smiles the CML string
+	 * @param hash the CDK hash
 	 */
-	private byte[] toByte(final IAtomContainer atomContainer, int[] seq) {
-
-		byte[] coords = new byte[0];
-		byte[] acols = new byte[0];
-		byte[] bcols = new byte[0];  // added this on for manual bond colouring
-
-		if (GeometryTools.has2DCoordinates(atomContainer) && GeometryTools.has3DCoordinates(atomContainer)) {
-			coords = new byte[atomContainer.getAtomCount() * 40 + 1];
-			coords[0] = 3; // 2D & 3D
-			for (int v = 0, k = 0, j = 0; v < seq.length; v++, k += 5) {
-				Point2d p2 = atomContainer.getAtom(seq[v]).getPoint2d();
-				System.arraycopy(toByte(p2.x), 0, coords, k * 8 + 1, 8);
-				System.arraycopy(toByte(p2.y), 0, coords, k * 8 + 9, 8);
-				Point3d p3 = atomContainer.getAtom(seq[v]).getPoint3d();
-				System.arraycopy(toByte(p3.x), 0, coords, k * 8 + 17, 8);
-				System.arraycopy(toByte(p3.y), 0, coords, k * 8 + 25, 8);
-				System.arraycopy(toByte(p3.z), 0, coords, k * 8 + 33, 8);
-				Color color = atomContainer.getAtom(seq[v]).getProperty(StandardGenerator.HIGHLIGHT_COLOR, Color.class);
-				if (color != null) {
-					int rgb = color.getRGB();
-					byte[] tmpCols = new byte[acols.length + 8];
-					System.arraycopy(acols, 0, tmpCols, 0, acols.length);
-					acols = tmpCols;
-					System.arraycopy(toByte(seq[v]), 0, acols, j * 8, 4);
-					System.arraycopy(toByte(rgb), 0, acols, j++ * 8 + 4, 4);
-				}
-			}
-		} else if (GeometryTools.has3DCoordinates(atomContainer)) {
-			coords = new byte[atomContainer.getAtomCount() * 24 + 1];
-			coords[0] = 1; // 3D
-			for (int v = 0, k = 0, j = 0; v < seq.length; v++, k += 3) {
-				Point3d p = atomContainer.getAtom(seq[v]).getPoint3d();
-				System.arraycopy(toByte(p.x), 0, coords, k * 8 + 1, 8);
-				System.arraycopy(toByte(p.y), 0, coords, k * 8 + 9, 8);
-				System.arraycopy(toByte(p.z), 0, coords, k * 8 + 17, 8);
-				Color color = atomContainer.getAtom(seq[v]).getProperty(StandardGenerator.HIGHLIGHT_COLOR, Color.class);
-				if (color != null) {
-					int rgb = color.getRGB();
-					byte[] tmpCols = new byte[acols.length + 8];
-					System.arraycopy(acols, 0, tmpCols, 0, acols.length);
-					acols = tmpCols;
-					System.arraycopy(toByte(seq[v]), 0, acols, j * 8, 4);
-					System.arraycopy(toByte(rgb), 0, acols, j++ * 8 + 4, 4);
-				}
-			}
-		} else if (GeometryTools.has2DCoordinates(atomContainer)) {
-			coords = new byte[atomContainer.getAtomCount() * ( multiplier_2d * numBytesPerUnit ) + 1];
-			coords[0] = 0; // 2D
-			for (int v = 0, k = 0, j = 0; v < seq.length; v++, k += multiplier_2d) {
-				Point2d p = atomContainer.getAtom(seq[v]).getPoint2d();
-				System.arraycopy(toByte(p.x), 0, coords, k * numBytesPerUnit + 1, numBytesPerUnit);
-				System.arraycopy(toByte(p.y), 0, coords, k * numBytesPerUnit + 9, numBytesPerUnit);
-				Color color = atomContainer.getAtom(seq[v]).getProperty(StandardGenerator.HIGHLIGHT_COLOR, Color.class);
-				if (color != null) {
-					int rgb = color.getRGB();
-					byte[] tmpCols = new byte[acols.length + 8];
-					System.arraycopy(acols, 0, tmpCols, 0, acols.length);
-					acols = tmpCols;
-					System.arraycopy(toByte(seq[v]), 0, acols, j * 8, 4);
-					System.arraycopy(toByte(rgb), 0, acols, j++ * 8 + 4, 4);
-				}
-			}
-		}
-		
-		// bond colouring info, tacked on at the end
-		bcols = new byte[1];
-		bcols[0] = atomBondSeparationVal;  // separator from atoms
-		for (int v = 0, j = 0; v < atomContainer.getBondCount(); v++) {
-			Color color = atomContainer.getBond(v).getProperty(StandardGenerator.HIGHLIGHT_COLOR, Color.class);
-			if (color != null) {
-				int rgb = color.getRGB();
-				byte[] tmpCols = new byte[bcols.length + numBytesPerUnit];  // appending 8 bytes to array
-				System.arraycopy(bcols, 0, tmpCols, 0, bcols.length);  // copy original contents to new array
-				bcols = tmpCols;
-				System.arraycopy(toByte(v), 0, bcols, j * numBytesPerUnit + 1, 4);  
-				System.arraycopy(toByte(rgb), 0, bcols, j++ * numBytesPerUnit + 5, 4);
-			}
-		}
-		
-		byte[] aux = new byte[coords.length + acols.length + bcols.length];
-		System.arraycopy(coords, 0, aux, 0, coords.length);
-		System.arraycopy(acols, 0, aux, coords.length, acols.length);
-		System.arraycopy(bcols, 0, aux, coords.length + acols.length, bcols.length);
-		
-		return aux;
-	}
-
-	
-	
-	public byte[] toByte(int value) {
-
-		return new byte[] {
-				(byte) ((value >> 24) & 0xff),
-				(byte) ((value >> 16) & 0xff),
-				(byte) ((value >> 8) & 0xff),
-				(byte) ((value >> 0) & 0xff) };
-	}
-
-	private byte[] toByte(double value) {
-
-		long raw = Double.doubleToRawLongBits(value);
-
-		return new byte[] {
-				(byte) ((raw >> 56) & 0xff),
-				(byte) ((raw >> 48) & 0xff),
-				(byte) ((raw >> 40) & 0xff),
-				(byte) ((raw >> 32) & 0xff),
-				(byte) ((raw >> 24) & 0xff),
-				(byte) ((raw >> 16) & 0xff),
-				(byte) ((raw >> 8) & 0xff),
-				(byte) ((raw >> 0) & 0xff) };
+	public CDKCell3(final String smiles, final long hash, final byte[] coordinates) {
+		this(smiles, hash, coordinates, null, true);
 	}
 
 	/**
-	 * Creates new CDK cell.
+	 * Creates new CDK cell with a pre-perceived molecule graph.
 	 * 
-	 * @param smiles the CML string
+	 * @param smiles the SMILES string
 	 * @param hash the CDK hash
+	 * @param coordinates the aux bytes
+	 * @param graph the molecule graph or null if unknown
+	 * @param legacy whether the hash was calculated by earlier versions
 	 */
-	public CDKCell3(final String smiles, final long hash, final byte[] coordinates) {
+	CDKCell3(final String smiles, final long hash, final byte[] coordinates, final byte[] graph,
+			final boolean legacy) {
 		this.smiles = smiles;
 		this.hash = hash;
 		this.auxBytes = coordinates;
+		this.graph = graph;
+		this.legacy = legacy;
 	}
 
 	/**
@@ -356,96 +258,12 @@ public final class CDKCell3 extends DataCell implements CDKValue, SmilesValue, S
 	 */
 	public IAtomContainer getAtomContainerWithCoordinates() {
 
-		IAtomContainer molecule = CDKNodeUtils.getFullMolecule(smiles);
+		IAtomContainer molecule = CDKMoleculeCache.getInstance().get(hash, smiles, graph);
 		if (molecule == null) {
 			return null;
 		}
 
-		int nAtoms = molecule.getAtomCount();
-		// int nBonds = molecule.getBondCount();
-		
-		if (auxBytes.length == 0) {
-			return molecule;
-		}
-
-		int f = (auxBytes[0] == 0) ? 2 : ((auxBytes[0] == 1) ? 3 : 5);
-
-		double[] coords = new double[nAtoms * f];
-		for (int i = 0; i < coords.length; i++) {
-			int k = (i * 8) + 1;
-			coords[i] = Double.longBitsToDouble(toLong(new byte[] {
-					auxBytes[k],
-					auxBytes[k + 1],
-					auxBytes[k + 2],
-					auxBytes[k + 3],
-					auxBytes[k + 4],
-					auxBytes[k + 5],
-					auxBytes[k + 6],
-					auxBytes[k + 7] }));
-		}
-
-		boolean hasAnnotations = (nAtoms * 8 * f + 1 == auxBytes.length) ? false : true;
-
-		int[] cols = new int[nAtoms];
-		// start from first byte of the array (where atom colours begin, after coordinates)
-		int i = nAtoms * 8 * f + 1;
-		for ( ; i < auxBytes.length && auxBytes[i] != atomBondSeparationVal; i += 8) {
-			//System.out.print( i + "," + auxBytes[i] + " " );
-			int pos = toInt(new byte[] { auxBytes[i], auxBytes[i + 1], auxBytes[i + 2], auxBytes[i + 3] });
-			int col = toInt(new byte[] { auxBytes[i + 4], auxBytes[i + 5], auxBytes[i + 6], auxBytes[i + 7] });
-			cols[pos] = col;
-		}
-		
-		
-		// now for colouring bonds
-		++i;  // increment to go past the "separator" thing between atoms and bonds
-		for ( ; i < auxBytes.length; i += 8) {
-			int pos = toInt(new byte[] { auxBytes[i], auxBytes[i + 1], auxBytes[i + 2], auxBytes[i + 3] });
-			int col = toInt(new byte[] { auxBytes[i + 4], auxBytes[i + 5], auxBytes[i + 6], auxBytes[i + 7] });
-			molecule.getBond(pos).setProperty(StandardGenerator.HIGHLIGHT_COLOR, new Color(col));
-		}
-
-		if (f == 2) {
-			for (int v = 0, k = 0; v < nAtoms; v++, k += 2) {
-				molecule.getAtom(v).setID("" + v);
-				molecule.getAtom(v).setPoint2d(new Point2d(coords[k], coords[k + 1]));
-				if (cols[v] != 0) {
-					molecule.getAtom(v).setProperty(StandardGenerator.HIGHLIGHT_COLOR, new Color(cols[v]));
-				}
-			}
-		} else if (f == 3) {
-			for (int v = 0, k = 0; v < nAtoms; v++, k += 3) {
-				molecule.getAtom(v).setID("" + v);
-				molecule.getAtom(v).setPoint3d(new Point3d(coords[k], coords[k + 1], coords[k + 2]));
-				if (cols[v] != 0) {
-					molecule.getAtom(v).setProperty(StandardGenerator.HIGHLIGHT_COLOR, new Color(cols[v]));
-				}
-			}
-		} else {
-			for (int v = 0, k = 0; v < nAtoms; v++, k += 5) {
-				molecule.getAtom(v).setID("" + v);
-				molecule.getAtom(v).setPoint2d(new Point2d(coords[k], coords[k + 1]));
-				molecule.getAtom(v).setPoint3d(new Point3d(coords[k + 2], coords[k + 3], coords[k + 4]));
-				if (cols[v] != 0) {
-					molecule.getAtom(v).setProperty(StandardGenerator.HIGHLIGHT_COLOR, new Color(cols[v]));
-				}
-			}
-		}
-
-		// automated bond colouring
-		if (hasAnnotations) {
-			int[] visited = new int[nAtoms];
-			if (ConnectivityChecker.isConnected(molecule)) {
-				IAtom atom = molecule.getAtom(0);
-				visited[0] = atom.getProperty(StandardGenerator.HIGHLIGHT_COLOR) == null ? 1 : 2;
-			} else {
-				for (IAtomContainer mol : ConnectivityChecker.partitionIntoMolecules(molecule).atomContainers()) {
-					IAtom atom = mol.getAtom(0);
-					visited[Integer.parseInt(atom.getID())] = atom.getProperty(StandardGenerator.HIGHLIGHT_COLOR) == null 
-							? 1 : 2;
-				}
-			}
-		}
+		AuxBytesCodec.decode(auxBytes, molecule);
 
 		return molecule;
 	}
@@ -473,18 +291,6 @@ public final class CDKCell3 extends DataCell implements CDKValue, SmilesValue, S
 		}
 	}
 
-	public long toLong(byte[] data) {
-
-		return (long) ((long) (0xff & data[0]) << 56 | (long) (0xff & data[1]) << 48 | (long) (0xff & data[2]) << 40
-				| (long) (0xff & data[3]) << 32 | (long) (0xff & data[4]) << 24 | (long) (0xff & data[5]) << 16
-				| (long) (0xff & data[6]) << 8 | (long) (0xff & data[7]) << 0);
-	}
-
-	public int toInt(byte[] data) {
-
-		return (int) ((0xff & data[0]) << 24 | (0xff & data[1]) << 16 | (0xff & data[2]) << 8 | (0xff & data[3]) << 0);
-	}
-
 	/**
 	 * {@inheritDoc}
 	 */
@@ -495,14 +301,20 @@ public final class CDKCell3 extends DataCell implements CDKValue, SmilesValue, S
 			return true;
 		}
 
-		int hashCodeDc = ((CDKCell3) dc).hashCode();
-		if (dc instanceof CDKValue && this.hashCode() == hashCodeDc) {
-			Long fullHashCode = CDKNodeUtils.calculateFullHash(this.getAtomContainer());
-			Long fullHashCodeDc = CDKNodeUtils.calculateFullHash(((CDKCell3) dc).getAtomContainer());
-			return fullHashCode.hashCode() == fullHashCodeDc.hashCode();
+		if (!(dc instanceof CDKCell3)) {
+			return false;
 		}
 
-		return false;
+		CDKCell3 cell = (CDKCell3) dc;
+		if (hashCode64() != cell.hashCode64()) {
+			return false;
+		}
+		if (!legacy && !cell.legacy) {
+			// the absolute canonical SMILES include stereochemistry and isotopes
+			return smiles.equals(cell.smiles);
+		}
+		// the SMILES of earlier versions are not canonical, the memoised full hashes parse each cell once
+		return fullHashCode64() == cell.fullHashCode64();
 	}
 
 	/**
@@ -510,16 +322,49 @@ public final class CDKCell3 extends DataCell implements CDKValue, SmilesValue, S
 	 */
 	@Override
 	public int hashCode() {
-		return ((Long) hash).hashCode();
+		return ((Long) hashCode64()).hashCode();
 	}
 
 	/**
-	 * Molecule hash is 64 bit
+	 * Molecule hash is 64 bit, derived from the canonical SMILES or, for cells of earlier versions, the stored hash
 	 */
 	public long hashCode64() {
 		return hash;
 	}
 
+	/**
+	 * Molecule hash from the canonical SMILES, equal for cells of earlier and current versions holding the same
+	 * molecule. Cells of earlier versions parse their SMILES once on first use.
+	 */
+	public long canonicalHash64() {
+
+		if (!legacy) {
+			return hash;
+		}
+
+		Long canonical = canonicalHash;
+		if (canonical == null) {
+			IAtomContainer molecule = CDKMoleculeCache.getInstance().get(hash, smiles, graph);
+			String canonicalSmiles = (molecule == null) ? "" : CDKNodeUtils.calculateCanonicalSmiles(molecule, null);
+			canonical = canonicalSmiles.isEmpty() ? hash : CDKNodeUtils.calculateSmilesHash(canonicalSmiles);
+			canonicalHash = canonical;
+		}
+		return canonical;
+	}
+
+	/**
+	 * Full molecule hash is 64 bit, including stereochemistry and isotopes, computed on first use
+	 */
+	public long fullHashCode64() {
+
+		Long full = fullHash;
+		if (full == null) {
+			full = CDKNodeUtils.calculateFullHash(getAtomContainer());
+			fullHash = full;
+		}
+		return full;
+	}
+
 	/**
 	 * Coordinates byte array
 	 */
@@ -527,6 +372,21 @@ public final class CDKCell3 extends DataCell implements CDKValue, SmilesValue, S
 		return auxBytes;
 	}
 
+	/**
+	 * Molecule graph byte array, encoded on first access
+	 */
+	byte[] graph() {
+
+		byte[] bytes = graph;
+		if (bytes == null) {
+			// the input molecule of the cell may lack perception, the graph is only encoded from the perceived one
+			IAtomContainer molecule = CDKMoleculeCache.getInstance().get(hash, smiles, null);
+			bytes = (molecule == null) ? new byte[0] : MoleculeGraphCodec.encode(molecule);
+			graph = bytes;
+		}
+		return bytes;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -537,18 +397,41 @@ public final class CDKCell3 extends DataCell implements CDKValue, SmilesValue, S
 
 	/**
 	 * Factory for (de-)serializing a CDKCell.
+	 * <p>
+	 * Cells are written as version marker, serializer version, SMILES, hash, aux bytes and molecule graph.
+	 * Cells written without version marker hold either the SMILES, hash and aux bytes only or legacy compressed CML.
+	 * The hash of unversioned cells was calculated by the hash generator, they are written unversioned again, so that
+	 * neither their SMILES is parsed nor their hash changes. New cells are created from their molecules by the nodes.
 	 */
 	public static final class CDKSerializer implements DataCellSerializer<CDKCell3> {
 
+		/** Leading string of versioned cells, neither valid SMILES nor compressed CML. */
+		private static final String VERSION_MARKER = "\0CDK";
+		private static final int VERSION = 1;
+
 		/**
 		 * {@inheritDoc}
 		 */
 		@Override
 		public void serialize(final CDKCell3 cell, final DataCellDataOutput out) throws IOException {
+
+			if (cell.legacy) {
+				out.writeUTF(cell.getSmilesValue());
+				out.writeLong(cell.hashCode64());
+				out.writeInt(cell.auxBytes().length);
+				out.write(cell.auxBytes());
+				return;
+			}
+
+			byte[] graph = cell.graph();
+			out.writeUTF(VERSION_MARKER);
+			out.writeByte(VERSION);
 			out.writeUTF(cell.getSmilesValue());
 			out.writeLong(cell.hashCode64());
 			out.writeInt(cell.auxBytes().length);
 			out.write(cell.auxBytes());
+			out.writeInt(graph.length);
+			out.write(graph);
 		}
 
 		/**
@@ -557,16 +440,33 @@ public final class CDKCell3 extends DataCell implements CDKValue, SmilesValue, S
 		@Override
 		public CDKCell3 deserialize(final DataCellDataInput input) throws IOException {
 
-			String blob = input.readUTF(); // either SMILES or CML
+			String blob = input.readUTF(); // either version marker, SMILES or CML
+
+			if (VERSION_MARKER.equals(blob)) { // versioned cell
+				int version = input.readByte();
+				if (version > VERSION) {
+					throw new IOException("Unsupported CDK cell version " + version
+							+ ", please update the CDK extension.");
+				}
+				String smiles = input.readUTF();
+				long hash64 = input.readLong();
+				byte[] coords = new byte[input.readInt()];
+				input.readFully(coords);
+				byte[] graph = new byte[input.readInt()];
+				input.readFully(graph);
+
+				return new CDKCell3(smiles, hash64, coords, graph, false);
+			}
+
 			byte[] bytes = blob.getBytes("ISO-8859-1");
 
-			if (((bytes)[0] == (byte) (GZIPInputStream.GZIP_MAGIC))
+			if (bytes.length > 1 && ((bytes)[0] == (byte) (GZIPInputStream.GZIP_MAGIC))
 					&& (bytes[1] == (byte) (GZIPInputStream.GZIP_MAGIC >> 8))) { // legacy CML cell
 				String cml = blob;
 				IAtomContainer mol = readCML(cml); // reads and uncompresses CML
 
 				return new CDKCell3(mol); // create new CDK cell
-			} else { // current SMILES cell
+			} else { // SMILES cell
 				String smiles = blob;
 				long hash64 = input.readLong();
 				byte[] coords = new byte[input.readInt()];
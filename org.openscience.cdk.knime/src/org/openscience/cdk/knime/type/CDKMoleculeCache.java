@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2016, Stephan Beisken (sbeisken@gmail.com). All rights reserved.
+ *
+ * This file is part of the KNIME CDK plugin.
+ *
+ * The KNIME CDK plugin is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The KNIME CDK plugin is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the plugin. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.openscience.cdk.knime.type;
+
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.knime.core.node.NodeLogger;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.knime.commons.CDKNodeUtils;
+
+/**
+ * Bounded cache of parsed and perceived molecules keyed on the 64-bit molecule hash and the SMILES of a CDK cell.
+ * <p>
+ * The cache is split into independently locked LRU segments. Each segment is limited by an atom budget derived from
+ * the maximum heap size, and cached molecules are only softly reachable so that the garbage collector can reclaim them
+ * under heap pressure. Callers always receive a private copy of the cached molecule that they are free to modify.
+ *
+ * @author Stephan Beisken, European Bioinformatics Institute
+ */
+public final class CDKMoleculeCache {
+
+	private static final NodeLogger LOGGER = NodeLogger.getLogger(CDKMoleculeCache.class);
+
+	private static final int SEGMENTS = 16;
+	// rough heap estimate for one atom including its bonds and properties
+	private static final long BYTES_PER_ATOM = 1024;
+	// fraction of the maximum heap that may be used by the cache
+	private static final int HEAP_FRACTION = 20;
+
+	private static final CDKMoleculeCache INSTANCE = new CDKMoleculeCache(
+			Math.max(10000, Runtime.getRuntime().maxMemory() / HEAP_FRACTION / BYTES_PER_ATOM));
+
+	private final Segment[] segments;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Creates a new cache.
+	 *
+	 * @param atomBudget the max. number of atoms held by the cache
+	 */
+	CDKMoleculeCache(final long atomBudget) {
+
+		segments = new Segment[SEGMENTS];
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment(Math.max(1, atomBudget / SEGMENTS));
+		}
+	}
+
+	/**
+	 * Returns the shared molecule cache.
+	 *
+	 * @return the cache instance
+	 */
+	public static CDKMoleculeCache getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Returns a copy of the fully configured molecule for the given SMILES. The SMILES is only parsed and perceived
+	 * if no molecule for the hash and SMILES pair is cached.
+	 *
+	 * @param hash the 64-bit molecule hash
+	 * @param smiles the SMILES string
+	 * @return a private copy of the molecule or null if the SMILES cannot be parsed
+	 */
+	public IAtomContainer get(final long hash, final String smiles) {
+		return get(hash, smiles, null);
+	}
+
+	/**
+	 * Returns a copy of the fully configured molecule for the given SMILES. On a cache miss the molecule is rebuilt
+	 * from its pre-perceived graph if available, otherwise the SMILES is parsed and perceived.
+	 *
+	 * @param hash the 64-bit molecule hash
+	 * @param smiles the SMILES string
+	 * @param graph the molecule graph or null
+	 * @return a private copy of the molecule or null if the SMILES cannot be parsed
+	 */
+	IAtomContainer get(final long hash, final String smiles, final byte[] graph) {
+
+		Key key = new Key(hash, smiles);
+		Segment segment = segments[(key.hashCode() & 0x7fffffff) % SEGMENTS];
+
+		IAtomContainer cached = segment.get(key);
+		if (cached != null) {
+			try {
+				IAtomContainer copy = cached.clone();
+				hits.incrementAndGet();
+				return copy;
+			} catch (CloneNotSupportedException exception) {
+				LOGGER.debug("Unable to copy cached molecule.", exception);
+			}
+		}
+
+		misses.incrementAndGet();
+		IAtomContainer molecule = MoleculeGraphCodec.decode(graph);
+		if (molecule == null) {
+			molecule = CDKNodeUtils.getFullMolecule(smiles);
+		}
+		if (molecule == null) {
+			return null;
+		}
+
+		try {
+			segment.put(key, molecule.clone());
+		} catch (CloneNotSupportedException exception) {
+			LOGGER.debug("Unable to cache molecule.", exception);
+		}
+
+		return molecule;
+	}
+
+	/**
+	 * Returns the number of lookups served from the cache.
+	 *
+	 * @return the hit count
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of lookups that required building the molecule.
+	 *
+	 * @return the miss count
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * Removes all molecules from the cache and resets the counters.
+	 */
+	public void clear() {
+
+		for (Segment segment : segments) {
+			segment.clear();
+		}
+		hits.set(0);
+		misses.set(0);
+	}
+
+	/**
+	 * Cache key combining the 64-bit hash with the SMILES to rule out hash collisions.
+	 */
+	private static final class Key {
+
+		private final long hash;
+		private final String smiles;
+
+		private Key(final long hash, final String smiles) {
+			this.hash = hash;
+			this.smiles = smiles;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (hash ^ (hash >>> 32)) * 31 + smiles.hashCode();
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return hash == other.hash && smiles.equals(other.smiles);
+		}
+	}
+
+	/**
+	 * Softly referenced molecule and the number of atoms it accounts for in the budget.
+	 */
+	private static final class Entry {
+
+		private final SoftReference<IAtomContainer> molecule;
+		private final int atomCount;
+
+		private Entry(final IAtomContainer molecule) {
+			this.molecule = new SoftReference<IAtomContainer>(molecule);
+			this.atomCount = Math.max(1, molecule.getAtomCount());
+		}
+	}
+
+	/**
+	 * Access-ordered LRU segment evicting the eldest entries once the atom budget is exceeded.
+	 */
+	private static final class Segment {
+
+		private final long atomBudget;
+		private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+		private long atomCount;
+
+		private Segment(final long atomBudget) {
+			this.atomBudget = atomBudget;
+		}
+
+		private synchronized IAtomContainer get(final Key key) {
+
+			Entry entry = entries.get(key);
+			if (entry == null) {
+				return null;
+			}
+			IAtomContainer molecule = entry.molecule.get();
+			if (molecule == null) { // reclaimed by the garbage collector
+				entries.remove(key);
+				atomCount -= entry.atomCount;
+			}
+			return molecule;
+		}
+
+		private synchronized void put(final Key key, final IAtomContainer molecule) {
+
+			Entry entry = new Entry(molecule);
+			Entry previous = entries.put(key, entry);
+			if (previous != null) {
+				atomCount -= previous.atomCount;
+			}
+			atomCount += entry.atomCount;
+
+			Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+			while (atomCount > atomBudget && it.hasNext()) {
+				Entry eldest = it.next().getValue();
+				if (eldest == entry) {
+					break;
+				}
+				atomCount -= eldest.atomCount;
+				it.remove();
+			}
+		}
+
+		private synchronized void clear() {
+			entries.clear();
+			atomCount = 0;
+		}
+	}
+}
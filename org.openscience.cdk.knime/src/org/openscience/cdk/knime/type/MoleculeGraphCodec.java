@@ -0,0 +1,320 @@
+/*
+ * Copyright (c) 2016, Stephan Beisken (sbeisken@gmail.com). All rights reserved.
+ *
+ * This file is part of the KNIME CDK plugin.
+ *
+ * The KNIME CDK plugin is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The KNIME CDK plugin is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the plugin. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.openscience.cdk.knime.type;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.knime.core.node.NodeLogger;
+import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.config.AtomTypeFactory;
+import org.openscience.cdk.config.Elements;
+import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IAtomType;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.interfaces.IChemObjectBuilder;
+import org.openscience.cdk.interfaces.IDoubleBondStereochemistry;
+import org.openscience.cdk.interfaces.IPseudoAtom;
+import org.openscience.cdk.interfaces.IStereoElement;
+import org.openscience.cdk.interfaces.ITetrahedralChirality;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.stereo.DoubleBondStereochemistry;
+import org.openscience.cdk.stereo.TetrahedralChirality;
+import org.openscience.cdk.tools.manipulator.AtomTypeManipulator;
+
+/**
+ * Compact binary representation of a fully configured CDK molecule, i.e. a molecule as returned by
+ * {@link org.openscience.cdk.knime.commons.CDKNodeUtils#getFullMolecule(String)}. Rebuilding a molecule from its graph
+ * bypasses SMILES parsing, atom typing, hydrogen addition and aromaticity perception.
+ * <p>
+ * The graph holds a table of the CDK atom type names followed by the atomic number, formal charge, mass number,
+ * implicit hydrogen count, aromaticity and ring flags and atom type of every atom, the atom indices, order and flags of
+ * every bond and the tetrahedral and double bond stereo elements. Molecules with pseudo atoms or other stereo elements
+ * are not encoded and have to be parsed from their SMILES.
+ *
+ * @author Stephan Beisken, European Bioinformatics Institute
+ */
+public final class MoleculeGraphCodec {
+
+	private static final NodeLogger LOGGER = NodeLogger.getLogger(MoleculeGraphCodec.class);
+
+	private static final String CDK_ATOM_TYPE = "org/openscience/cdk/dict/data/cdk-atom-types.owl";
+
+	private static final int FLAG_AROMATIC = 1;
+	private static final int FLAG_RING = 2;
+
+	private static final int STEREO_TETRAHEDRAL = 1;
+	private static final int STEREO_DOUBLE_BOND = 2;
+
+	private static final IBond.Order[] ORDERS = new IBond.Order[] { IBond.Order.UNSET, IBond.Order.SINGLE,
+			IBond.Order.DOUBLE, IBond.Order.TRIPLE, IBond.Order.QUADRUPLE };
+
+	private MoleculeGraphCodec() {
+		// utility class
+	}
+
+	/**
+	 * Encodes the graph of a fully configured molecule.
+	 *
+	 * @param molecule the CDK molecule
+	 * @return the graph bytes or an empty array if the molecule cannot be represented as graph
+	 */
+	public static byte[] encode(final IAtomContainer molecule) {
+
+		try {
+			for (IStereoElement se : molecule.stereoElements()) {
+				if (!(se instanceof ITetrahedralChirality) && !(se instanceof IDoubleBondStereochemistry)) {
+					return new byte[0];
+				}
+			}
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + 8 * molecule.getAtomCount() + 4
+					* molecule.getBondCount());
+			DataOutputStream out = new DataOutputStream(bytes);
+
+			List<String> typeNames = new ArrayList<String>();
+			Map<String, Integer> typeIndex = new HashMap<String, Integer>();
+			for (IAtom atom : molecule.atoms()) {
+				if (atom instanceof IPseudoAtom || atom.getAtomicNumber() == null) {
+					return new byte[0];
+				}
+				String name = atom.getAtomTypeName();
+				if (name != null && !typeIndex.containsKey(name)) {
+					typeIndex.put(name, typeNames.size());
+					typeNames.add(name);
+				}
+			}
+
+			writeVarInt(out, typeNames.size());
+			for (String name : typeNames) {
+				out.writeUTF(name);
+			}
+
+			writeVarInt(out, molecule.getAtomCount());
+			for (IAtom atom : molecule.atoms()) {
+				out.writeByte(atom.getAtomicNumber());
+				out.writeByte(atom.getFormalCharge() == null ? 0 : atom.getFormalCharge());
+				writeVarInt(out, atom.getMassNumber() == null ? 0 : atom.getMassNumber());
+				out.writeByte(atom.getImplicitHydrogenCount() == null ? -1 : atom.getImplicitHydrogenCount());
+				out.writeByte(flags(atom.getFlag(CDKConstants.ISAROMATIC), atom.getFlag(CDKConstants.ISINRING)));
+				String name = atom.getAtomTypeName();
+				writeVarInt(out, name == null ? 0 : typeIndex.get(name) + 1);
+			}
+
+			writeVarInt(out, molecule.getBondCount());
+			for (IBond bond : molecule.bonds()) {
+				writeVarInt(out, molecule.indexOf(bond.getBegin()));
+				writeVarInt(out, molecule.indexOf(bond.getEnd()));
+				out.writeByte(order(bond.getOrder()));
+				out.writeByte(flags(bond.getFlag(CDKConstants.ISAROMATIC), bond.getFlag(CDKConstants.ISINRING)));
+			}
+
+			List<IStereoElement> stereo = new ArrayList<IStereoElement>();
+			for (IStereoElement se : molecule.stereoElements()) {
+				stereo.add(se);
+			}
+			writeVarInt(out, stereo.size());
+			for (IStereoElement se : stereo) {
+				if (se instanceof ITetrahedralChirality) {
+					ITetrahedralChirality tc = (ITetrahedralChirality) se;
+					out.writeByte(STEREO_TETRAHEDRAL);
+					writeVarInt(out, molecule.indexOf(tc.getChiralAtom()));
+					for (IAtom ligand : tc.getLigands()) {
+						writeVarInt(out, molecule.indexOf(ligand));
+					}
+					out.writeByte(tc.getStereo() == ITetrahedralChirality.Stereo.CLOCKWISE ? 0 : 1);
+				} else {
+					IDoubleBondStereochemistry dbs = (IDoubleBondStereochemistry) se;
+					out.writeByte(STEREO_DOUBLE_BOND);
+					writeVarInt(out, molecule.indexOf(dbs.getStereoBond()));
+					for (IBond ligand : dbs.getBonds()) {
+						writeVarInt(out, molecule.indexOf(ligand));
+					}
+					out.writeByte(dbs.getStereo() == IDoubleBondStereochemistry.Conformation.TOGETHER ? 0 : 1);
+				}
+			}
+
+			out.flush();
+			return bytes.toByteArray();
+		} catch (Exception exception) {
+			LOGGER.debug("Unable to encode molecule graph.", exception);
+			return new byte[0];
+		}
+	}
+
+	/**
+	 * Rebuilds a fully configured molecule from its graph.
+	 *
+	 * @param graph the graph bytes
+	 * @return the CDK molecule or null if the graph cannot be decoded
+	 */
+	public static IAtomContainer decode(final byte[] graph) {
+
+		if (graph == null || graph.length == 0) {
+			return null;
+		}
+
+		try {
+			DataInput in = new DataInputStream(new ByteArrayInputStream(graph));
+			IChemObjectBuilder builder = SilentChemObjectBuilder.getInstance();
+			AtomTypeFactory factory = AtomTypeFactory.getInstance(CDK_ATOM_TYPE, builder);
+
+			IAtomType[] types = new IAtomType[readVarInt(in) + 1];
+			for (int i = 1; i < types.length; i++) {
+				types[i] = atomType(factory, in.readUTF());
+			}
+
+			IAtomContainer molecule = builder.newInstance(IAtomContainer.class);
+
+			int nAtoms = readVarInt(in);
+			IAtom[] atoms = new IAtom[nAtoms];
+			for (int i = 0; i < nAtoms; i++) {
+				int atomicNumber = in.readUnsignedByte();
+				IAtom atom = builder.newInstance(IAtom.class, Elements.ofNumber(atomicNumber).symbol());
+				atom.setAtomicNumber(atomicNumber);
+				int charge = in.readByte();
+				int massNumber = readVarInt(in);
+				int hCount = in.readByte();
+				int flags = in.readByte();
+				IAtomType type = types[readVarInt(in)];
+				if (type != null) {
+					AtomTypeManipulator.configure(atom, type);
+				}
+				atom.setFormalCharge(charge);
+				if (massNumber != 0) {
+					atom.setMassNumber(massNumber);
+				}
+				if (hCount >= 0) {
+					atom.setImplicitHydrogenCount(hCount);
+				}
+				atom.setFlag(CDKConstants.ISAROMATIC, (flags & FLAG_AROMATIC) != 0);
+				atom.setFlag(CDKConstants.ISINRING, (flags & FLAG_RING) != 0);
+				atoms[i] = atom;
+				molecule.addAtom(atom);
+			}
+
+			int nBonds = readVarInt(in);
+			IBond[] bonds = new IBond[nBonds];
+			for (int i = 0; i < nBonds; i++) {
+				IAtom begin = atoms[readVarInt(in)];
+				IAtom end = atoms[readVarInt(in)];
+				IBond bond = builder.newInstance(IBond.class, begin, end, ORDERS[in.readUnsignedByte()]);
+				int flags = in.readByte();
+				bond.setFlag(CDKConstants.ISAROMATIC, (flags & FLAG_AROMATIC) != 0);
+				bond.setFlag(CDKConstants.ISINRING, (flags & FLAG_RING) != 0);
+				bonds[i] = bond;
+				molecule.addBond(bond);
+			}
+
+			int nStereo = readVarInt(in);
+			for (int i = 0; i < nStereo; i++) {
+				if (in.readByte() == STEREO_TETRAHEDRAL) {
+					IAtom focus = atoms[readVarInt(in)];
+					IAtom[] ligands = new IAtom[4];
+					for (int j = 0; j < ligands.length; j++) {
+						ligands[j] = atoms[readVarInt(in)];
+					}
+					ITetrahedralChirality.Stereo stereo = in.readByte() == 0 ? ITetrahedralChirality.Stereo.CLOCKWISE
+							: ITetrahedralChirality.Stereo.ANTI_CLOCKWISE;
+					molecule.addStereoElement(new TetrahedralChirality(focus, ligands, stereo));
+				} else {
+					IBond focus = bonds[readVarInt(in)];
+					IBond[] ligands = new IBond[2];
+					for (int j = 0; j < ligands.length; j++) {
+						ligands[j] = bonds[readVarInt(in)];
+					}
+					IDoubleBondStereochemistry.Conformation conformation = in.readByte() == 0
+							? IDoubleBondStereochemistry.Conformation.TOGETHER
+							: IDoubleBondStereochemistry.Conformation.OPPOSITE;
+					molecule.addStereoElement(new DoubleBondStereochemistry(focus, ligands, conformation));
+				}
+			}
+
+			return molecule;
+		} catch (Exception exception) {
+			LOGGER.debug("Unable to decode molecule graph.", exception);
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the atom type for a atom type name configured as done by the CDK atom type matcher, or null if no such
+	 * atom type exists.
+	 */
+	private static IAtomType atomType(final AtomTypeFactory factory, final String name) {
+
+		try {
+			IAtomType type = factory.getAtomType(name);
+			Integer piBonds = type.getProperty(CDKConstants.PI_BOND_COUNT);
+			if (piBonds != null && type.getFormalNeighbourCount() != null) {
+				type.setValency(piBonds + type.getFormalNeighbourCount());
+			}
+			return type;
+		} catch (CDKException exception) {
+			return null;
+		}
+	}
+
+	private static int flags(final boolean aromatic, final boolean ring) {
+		return (aromatic ? FLAG_AROMATIC : 0) | (ring ? FLAG_RING : 0);
+	}
+
+	private static int order(final IBond.Order order) {
+
+		for (int i = 1; i < ORDERS.length; i++) {
+			if (ORDERS[i] == order) {
+				return i;
+			}
+		}
+		if (order == null || order == IBond.Order.UNSET) {
+			return 0;
+		}
+		throw new IllegalArgumentException("Unsupported bond order " + order);
+	}
+
+	private static void writeVarInt(final DataOutput out, int value) throws IOException {
+
+		while ((value & ~0x7f) != 0) {
+			out.writeByte((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private static int readVarInt(final DataInput in) throws IOException {
+
+		int value = 0;
+		for (int shift = 0;; shift += 7) {
+			byte b = in.readByte();
+			value |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+	}
+}
@@ -20,13 +20,21 @@
 package org.openscience.cdk.smiles.smarts;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import org.knime.core.data.def.IntCell;
 import org.openscience.cdk.exception.CDKException;
+import org.openscience.cdk.interfaces.IAtom;
 import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.isomorphism.AtomMatcher;
+import org.openscience.cdk.isomorphism.BondMatcher;
+import org.openscience.cdk.isomorphism.ComponentGrouping;
 import org.openscience.cdk.isomorphism.Mappings;
 import org.openscience.cdk.isomorphism.Pattern;
 import org.openscience.cdk.isomorphism.SmartsStereoMatch;
@@ -34,52 +42,80 @@ import org.openscience.cdk.isomorphism.VentoFoggia;
 import org.openscience.cdk.isomorphism.matchers.QueryAtomContainer;
 import org.openscience.cdk.isomorphism.matchers.smarts.SmartsMatchers;
 import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.smarts.SmartsPrimitives.Evaluation;
 import org.openscience.cdk.smiles.smarts.parser.SMARTSParser;
 
+/**
+ * Matches a list of SMARTS against target molecules. The SMARTS are parsed and compiled to patterns once and reused
+ * for all targets, every target is prepared (ring flags and aromaticity) once for all patterns. A pattern is only
+ * matched against the targets that pass its {@link SmartsScreen} and whose atoms satisfy all of its atom primitives.
+ * The primitives are shared by all SMARTS and evaluated at most once per target, see {@link SmartsPrimitives}.
+ * <p>
+ * The patterns match atoms through a {@link DeadlineMatcher}, so a time budget also bounds the VF2 search between two
+ * mappings. The deadline is kept per thread, the tool can be shared by parallel workers.
+ */
 public class SmartSMARTSQueryTool {
 
 	private final LinkedHashMap<Pattern, QueryAtomContainer> queries;
+	// in the order of the queries
+	private final List<SmartsScreen> screens;
+	private final List<int[]> patternPrimitives;
+	private final SmartsPrimitives primitives;
+	// deadline of the enumeration of the current thread in nanoseconds and the number of atom comparisons
+	private final ThreadLocal<long[]> deadline = new ThreadLocal<long[]>() {
+
+		@Override
+		protected long[] initialValue() {
+			return new long[] { Long.MAX_VALUE, 0 };
+		}
+	};
 
 	private static final boolean RING_QUERY = true;
 
 	public SmartSMARTSQueryTool(List<String> smarts) {
 
 		this.queries = new LinkedHashMap<Pattern, QueryAtomContainer>();
+		this.screens = new ArrayList<SmartsScreen>();
+		this.patternPrimitives = new ArrayList<int[]>();
+		this.primitives = new SmartsPrimitives();
 		for (String smart : smarts) {
 			QueryAtomContainer query = SMARTSParser.parse(smart, SilentChemObjectBuilder.getInstance());
-			this.queries.put(VentoFoggia.findSubstructure(query), query);
+			this.queries.put(VentoFoggia.findSubstructure(query, new DeadlineMatcher(AtomMatcher.forQuery(), deadline),
+					BondMatcher.forQuery()), query);
+			this.screens.add(new SmartsScreen(query));
+			this.patternPrimitives.add(primitives.add(smart));
 		}
 	}
 
+	/**
+	 * Returns whether any of the SMARTS matches the target. The enumeration stops at the first mapping.
+	 * 
+	 * @param atomContainer the target
+	 * @return true if at least one SMARTS matches
+	 * @throws CDKException if the target cannot be prepared
+	 */
 	public boolean matches(IAtomContainer atomContainer) throws CDKException {
 
-//		SmartsMatchers.prepare(atomContainer, RING_QUERY);
-//
-//		for (Entry<Pattern, QueryAtomContainer> entry : queries.entrySet()) {
-//			Mappings mappings = entry.getKey().matchAll(atomContainer)
-//					.filter(new SmartsStereoMatch(entry.getValue(), atomContainer))
-//					.filter(new ComponentGrouping(entry.getValue(), atomContainer));
-//			
-//			if (mappings.atLeast(1)) {
-//				return true;
-//			}
-//		}
+		SmartsMatchers.prepare(atomContainer, RING_QUERY);
+		SmartsScreen.Target target = new SmartsScreen.Target(atomContainer);
+		Evaluation evaluation = primitives.evaluate(atomContainer);
+
+		int i = 0;
+		for (Entry<Pattern, QueryAtomContainer> entry : queries.entrySet()) {
+			if (candidate(i++, target, evaluation) && mappings(entry, atomContainer).atLeast(1)) {
+				return true;
+			}
+		}
 
 		return false;
 	}
 	
 	public List<IntCell> countUnique(IAtomContainer atomContainer) throws CDKException {
 		
-//		SmartsMatchers.prepare(atomContainer, RING_QUERY);
-//
 		List<IntCell> total = new ArrayList<>();
-//		for (Entry<Pattern, QueryAtomContainer> entry : queries.entrySet()) {
-//			Mappings mappings = entry.getKey().matchAll(atomContainer)
-//					.filter(new SmartsStereoMatch(entry.getValue(), atomContainer))
-//					.filter(new ComponentGrouping(entry.getValue(), atomContainer));
-//			
-//			total.add(new IntCell(mappings.countUnique()));
-//		}
+		for (Match match : match(atomContainer)) {
+			total.add(new IntCell(match.countUnique()));
+		}
 		
 		return total;
 	}
@@ -93,17 +129,249 @@ public class SmartSMARTSQueryTool {
 	 */
 	public List<Mappings> getMappings(IAtomContainer atomContainer)
 	{
+		SmartsMatchers.prepare(atomContainer, RING_QUERY);
+
 		List<Mappings> totalMappings = new ArrayList<Mappings>();
-//		for (Entry<Pattern, QueryAtomContainer> entry : queries.entrySet()) {
-//			Mappings mappings = entry.getKey().matchAll(atomContainer)
-//					.filter(new SmartsStereoMatch(entry.getValue(), atomContainer))
-//					.filter(new ComponentGrouping(entry.getValue(), atomContainer));
-//			
-//			totalMappings.add(mappings);
-//		}
+		for (Entry<Pattern, QueryAtomContainer> entry : queries.entrySet()) {
+			totalMappings.add(mappings(entry, atomContainer));
+		}
 		
 		return totalMappings;
 	}
-	
-	
+
+	/**
+	 * Enumerates the mappings of every SMARTS once. The result serves the match flag, the unique count and the
+	 * matched positions without matching again.
+	 * 
+	 * @param atomContainer the target
+	 * @return one match per SMARTS in the order of the SMARTS
+	 * @throws CDKException if the target cannot be prepared
+	 */
+	public List<Match> match(IAtomContainer atomContainer) throws CDKException {
+		return match(atomContainer, 0, 0, 0);
+	}
+
+	/**
+	 * Enumerates the mappings of every SMARTS once with limits. Symmetric queries on large ring systems have a
+	 * combinatorial number of mappings, the enumeration of a SMARTS stops at its max. number of mappings and the
+	 * enumeration of all SMARTS stops at the max. number of mappings of the molecule or when the time budget is used
+	 * up, also within the search for the next mapping. SMARTS that are not enumerated completely are flagged as
+	 * truncated, the SMARTS not reached have no mappings.
+	 * 
+	 * @param atomContainer the target
+	 * @param maxPerPattern the max. number of mappings per SMARTS, no limit if smaller than one
+	 * @param maxPerMolecule the max. number of mappings of all SMARTS, no limit if smaller than one
+	 * @param timeBudget the max. enumeration time in milliseconds, no limit if smaller than one
+	 * @return one match per SMARTS in the order of the SMARTS
+	 * @throws CDKException if the target cannot be prepared
+	 */
+	public List<Match> match(IAtomContainer atomContainer, int maxPerPattern, int maxPerMolecule, long timeBudget)
+			throws CDKException {
+
+		long end = (timeBudget > 0) ? System.nanoTime() + timeBudget * 1000000L : Long.MAX_VALUE;
+		int perPattern = (maxPerPattern > 0) ? maxPerPattern : Integer.MAX_VALUE;
+		int perMolecule = (maxPerMolecule > 0) ? maxPerMolecule : Integer.MAX_VALUE;
+
+		SmartsMatchers.prepare(atomContainer, RING_QUERY);
+		SmartsScreen.Target target = new SmartsScreen.Target(atomContainer);
+		Evaluation evaluation = primitives.evaluate(atomContainer);
+
+		long[] state = deadline.get();
+		state[0] = end;
+		try {
+			return match(atomContainer, perPattern, perMolecule, end, target, evaluation);
+		} finally {
+			state[0] = Long.MAX_VALUE;
+		}
+	}
+
+	private List<Match> match(IAtomContainer atomContainer, int perPattern, int perMolecule, long end,
+			SmartsScreen.Target target, Evaluation evaluation) {
+
+		List<Match> matches = new ArrayList<Match>(queries.size());
+		int total = 0;
+		boolean exhausted = false;
+		int i = 0;
+		for (Entry<Pattern, QueryAtomContainer> entry : queries.entrySet()) {
+			exhausted |= System.nanoTime() > end;
+			if (exhausted) {
+				matches.add(new Match(entry.getValue(), new int[0][], true));
+				continue;
+			}
+			if (!candidate(i++, target, evaluation)) {
+				matches.add(new Match(entry.getValue(), new int[0][], false));
+				continue;
+			}
+
+			List<int[]> mappings = new ArrayList<int[]>();
+			boolean truncated = false;
+			Iterator<int[]> it = mappings(entry, atomContainer).iterator();
+			try {
+				while (it.hasNext()) {
+					if (mappings.size() == perPattern || total == perMolecule) {
+						truncated = true;
+						break;
+					}
+					mappings.add(it.next());
+					total++;
+					if (System.nanoTime() > end) {
+						truncated = it.hasNext();
+						exhausted = true;
+						break;
+					}
+				}
+			} catch (DeadlineExceeded exception) {
+				// the search for the next mapping ran out of time
+				truncated = true;
+				exhausted = true;
+			}
+			exhausted |= total == perMolecule;
+			matches.add(new Match(entry.getValue(), mappings.toArray(new int[mappings.size()][]), truncated));
+		}
+
+		return matches;
+	}
+
+	/**
+	 * Returns which SMARTS match the target. The enumeration of every SMARTS stops at its first mapping.
+	 * 
+	 * @param atomContainer the target
+	 * @return the indices of the matching SMARTS
+	 * @throws CDKException if the target cannot be prepared
+	 */
+	public BitSet hits(IAtomContainer atomContainer) throws CDKException {
+
+		SmartsMatchers.prepare(atomContainer, RING_QUERY);
+		SmartsScreen.Target target = new SmartsScreen.Target(atomContainer);
+		Evaluation evaluation = primitives.evaluate(atomContainer);
+
+		BitSet hits = new BitSet(queries.size());
+		int i = 0;
+		for (Entry<Pattern, QueryAtomContainer> entry : queries.entrySet()) {
+			if (candidate(i, target, evaluation) && mappings(entry, atomContainer).atLeast(1)) {
+				hits.set(i);
+			}
+			i++;
+		}
+
+		return hits;
+	}
+
+	/**
+	 * @return the number of SMARTS
+	 */
+	public int size() {
+		return queries.size();
+	}
+
+	private boolean candidate(int i, SmartsScreen.Target target, Evaluation evaluation) {
+		return screens.get(i).covers(target) && evaluation.satisfies(patternPrimitives.get(i));
+	}
+
+	private static Mappings mappings(Entry<Pattern, QueryAtomContainer> entry, IAtomContainer atomContainer) {
+
+		return entry.getKey().matchAll(atomContainer)
+				.filter(new SmartsStereoMatch(entry.getValue(), atomContainer))
+				.filter(new ComponentGrouping(entry.getValue(), atomContainer));
+	}
+
+	/**
+	 * Atom matcher aborting the VF2 search of the current thread once its deadline has passed. The clock is read every
+	 * {@link #CHECK_INTERVAL} comparisons.
+	 */
+	private static final class DeadlineMatcher extends AtomMatcher {
+
+		private static final int CHECK_INTERVAL = 256;
+
+		private final AtomMatcher matcher;
+		private final ThreadLocal<long[]> deadline;
+
+		private DeadlineMatcher(AtomMatcher matcher, ThreadLocal<long[]> deadline) {
+			this.matcher = matcher;
+			this.deadline = deadline;
+		}
+
+		@Override
+		public boolean matches(IAtom queryAtom, IAtom targetAtom) {
+
+			long[] state = deadline.get();
+			if (state[0] != Long.MAX_VALUE && ++state[1] % CHECK_INTERVAL == 0 && System.nanoTime() > state[0]) {
+				throw new DeadlineExceeded();
+			}
+			return matcher.matches(queryAtom, targetAtom);
+		}
+	}
+
+	/**
+	 * Thrown out of the VF2 search when the deadline has passed.
+	 */
+	private static final class DeadlineExceeded extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		private DeadlineExceeded() {
+			// no stack trace, the exception is caught by the enumeration
+			super(null, null, false, false);
+		}
+	}
+
+	/**
+	 * The mappings of one SMARTS to a target.
+	 */
+	public static final class Match {
+
+		private final QueryAtomContainer query;
+		private final int[][] mappings;
+		private final boolean truncated;
+
+		private Match(QueryAtomContainer query, int[][] mappings, boolean truncated) {
+			this.query = query;
+			this.mappings = mappings;
+			this.truncated = truncated;
+		}
+
+		/**
+		 * @return true if the enumeration stopped at a limit before all mappings were found
+		 */
+		public boolean truncated() {
+			return truncated;
+		}
+
+		/**
+		 * @return true if the SMARTS matches the target
+		 */
+		public boolean matched() {
+			return mappings.length > 0;
+		}
+
+		/**
+		 * @return the number of mappings to distinct sets of target atoms
+		 */
+		public int countUnique() {
+
+			Set<BitSet> unique = new HashSet<BitSet>();
+			for (int[] mapping : mappings) {
+				BitSet atoms = new BitSet();
+				for (int atom : mapping) {
+					atoms.set(atom);
+				}
+				unique.add(atoms);
+			}
+			return unique.size();
+		}
+
+		/**
+		 * @return the parsed SMARTS
+		 */
+		public QueryAtomContainer query() {
+			return query;
+		}
+
+		/**
+		 * @return the target atom index of every query atom, one array per mapping
+		 */
+		public int[][] mappings() {
+			return mappings;
+		}
+	}
 }
@@ -0,0 +1,196 @@
+/* 
+ * Copyright (C) 2007  Rajarshi Guha <rajarshi@users.sourceforge.net>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.smiles.smarts;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.isomorphism.matchers.IQueryAtom;
+import org.openscience.cdk.isomorphism.matchers.QueryAtomContainer;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.smarts.parser.SMARTSParser;
+
+/**
+ * The distinct atom primitives of a set of SMARTS, e.g. [N+;!$(N=O)] or c. Alert and filter sets share most of their
+ * atom primitives, every distinct primitive is parsed once and evaluated at most once per target. A SMARTS can only
+ * match a target if every one of its atom primitives matches at least one target atom, hence the full graph matching
+ * is skipped for all SMARTS with a primitive that matches no target atom.
+ * <p>
+ * Primitives with recursive SMARTS or chirality depend on the neighbourhood of an atom and are not evaluated.
+ */
+final class SmartsPrimitives {
+
+	private final Map<String, Integer> indices = new HashMap<String, Integer>();
+	// null for primitives that are not evaluated
+	private final List<IQueryAtom> primitives = new ArrayList<IQueryAtom>();
+
+	/**
+	 * Adds the atom primitives of a SMARTS.
+	 * 
+	 * @param smarts the SMARTS
+	 * @return the indices of the distinct primitives of the SMARTS that are evaluated
+	 */
+	int[] add(String smarts) {
+
+		Set<Integer> pattern = new LinkedHashSet<Integer>();
+		for (String token : tokenize(smarts)) {
+			Integer index = indices.get(token);
+			if (index == null) {
+				index = primitives.size();
+				indices.put(token, index);
+				primitives.add(parse(token));
+			}
+			if (primitives.get(index) != null) {
+				pattern.add(index);
+			}
+		}
+
+		int[] result = new int[pattern.size()];
+		int i = 0;
+		for (Integer index : pattern) {
+			result[i++] = index;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the number of distinct primitives.
+	 * 
+	 * @return the number of primitives
+	 */
+	int size() {
+		return primitives.size();
+	}
+
+	/**
+	 * Creates the evaluation of the primitives for a prepared target.
+	 * 
+	 * @param target the target
+	 * @return the evaluation
+	 */
+	Evaluation evaluate(IAtomContainer target) {
+		return new Evaluation(target);
+	}
+
+	/**
+	 * Splits a SMARTS into its atom primitives: the bracket atoms and the atoms of the organic subset. Bonds, branches
+	 * and ring closures are skipped.
+	 */
+	static List<String> tokenize(String smarts) {
+
+		List<String> tokens = new ArrayList<String>();
+		int i = 0;
+		while (i < smarts.length()) {
+			char c = smarts.charAt(i);
+			if (c == '[') {
+				// recursive SMARTS nest brackets
+				int depth = 0;
+				int j = i;
+				for (; j < smarts.length(); j++) {
+					if (smarts.charAt(j) == '[') {
+						depth++;
+					} else if (smarts.charAt(j) == ']' && --depth == 0) {
+						break;
+					}
+				}
+				tokens.add(smarts.substring(i, Math.min(j + 1, smarts.length())));
+				i = j + 1;
+			} else if (c == 'C' && i + 1 < smarts.length() && smarts.charAt(i + 1) == 'l') {
+				tokens.add("Cl");
+				i += 2;
+			} else if (c == 'B' && i + 1 < smarts.length() && smarts.charAt(i + 1) == 'r') {
+				tokens.add("Br");
+				i += 2;
+			} else if (Character.isLetter(c)) {
+				tokens.add(String.valueOf(c));
+				i++;
+			} else if (c == '%') {
+				// two digit ring closure
+				i += 3;
+			} else {
+				i++;
+			}
+		}
+		return tokens;
+	}
+
+	private static IQueryAtom parse(String token) {
+
+		if (token.indexOf('$') >= 0 || token.indexOf('@') >= 0) {
+			return null;
+		}
+		try {
+			QueryAtomContainer query = SMARTSParser.parse(token, SilentChemObjectBuilder.getInstance());
+			if (query.getAtomCount() != 1 || !(query.getAtom(0) instanceof IQueryAtom)) {
+				return null;
+			}
+			return (IQueryAtom) query.getAtom(0);
+		} catch (RuntimeException exception) {
+			// not evaluated, the SMARTS itself is validated by the pattern
+			return null;
+		}
+	}
+
+	/**
+	 * The lazily evaluated primitives of one target.
+	 */
+	final class Evaluation {
+
+		private final IAtomContainer target;
+		// 0 = not evaluated, 1 = matches an atom, 2 = matches no atom
+		private final byte[] states = new byte[primitives.size()];
+
+		private Evaluation(IAtomContainer target) {
+			this.target = target;
+		}
+
+		/**
+		 * Returns whether every primitive of a SMARTS matches at least one target atom.
+		 * 
+		 * @param pattern the primitive indices of the SMARTS
+		 * @return false if the SMARTS cannot match the target
+		 */
+		boolean satisfies(int[] pattern) {
+
+			for (int index : pattern) {
+				if (states[index] == 0) {
+					states[index] = 2;
+					IQueryAtom primitive = primitives.get(index);
+					for (IAtom atom : target.atoms()) {
+						if (primitive.matches(atom)) {
+							states[index] = 1;
+							break;
+						}
+					}
+				}
+				if (states[index] == 2) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,176 @@
+/* 
+ * Copyright (C) 2007  Rajarshi Guha <rajarshi@users.sourceforge.net>
+ *
+ * Contact: cdk-devel@lists.sourceforge.net
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package org.openscience.cdk.smiles.smarts;
+
+import org.openscience.cdk.config.Elements;
+import org.openscience.cdk.graph.GraphUtil;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.isomorphism.matchers.smarts.AliphaticSymbolAtom;
+import org.openscience.cdk.isomorphism.matchers.smarts.AromaticSymbolAtom;
+import org.openscience.cdk.isomorphism.matchers.smarts.AtomicNumberAtom;
+import org.openscience.cdk.isomorphism.matchers.smarts.LogicalOperatorAtom;
+import org.openscience.cdk.knime.commons.PathFingerprint;
+
+/**
+ * Screen rejecting targets that cannot contain a SMARTS before any graph matching. A substructure mapping is injective,
+ * hence a target must have at least as many atoms and bonds as the query and at least as many atoms of every element
+ * the query atoms are restricted to. Query atoms with an element that is not fixed, e.g. [C,N] or *, only count
+ * towards the number of atoms.
+ * <p>
+ * The counts are followed by a {@link PathFingerprint} superset test. The query bits are the paths through the atoms
+ * with a fixed element. Every query bond is mapped onto a target bond and the fingerprint hashes the elements only,
+ * whatever the bond expression, so each such path is also a path of the target. The screen never rejects a target the
+ * query matches.
+ */
+final class SmartsScreen {
+
+	// index 0 is used for atoms of unknown element
+	private static final int ELEMENTS = 119;
+
+	private final int atomCount;
+	private final int bondCount;
+	// atomic numbers with a min. count, ordered by decreasing count
+	private final int[] elements;
+	private final int[] counts;
+	// path fingerprint of the atoms with a fixed element, null if there are none
+	private final long[] paths;
+
+	/**
+	 * Creates the screen of a parsed SMARTS.
+	 * 
+	 * @param query the query
+	 */
+	SmartsScreen(IAtomContainer query) {
+
+		int[] required = new int[ELEMENTS];
+		int[] fixed = new int[query.getAtomCount()];
+		boolean any = false;
+		for (int i = 0; i < fixed.length; i++) {
+			int element = element(query.getAtom(i));
+			if (element > 0 && element < ELEMENTS) {
+				required[element]++;
+				fixed[i] = element;
+				any = true;
+			} else {
+				fixed[i] = -1;
+			}
+		}
+		paths = any ? PathFingerprint.create(GraphUtil.toAdjList(query), fixed) : null;
+
+		int n = 0;
+		for (int count : required) {
+			if (count > 0) {
+				n++;
+			}
+		}
+		elements = new int[n];
+		counts = new int[n];
+		int i = 0;
+		for (int element = 1; element < ELEMENTS; element++) {
+			if (required[element] > 0) {
+				elements[i] = element;
+				counts[i++] = required[element];
+			}
+		}
+
+		atomCount = query.getAtomCount();
+		bondCount = query.getBondCount();
+	}
+
+	/**
+	 * Returns whether the target may contain the query.
+	 * 
+	 * @param target the target features shared by the screens of all queries
+	 * @return false if the query cannot match the target
+	 */
+	boolean covers(Target target) {
+
+		if (target.molecule.getAtomCount() < atomCount || target.molecule.getBondCount() < bondCount) {
+			return false;
+		}
+		for (int i = 0; i < elements.length; i++) {
+			if (target.counts[elements[i]] < counts[i]) {
+				return false;
+			}
+		}
+		return paths == null || PathFingerprint.covers(target.paths(), 0, paths);
+	}
+
+	/**
+	 * Returns the element a query atom is restricted to, 0 if the element is not fixed.
+	 */
+	private static int element(IAtom atom) {
+
+		if (atom instanceof AliphaticSymbolAtom || atom instanceof AromaticSymbolAtom) {
+			Elements element = Elements.ofString(atom.getSymbol());
+			return (element == null) ? 0 : element.number();
+		} else if (atom instanceof AtomicNumberAtom) {
+			Integer number = atom.getAtomicNumber();
+			return (number == null) ? 0 : number;
+		} else if (atom instanceof LogicalOperatorAtom) {
+			LogicalOperatorAtom operator = (LogicalOperatorAtom) atom;
+			// only a conjunction restricts the element, [C,N] or [!C] do not
+			if ("and".equals(operator.getOperator())) {
+				int left = element(operator.getLeft());
+				return (left != 0) ? left : element(operator.getRight());
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * The features of a target screened against all queries. The element counts are computed once per target, the path
+	 * fingerprint when the first query gets past its counts.
+	 */
+	static final class Target {
+
+		private final IAtomContainer molecule;
+		private final int[] counts;
+		private long[] paths;
+
+		/**
+		 * Counts the atoms of every element of a target.
+		 * 
+		 * @param molecule the target
+		 */
+		Target(IAtomContainer molecule) {
+
+			this.molecule = molecule;
+			this.counts = new int[ELEMENTS];
+			for (IAtom atom : molecule.atoms()) {
+				Integer element = atom.getAtomicNumber();
+				if (element != null && element > 0 && element < ELEMENTS) {
+					counts[element]++;
+				} else {
+					counts[0]++;
+				}
+			}
+		}
+
+		private long[] paths() {
+
+			if (paths == null) {
+				paths = PathFingerprint.create(molecule, true);
+			}
+			return paths;
+		}
+	}
+}
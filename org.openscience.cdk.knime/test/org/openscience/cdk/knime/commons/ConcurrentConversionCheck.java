@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2016, Stephan Beisken (sbeisken@gmail.com). All rights reserved.
+ *
+ * This file is part of the KNIME CDK plugin.
+ *
+ * The KNIME CDK plugin is free software: you can redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation, either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * The KNIME CDK plugin is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the
+ * implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with the plugin. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package org.openscience.cdk.knime.commons;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.openscience.cdk.CDKConstants;
+import org.openscience.cdk.interfaces.IAtomContainer;
+
+/**
+ * Regression check of the conversions the CDK nodes call from parallel workers. Every molecule is converted once on
+ * the main thread, then repeatedly by a pool of threads in interleaved order, and each parallel result must equal the
+ * serial one. Covered are the shared hydrogen adder and aromaticity model of
+ * {@link CDKNodeUtils#getFullMolecule(String)}, the per-thread SMILES parser and generators,
+ * {@link CDKNodeUtils#getExplicitClone(IAtomContainer)} and
+ * {@link CDKNodeUtils#calculateInChI(IAtomContainer, boolean)}.
+ * <p>
+ * The check runs as a plain Java application with the plugin's classpath, i.e. the KNIME target platform and the CDK
+ * bundle. Arguments: the number of threads (default 8) and the number of rounds (default 200). The exit code is 1 if
+ * any result differs.
+ *
+ * @author Stephan Beisken, European Bioinformatics Institute
+ */
+public final class ConcurrentConversionCheck {
+
+	private static final String[] SMILES = { "c1ccccc1", "CC(=O)Oc1ccccc1C(=O)O", "CN1C=NC2=C1C(=O)N(C(=O)N2C)C",
+			"C[C@@H](N)C(=O)O", "C[C@H](N)C(=O)O", "F/C=C/F", "F/C=C\\F", "[13CH4]", "[NH4+].[Cl-]",
+			"O=C([O-])c1ccccc1", "c1ccc2c(c1)ccc1ccccc12", "C1CC2CCC1CC2", "n1ccc2[nH]ccc2c1", "O=S(=O)(O)c1ccc(N)cc1",
+			"C[C@]12CC[C@H]3[C@@H](CC=C4C[C@@H](O)CC[C@]34C)[C@@H]1CC[C@@H]2O",
+			"OC[C@H]1OC(O)[C@H](O)[C@@H](O)[C@@H]1O", "c1ccc(cc1)P(c1ccccc1)c1ccccc1", "[Fe+2].[C-]#N",
+			"Clc1ccc(Cl)c(Cl)c1", "CC(C)(C)c1ccc(O)cc1" };
+
+	private ConcurrentConversionCheck() {
+		// application
+	}
+
+	/**
+	 * Runs the check.
+	 *
+	 * @param args the number of threads and the number of rounds, both optional
+	 * @throws Exception if a conversion fails unexpectedly
+	 */
+	public static void main(final String[] args) throws Exception {
+
+		int threads = (args.length > 0) ? Integer.parseInt(args[0]) : 8;
+		int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 200;
+
+		String[] expected = new String[SMILES.length];
+		for (int i = 0; i < SMILES.length; i++) {
+			expected[i] = convert(SMILES[i]);
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<String>> results = new ArrayList<Future<String>>();
+		List<Integer> indices = new ArrayList<Integer>();
+		try {
+			for (int round = 0; round < rounds; round++) {
+				for (int j = 0; j < SMILES.length; j++) {
+					// interleave the molecules differently in every round
+					final int i = (j * 7 + round) % SMILES.length;
+					indices.add(i);
+					results.add(pool.submit(new Callable<String>() {
+
+						@Override
+						public String call() throws Exception {
+							return convert(SMILES[i]);
+						}
+					}));
+				}
+			}
+
+			int failures = 0;
+			for (int k = 0; k < results.size(); k++) {
+				int i = indices.get(k);
+				String actual = results.get(k).get();
+				if (!expected[i].equals(actual)) {
+					failures++;
+					System.err.println("Mismatch for " + SMILES[i] + "\n  serial:   " + expected[i] + "\n  parallel: "
+							+ actual);
+				}
+			}
+
+			System.out.println(results.size() + " parallel conversions on " + threads + " threads, " + failures
+					+ " mismatches");
+			if (failures > 0) {
+				System.exit(1);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Converts a SMILES the way the nodes do and returns all outputs as one string.
+	 */
+	private static String convert(final String smiles) throws Exception {
+
+		IAtomContainer molecule = CDKNodeUtils.getFullMolecule(smiles);
+		if (molecule == null) {
+			return "parse error";
+		}
+
+		StringBuilder result = new StringBuilder();
+		result.append(CDKNodeUtils.calculateSmiles(molecule, null)).append(' ');
+		result.append(CDKNodeUtils.calculateCanonicalSmiles(molecule, null)).append(' ');
+		int aromatic = 0;
+		for (int i = 0; i < molecule.getAtomCount(); i++) {
+			if (molecule.getAtom(i).getFlag(CDKConstants.ISAROMATIC)) {
+				aromatic++;
+			}
+			result.append(molecule.getAtom(i).getImplicitHydrogenCount());
+		}
+		result.append(' ').append(aromatic).append(' ');
+
+		IAtomContainer clone = CDKNodeUtils.getExplicitClone(molecule);
+		result.append(clone.getAtomCount()).append(' ');
+		result.append(CDKNodeUtils.calculateCanonicalSmiles(clone, null)).append(' ');
+
+		CDKNodeUtils.calculateInChI(molecule, true);
+		result.append((String) molecule.getProperty(CDKConstants.INCHI));
+		return result.toString();
+	}
+}